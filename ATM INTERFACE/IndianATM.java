@@ -1,48 +1,759 @@
 import java.io.*; // Imports classes for input/output operations (e.g., File, FileReader, FileWriter, BufferedReader, PrintWriter)
-import java.text.DecimalFormat; // Imports DecimalFormat for formatting currency
-import java.text.SimpleDateFormat; // Imports SimpleDateFormat for formatting dates and times
-import java.util.*; // Imports utility classes like Scanner, List, ArrayList, Map, HashMap, Date
+import java.lang.management.ManagementFactory; // Imports ManagementFactory for the platform JMX server
+import java.math.BigDecimal; // Imports BigDecimal for reading legacy double-formatted amounts
+import java.math.RoundingMode; // Imports RoundingMode for rounding legacy amounts to paise
+import java.net.ServerSocket; // Imports ServerSocket for accepting remote ATM terminals
+import java.net.Socket; // Imports Socket for one connected ATM terminal
+import java.nio.ByteBuffer; // Imports ByteBuffer for encoding binary journal records
+import java.nio.MappedByteBuffer; // Imports MappedByteBuffer for the memory-mapped account index
+import java.nio.channels.FileChannel; // Imports FileChannel for positioned reads, appends and fsync on the journal
+import java.nio.file.Files; // Imports Files for atomically replacing the account index
+import java.nio.file.StandardCopyOption; // Imports copy options used for the atomic index replacement
+import java.nio.charset.StandardCharsets; // Imports StandardCharsets for hashing PIN bytes
+import java.nio.file.StandardOpenOption; // Imports open options used when opening the journal file
+import java.security.GeneralSecurityException; // Imports GeneralSecurityException raised by the crypto APIs
+import java.security.MessageDigest; // Imports MessageDigest for constant-time hash comparison
+import java.security.SecureRandom; // Imports SecureRandom for PIN salts
+import java.time.Instant; // Imports Instant for turning epoch milliseconds into dates
+import java.time.LocalDate; // Imports LocalDate for statement date ranges
+import java.time.LocalDateTime; // Imports LocalDateTime for parsing legacy history timestamps
+import java.time.ZoneId; // Imports ZoneId for rendering times in the local time zone
+import java.time.format.DateTimeFormatter; // Imports DateTimeFormatter for formatting dates and times
+import java.time.format.DateTimeParseException; // Imports DateTimeParseException for rejecting invalid dates
+import java.util.*; // Imports utility classes like Scanner, List, ArrayList, Map, Arrays
+import java.util.concurrent.ConcurrentHashMap; // Imports ConcurrentHashMap for the shared account registry
+import java.util.concurrent.ConcurrentLinkedQueue; // Imports ConcurrentLinkedQueue for transfers awaiting a flush batch
+import java.util.concurrent.ExecutorService; // Imports ExecutorService for running terminal sessions
+import java.util.concurrent.Executors; // Imports Executors for creating the session and persistence threads
+import java.util.concurrent.ScheduledExecutorService; // Imports ScheduledExecutorService for background flush batches
+import java.util.concurrent.TimeUnit; // Imports TimeUnit for flush intervals
+import java.util.concurrent.atomic.AtomicInteger; // Imports AtomicInteger for handing out batch sessions to workers
+import java.util.concurrent.atomic.AtomicLong; // Imports AtomicLong for lock-free failed-attempt counters
+import java.util.concurrent.atomic.AtomicLongArray; // Imports AtomicLongArray for lock-free histogram buckets
+import java.util.concurrent.atomic.LongAdder; // Imports LongAdder for low-contention metric counters
+import java.util.concurrent.locks.ReentrantLock; // Imports ReentrantLock for striped per-account locking
+import java.util.zip.CRC32; // Imports CRC32 for detecting torn journal records
+import javax.crypto.Mac; // Imports Mac for keyed session PIN tags
+import javax.crypto.SecretKeyFactory; // Imports SecretKeyFactory for PBKDF2 PIN hashing
+import javax.crypto.spec.PBEKeySpec; // Imports PBEKeySpec for PBKDF2 parameters
+import javax.crypto.spec.SecretKeySpec; // Imports SecretKeySpec for the session tag key
+import javax.management.Attribute; // Imports Attribute for JMX attribute values
+import javax.management.AttributeList; // Imports AttributeList for bulk JMX attribute reads
+import javax.management.AttributeNotFoundException; // Imports AttributeNotFoundException for unknown JMX attributes
+import javax.management.DynamicMBean; // Imports DynamicMBean for publishing metrics over JMX
+import javax.management.JMException; // Imports JMException raised when registering the metrics bean
+import javax.management.MBeanAttributeInfo; // Imports MBeanAttributeInfo for describing metric attributes
+import javax.management.MBeanInfo; // Imports MBeanInfo for describing the metrics bean
+import javax.management.MBeanServer; // Imports MBeanServer for registering the metrics bean
+import javax.management.ObjectName; // Imports ObjectName for naming the metrics bean
+import javax.management.ReflectionException; // Imports ReflectionException for unsupported JMX operations
+
+/**
+ * Money works with rupee amounts held as a whole number of paise in a long, so
+ * balances never drift the way repeated double arithmetic does. Its methods
+ * are static and the formatting ones append into a caller's StringBuilder,
+ * so amounts are only turned into text when they are displayed.
+ */
+final class Money {
+    private static final long MAX_RUPEES = Long.MAX_VALUE / 100; // Largest rupee amount that fits in paise
+
+    private Money() {
+    }
+
+    // Converts whole rupees to paise
+    static long ofRupees(long rupees) {
+        return rupees * 100;
+    }
+
+    // Parses a rupee amount such as "500", "1,500.5" or "10000.0" exactly to paise. Throws NumberFormatException
+    // for anything else, including a sign, more than two decimal places or an amount too large to hold in paise.
+    static long parse(String text) {
+        int i = 0;
+        int length = text.length();
+        long rupees = 0;
+        int digits = 0;
+        for (; i < length && text.charAt(i) != '.'; i++) {
+            char c = text.charAt(i);
+            if (c == ',') { // Grouping separators are accepted anywhere in the rupee part
+                continue;
+            }
+            if (c < '0' || c > '9' || rupees > (MAX_RUPEES - (c - '0')) / 10) { // Checked before multiplying, so it cannot overflow
+                throw new NumberFormatException("Invalid amount: " + text);
+            }
+            rupees = rupees * 10 + (c - '0');
+            digits++;
+        }
+        long paise = 0;
+        int decimals = 0;
+        if (i < length) { // Skips the decimal point and reads at most two paise digits
+            for (i++; i < length; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') {
+                    throw new NumberFormatException("Invalid amount: " + text);
+                }
+                if (++decimals > 2 && c != '0') { // Only trailing zeros may follow the paise
+                    throw new NumberFormatException("Amount has more than two decimal places: " + text);
+                }
+                if (decimals <= 2) {
+                    paise = paise * 10 + (c - '0');
+                }
+            }
+        }
+        if (digits == 0 && decimals == 0) {
+            throw new NumberFormatException("Invalid amount: " + text);
+        }
+        if (decimals == 1) {
+            paise *= 10; // "0.5" is fifty paise
+        }
+        if (rupees == MAX_RUPEES && paise > Long.MAX_VALUE % 100) { // The paise would overflow the largest rupee amount
+            throw new NumberFormatException("Invalid amount: " + text);
+        }
+        return rupees * 100 + paise;
+    }
+
+    // Parses an amount written by the old double-based code, such as "0.30000000000000004" or "1.25E7",
+    // rounding it to the nearest paisa. Only for reading old files; user input goes through parse.
+    static long parseLegacy(String text) {
+        try {
+            return new BigDecimal(text.trim()).setScale(2, RoundingMode.HALF_EVEN).movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) { // Too large to hold in paise
+            throw new NumberFormatException("Invalid amount: " + text);
+        }
+    }
+
+    // Formats paise as Indian Rupees with Indian digit grouping, e.g. ₹1,23,456.78
+    static String format(long paise) {
+        return appendTo(new StringBuilder(24), paise).toString();
+    }
+
+    // Appends paise as Indian Rupees with Indian digit grouping to sb and returns sb
+    static StringBuilder appendTo(StringBuilder sb, long paise) {
+        if (paise < 0) {
+            sb.append('-');
+            paise = -paise;
+        }
+        sb.append('₹');
+        long rupees = paise / 100;
+        if (rupees < 1000) {
+            sb.append(rupees);
+        } else {
+            appendLakhGroups(sb, rupees / 1000); // Everything above the last three digits goes in pairs
+            sb.append(',');
+            appendPadded(sb, (int) (rupees % 1000), 3);
+        }
+        sb.append('.');
+        appendPadded(sb, (int) (paise % 100), 2);
+        return sb;
+    }
+
+    // Plain decimal rupees without symbol or grouping, e.g. 10500.00, as stored in account files
+    static String toPlainString(long paise) {
+        StringBuilder sb = new StringBuilder(24);
+        if (paise < 0) {
+            sb.append('-');
+            paise = -paise;
+        }
+        sb.append(paise / 100).append('.');
+        appendPadded(sb, (int) (paise % 100), 2);
+        return sb.toString();
+    }
+
+    // Appends value in two-digit groups separated by commas (thousands, lakhs, crores, ...)
+    private static void appendLakhGroups(StringBuilder sb, long value) {
+        if (value < 100) {
+            sb.append(value);
+            return;
+        }
+        appendLakhGroups(sb, value / 100);
+        sb.append(',');
+        appendPadded(sb, (int) (value % 100), 2);
+    }
+
+    // Appends value left-padded with zeros to the given width
+    private static void appendPadded(StringBuilder sb, int value, int width) {
+        for (int divisor = width == 3 ? 100 : 10; divisor > 0; divisor /= 10) {
+            sb.append((char) ('0' + value / divisor % 10));
+        }
+    }
+}
+
+/**
+ * TransactionHistory stores an account's transactions column by column in
+ * primitive arrays: time in epoch milliseconds, type code and amount in
+ * paise. Nothing is turned into text until the history is displayed or
+ * written out, and then only through the shared, thread-safe formatter.
+ */
+class TransactionHistory {
+    static final byte TYPE_NOTE = 0; // A legacy history line that could not be parsed; amount indexes the notes list
+    static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss"); // Immutable, so shared by every thread
+
+    private long[] times = new long[16]; // Transaction times in epoch milliseconds
+    private byte[] types = new byte[16]; // TransactionJournal.TYPE_* codes, or TYPE_NOTE
+    private long[] amounts = new long[16]; // Amounts in paise
+    private int size; // Number of transactions stored
+    private int legacyCount; // Leading transactions read from the account file rather than the journal
+    private List<String> notes; // Unparseable legacy lines, created only when one turns up
+
+    // Returns the number of transactions
+    public int size() {
+        return size;
+    }
+
+    // Returns the number of leading transactions that came from the account file
+    public int legacyCount() {
+        return legacyCount;
+    }
+
+    // Returns the time of transaction i in epoch milliseconds
+    public long timeAt(int i) {
+        return times[i];
+    }
+
+    // Returns the type code of transaction i
+    public byte typeAt(int i) {
+        return types[i];
+    }
+
+    // Returns the amount of transaction i in paise
+    public long amountAt(int i) {
+        return amounts[i];
+    }
+
+    // Adds a transaction at the end of the history
+    public void add(long time, byte type, long amount) {
+        if (size == times.length) { // Doubles all columns together
+            int capacity = size * 2;
+            times = Arrays.copyOf(times, capacity);
+            types = Arrays.copyOf(types, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+        }
+        times[size] = time;
+        types[size] = type;
+        amounts[size] = amount;
+        size++;
+    }
+
+    // Reverses the order of the transactions; queries collect newest first and then flip
+    public void reverse() {
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            long time = times[i];
+            times[i] = times[j];
+            times[j] = time;
+            byte type = types[i];
+            types[i] = types[j];
+            types[j] = type;
+            long amount = amounts[i];
+            amounts[i] = amounts[j];
+            amounts[j] = amount;
+        }
+    }
+
+    // Parses a history line from an account file, e.g. "11-07-2025 10:38:45 - Deposit: ₹500.00",
+    // and adds it as a structured transaction; lines in any other shape are kept as notes
+    public void addLegacyLine(String line) {
+        legacyCount++;
+        try {
+            long time = LocalDateTime.parse(line.substring(0, 19), TIME_FORMAT)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            String description = line.substring(22); // Skips the " - " separator
+            if (description.startsWith("Deposit: ₹")) {
+                add(time, TransactionJournal.TYPE_DEPOSIT, Money.parse(description.substring("Deposit: ₹".length())));
+                return;
+            } else if (description.startsWith("Withdrawal: ₹")) {
+                add(time, TransactionJournal.TYPE_WITHDRAWAL, Money.parse(description.substring("Withdrawal: ₹".length())));
+                return;
+            } else if (description.startsWith("Account opened with initial balance: ₹")) {
+                add(time, TransactionJournal.TYPE_OPEN, Money.parse(description.substring("Account opened with initial balance: ₹".length())));
+                return;
+            } else if (description.equals("PIN changed")) {
+                add(time, TransactionJournal.TYPE_PIN_CHANGE, 0);
+                return;
+            }
+        } catch (RuntimeException e) { // Not in the standard shape; falls through to a note
+        }
+        if (notes == null) {
+            notes = new ArrayList<>();
+        }
+        notes.add(line);
+        add(0, TYPE_NOTE, notes.size() - 1);
+    }
+
+    // Copies transaction i of another history, including a note's text, to the end of this one
+    public void addFrom(TransactionHistory other, int i) {
+        if (other.types[i] == TYPE_NOTE) {
+            if (notes == null) {
+                notes = new ArrayList<>();
+            }
+            notes.add(other.notes.get((int) other.amounts[i]));
+            add(0, TYPE_NOTE, notes.size() - 1);
+        } else {
+            add(other.times[i], other.types[i], other.amounts[i]);
+        }
+    }
+
+    // Appends the display text of transaction i to sb and returns sb
+    public StringBuilder render(int i, StringBuilder sb) {
+        byte type = types[i];
+        if (type == TYPE_NOTE) {
+            return sb.append(notes.get((int) amounts[i]));
+        }
+        TIME_FORMAT.formatTo(Instant.ofEpochMilli(times[i]).atZone(ZoneId.systemDefault()), sb); // Formats the transaction time
+        sb.append(" - ");
+        switch (type) {
+            case TransactionJournal.TYPE_DEPOSIT:
+                return Money.appendTo(sb.append("Deposit: "), amounts[i]);
+            case TransactionJournal.TYPE_WITHDRAWAL:
+                return Money.appendTo(sb.append("Withdrawal: "), amounts[i]);
+            case TransactionJournal.TYPE_OPEN:
+                return Money.appendTo(sb.append("Account opened with initial balance: "), amounts[i]);
+            case TransactionJournal.TYPE_TRANSFER_OUT:
+                return Money.appendTo(sb.append("Transfer Out: "), amounts[i]);
+            case TransactionJournal.TYPE_TRANSFER_IN:
+                return Money.appendTo(sb.append("Transfer In: "), amounts[i]);
+            default:
+                return sb.append("PIN changed");
+        }
+    }
+
+    // Writes transactions [from, to) as text lines, one per transaction
+    public void writeTo(Appendable out, int from, int to) throws IOException {
+        StringBuilder line = new StringBuilder(80); // Reused for every line
+        for (int i = from; i < to; i++) {
+            line.setLength(0);
+            out.append(render(i, line)).append(System.lineSeparator());
+        }
+    }
+}
+
+/**
+ * HistoryQuery describes which transactions a statement shows: a time range,
+ * an optional transaction type and a limit on how many of the newest matches
+ * to return. Queries are immutable; each method returns a narrowed copy.
+ */
+final class HistoryQuery {
+    static final byte ANY_TYPE = -1; // Matches every transaction type
+
+    final long from; // Earliest time included, in epoch milliseconds
+    final long to; // Time the range ends before, in epoch milliseconds
+    final byte type; // TransactionJournal.TYPE_* code, or ANY_TYPE
+    final int limit; // Most transactions returned, keeping the newest
+
+    private HistoryQuery(long from, long to, byte type, int limit) {
+        this.from = from;
+        this.to = to;
+        this.type = type;
+        this.limit = limit;
+    }
+
+    // Every transaction the account has
+    static HistoryQuery all() {
+        return new HistoryQuery(Long.MIN_VALUE, Long.MAX_VALUE, ANY_TYPE, Integer.MAX_VALUE);
+    }
+
+    // The newest n transactions, as shown on a mini statement
+    static HistoryQuery lastN(int n) {
+        return all().limit(n);
+    }
+
+    // Narrows the query to transactions at or after from and before to
+    HistoryQuery between(long from, long to) {
+        return new HistoryQuery(from, to, type, limit);
+    }
+
+    // Narrows the query to one transaction type
+    HistoryQuery ofType(byte type) {
+        return new HistoryQuery(from, to, type, limit);
+    }
+
+    // Keeps only the newest n matching transactions
+    HistoryQuery limit(int n) {
+        return new HistoryQuery(from, to, type, n);
+    }
+
+    // Returns true if a transaction with this time and type belongs in the result
+    boolean matches(long time, byte transactionType) {
+        if (transactionType == TransactionJournal.TYPE_CHECKPOINT) { // Internal bookkeeping, never shown
+            return false;
+        }
+        if (transactionType == TransactionHistory.TYPE_NOTE) { // Notes have no time or type of their own
+            return type == ANY_TYPE && from == Long.MIN_VALUE;
+        }
+        return time >= from && time < to && (type == ANY_TYPE || type == transactionType);
+    }
+}
+
+/**
+ * PinHasher stores PINs as salted PBKDF2 hashes instead of clear text. The
+ * cost (iteration count) is set with -Datm.pinIterations and is saved in
+ * each hash, so raising it only affects PINs set or migrated afterwards.
+ * It also produces cheap keyed session tags that let a terminal re-check
+ * the PIN of an account it already logged in to without paying the KDF cost.
+ */
+final class PinHasher {
+    private static final String PREFIX = "pbkdf2$"; // Marks a hashed PIN in the account file
+    private static final int SALT_BYTES = 16; // Random salt length per PIN
+    private static final int HASH_BITS = 256; // Derived key length
+    static final int ITERATIONS = Integer.getInteger("atm.pinIterations", 100_000); // KDF cost for new hashes
+    private static final SecureRandom RANDOM = new SecureRandom(); // Source of salts and the session key
+    private static final byte[] SESSION_KEY = new byte[32]; // Per-process key for session tags; never stored
+
+    static {
+        RANDOM.nextBytes(SESSION_KEY);
+    }
+
+    private PinHasher() {
+    }
+
+    // Hashes a PIN with a fresh salt, e.g. pbkdf2$100000$<salt>$<hash>
+    static String hash(String pin) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder();
+        return PREFIX + ITERATIONS + "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(derive(pin, salt, ITERATIONS));
+    }
+
+    // Returns true if the entered PIN matches the stored hash; compares in constant time
+    static boolean verify(String pin, String stored) {
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        Base64.Decoder base64 = Base64.getDecoder();
+        byte[] expected = base64.decode(parts[2]);
+        return MessageDigest.isEqual(expected, derive(pin, base64.decode(parts[1]), Integer.parseInt(parts[0])));
+    }
+
+    // Returns true if the stored value is a hash rather than a legacy clear-text PIN
+    static boolean isHashed(String stored) {
+        return stored.startsWith(PREFIX);
+    }
+
+    // Number of bytes in the binary form of a stored hash: iterations, salt and derived key
+    static final int ENCODED_BYTES = 4 + SALT_BYTES + HASH_BITS / 8;
+
+    // Writes a stored hash in binary form at the given offset, for fixed-width account slots
+    static void encode(String stored, ByteBuffer target, int offset) {
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        Base64.Decoder base64 = Base64.getDecoder();
+        target.putInt(offset, Integer.parseInt(parts[0]));
+        byte[] salt = base64.decode(parts[1]);
+        byte[] key = base64.decode(parts[2]);
+        for (int i = 0; i < SALT_BYTES; i++) {
+            target.put(offset + 4 + i, salt[i]);
+        }
+        for (int i = 0; i < key.length; i++) {
+            target.put(offset + 4 + SALT_BYTES + i, key[i]);
+        }
+    }
+
+    // Reads a stored hash written by encode
+    static String decode(ByteBuffer source, int offset) {
+        byte[] salt = new byte[SALT_BYTES];
+        byte[] key = new byte[HASH_BITS / 8];
+        for (int i = 0; i < salt.length; i++) {
+            salt[i] = source.get(offset + 4 + i);
+        }
+        for (int i = 0; i < key.length; i++) {
+            key[i] = source.get(offset + 4 + SALT_BYTES + i);
+        }
+        Base64.Encoder base64 = Base64.getEncoder();
+        return PREFIX + source.getInt(offset) + "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(key);
+    }
+
+    // Keyed tag of a verified PIN, kept by a session so it can re-check the PIN cheaply
+    static byte[] sessionTag(String accountNumber, String pin) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(SESSION_KEY, "HmacSHA256"));
+            mac.update(accountNumber.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0); // Separates account number from PIN
+            return mac.doFinal(pin.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) { // HmacSHA256 is required on every JDK
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Runs PBKDF2-HMAC-SHA256 over the PIN
+    private static byte[] derive(String pin, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(pin.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) { // PBKDF2WithHmacSHA256 is required on every JDK
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    // Measures single-thread login verification throughput at the configured cost
+    static void benchmark(int seconds) {
+        String stored = hash("1234");
+        for (int i = 0; i < 20; i++) { // Warms up the JIT before measuring
+            verify("1234", stored);
+        }
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        long start = System.nanoTime();
+        long logins = 0;
+        while (System.nanoTime() < end) {
+            verify("1234", stored);
+            logins++;
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("PBKDF2 iterations: %d%n", ITERATIONS);
+        System.out.printf("Logins per second per core: %.1f (%.2f ms each)%n", logins / elapsed, elapsed * 1000 / logins);
+
+        byte[] tag = sessionTag("123456789", "1234");
+        long checks = 0;
+        start = System.nanoTime();
+        end = start + 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            MessageDigest.isEqual(tag, sessionTag("123456789", "1234"));
+            checks++;
+        }
+        elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Cached session PIN checks per second per core: %.0f%n", checks / elapsed);
+    }
+}
+
+/**
+ * LoginThrottle counts failed PIN attempts per account and locks the account
+ * for a while after too many in a row. Each account's state is one AtomicLong
+ * (lock-out end time and failure count packed together) updated with
+ * compare-and-set, so terminals never block each other here, and a locked
+ * account is refused before any PIN hashing is done.
+ */
+class LoginThrottle {
+    private static final int MAX_FAILURES = Integer.getInteger("atm.maxPinAttempts", 3); // Failures allowed before lock-out
+    private static final long LOCKOUT_MILLIS = Long.getLong("atm.lockoutMillis", 5 * 60 * 1000L); // Length of a lock-out
+    private static final long COUNT_MASK = 0xFFFF; // Low 16 bits hold the failure count; the rest hold the lock-out end
+    private final Map<String, AtomicLong> states = new ConcurrentHashMap<>(); // Accounts with recent failures
+
+    // Returns the milliseconds left on the account's lock-out, or 0 if it may try to log in
+    public long lockedForMillis(String accountNumber) {
+        AtomicLong state = states.get(accountNumber);
+        if (state == null) {
+            return 0;
+        }
+        long lockedUntil = state.get() >>> 16;
+        return Math.max(0, lockedUntil - System.currentTimeMillis());
+    }
+
+    // Records a wrong PIN; returns true if this failure locked the account
+    public boolean recordFailure(String accountNumber) {
+        AtomicLong state = states.computeIfAbsent(accountNumber, k -> new AtomicLong());
+        while (true) {
+            long current = state.get();
+            long now = System.currentTimeMillis();
+            long failures = (current & COUNT_MASK) + 1;
+            if ((current >>> 16) != 0 && (current >>> 16) <= now) { // A finished lock-out starts a fresh count
+                failures = 1;
+            }
+            long next = failures >= MAX_FAILURES ? ((now + LOCKOUT_MILLIS) << 16) : failures;
+            if (state.compareAndSet(current, next)) {
+                return failures >= MAX_FAILURES;
+            }
+        }
+    }
+
+    // Clears the failure count after a successful login
+    public void recordSuccess(String accountNumber) {
+        states.remove(accountNumber);
+    }
+}
+
+/**
+ * RollingWindow totals the amounts and counts of events over a sliding time
+ * window, split into fixed buckets kept in a ring. Totals are kept up to date
+ * as events arrive and as buckets fall out of the window, so reading or
+ * updating the window costs the same however many events it holds.
+ * Not thread-safe; callers hold the owning account's lock.
+ */
+class RollingWindow {
+    private final long bucketMillis; // Time covered by one bucket
+    private final long[] amounts; // Amount added in each bucket, in paise
+    private final int[] counts; // Events added in each bucket
+    private long amount; // Sum of amounts over the whole window
+    private int count; // Sum of counts over the whole window
+    private long currentBucket; // Epoch bucket number of the newest bucket
+
+    // Constructor for a window of the given number of buckets, each covering bucketMillis
+    RollingWindow(int buckets, long bucketMillis) {
+        this.bucketMillis = bucketMillis;
+        this.amounts = new long[buckets];
+        this.counts = new int[buckets];
+    }
+
+    // Returns the total amount in the window ending at the given time
+    long amount(long now) {
+        advance(now);
+        return amount;
+    }
+
+    // Returns the number of events in the window ending at the given time
+    int count(long now) {
+        advance(now);
+        return count;
+    }
+
+    // Adds an event at the given time
+    void add(long now, long value) {
+        advance(now);
+        int slot = (int) (currentBucket % amounts.length);
+        amounts[slot] += value;
+        counts[slot]++;
+        amount += value;
+        count++;
+    }
+
+    // Moves the window forward to the given time, dropping the buckets that fall out of it.
+    // At most one pass over the ring, however long it has been since the last event.
+    private void advance(long now) {
+        long bucket = now / bucketMillis;
+        if (bucket <= currentBucket) { // Same bucket, or the clock stepped back; keep counting here
+            return;
+        }
+        long steps = Math.min(amounts.length, bucket - currentBucket);
+        for (long i = 1; i <= steps; i++) {
+            int slot = (int) ((currentBucket + i) % amounts.length);
+            amount -= amounts[slot];
+            count -= counts[slot];
+            amounts[slot] = 0;
+            counts[slot] = 0;
+        }
+        currentBucket = bucket;
+    }
+}
+
+/**
+ * WithdrawalLimits enforces an account's rolling 24-hour and one-hour
+ * withdrawal limits and the number of withdrawals allowed per hour. The
+ * windows are updated with each withdrawal instead of being recomputed from
+ * the history, and are rebuilt from the journal when the account is loaded.
+ * Callers hold the account's lock.
+ */
+class WithdrawalLimits {
+    static final long DAILY_LIMIT = Money.ofRupees(Long.getLong("atm.dailyWithdrawalLimit", 40_000)); // Rolling 24 hours
+    static final long HOURLY_LIMIT = Money.ofRupees(Long.getLong("atm.hourlyWithdrawalLimit", 20_000)); // Rolling hour
+    static final int HOURLY_WITHDRAWALS = Integer.getInteger("atm.hourlyWithdrawals", 5); // Withdrawals per rolling hour
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+
+    private final RollingWindow day = new RollingWindow(24, HOUR); // Accurate to the hour
+    private final RollingWindow hour = new RollingWindow(60, MINUTE); // Accurate to the minute
+
+    // Returns SUCCESS if a withdrawal of the given amount at the given time is within every limit
+    TransactionResult check(long now, long amount) {
+        if (hour.count(now) >= HOURLY_WITHDRAWALS) {
+            return TransactionResult.TOO_MANY_WITHDRAWALS;
+        }
+        if (hour.amount(now) + amount > HOURLY_LIMIT) {
+            return TransactionResult.HOURLY_LIMIT_EXCEEDED;
+        }
+        if (day.amount(now) + amount > DAILY_LIMIT) {
+            return TransactionResult.DAILY_LIMIT_EXCEEDED;
+        }
+        return TransactionResult.SUCCESS;
+    }
+
+    // Counts a withdrawal made at the given time
+    void record(long now, long amount) {
+        day.add(now, amount);
+        hour.add(now, amount);
+    }
+
+    // Returns how much more may be withdrawn in the current hour and day, whichever is less
+    long remaining(long now) {
+        return Math.max(0, Math.min(HOURLY_LIMIT - hour.amount(now), DAILY_LIMIT - day.amount(now)));
+    }
+
+    // Refills the windows with the withdrawals journaled in the last 24 hours, oldest first
+    void rebuild(TransactionJournal journal, long now) throws IOException {
+        journal.scan(journal.firstIndexAtOrAfter(now - 24 * HOUR), journal.getRecordCount(), (index, timestamp, type, amount) -> {
+            if (type == TransactionJournal.TYPE_WITHDRAWAL) {
+                record(timestamp, amount);
+            }
+            return true;
+        });
+    }
+}
+
+/**
+ * Outcome of an account operation, so that each terminal session can
+ * report it on its own screen.
+ */
+enum TransactionResult {
+    SUCCESS, // The operation was applied and journaled
+    INVALID_AMOUNT, // The amount was zero or negative
+    BELOW_MINIMUM, // A deposit or withdrawal was less than the ATM minimum
+    NOT_A_MULTIPLE, // A withdrawal was not a multiple of the note size
+    INSUFFICIENT_FUNDS, // A withdrawal exceeded the available balance
+    DAILY_LIMIT_EXCEEDED, // A withdrawal would exceed the rolling 24-hour limit
+    HOURLY_LIMIT_EXCEEDED, // A withdrawal would exceed the rolling one-hour limit
+    TOO_MANY_WITHDRAWALS, // The account already made the most withdrawals allowed in an hour
+    NO_SUCH_ACCOUNT, // A transfer named an account that does not exist
+    SAME_ACCOUNT, // A transfer named the source account as its target
+    WRONG_PIN, // The current PIN given for a PIN change was incorrect
+    INVALID_PIN, // A new PIN was not 4 digits
+    LOCKED_OUT, // Too many incorrect PINs; the session was logged out
+    DEFERRED, // A transfer left the source account but the recipient's journal failed; recovery credits it on the next start
+    FAILED // The journal could not be written; nothing was changed
+}
+
+/**
+ * Outcome of a login attempt.
+ */
+enum LoginResult {
+    SUCCESS, // The session is now logged in
+    INVALID, // Unknown account number or incorrect PIN
+    LOCKED_OUT, // The account was already locked; the PIN was not checked
+    NOW_LOCKED_OUT // This incorrect PIN locked the account
+}
 
 /**
  * BankAccount class with PIN, transaction history, and file saving/loading.
+ * Transactions are appended to a binary journal and read back from it by
+ * history queries; the .txt file only holds the account header and any
+ * history written before the journal existed.
  */
 class BankAccount {
-    private double balance; // Stores the current balance of the account
+    private long balance; // Stores the current balance of the account in paise
     private String accountNumber; // Unique identifier for the bank account
-    private String pin; // Personal Identification Number for account access
-    private List<String> transactionHistory; // List to store a chronological record of transactions
-    private DecimalFormat currencyFormat = new DecimalFormat("₹###,##0.00"); // Formats balance and amounts as Indian Rupees
+    private volatile String pinHash; // Salted hash of the PIN (see PinHasher), read by login on any terminal
+    private TransactionHistory transactionHistory; // Transactions from the .txt file that predate the journal
+    private TransactionJournal journal; // Append-only journal receiving one record per transaction
+    private final WithdrawalLimits limits = new WithdrawalLimits(); // Recent withdrawals, checked against the limits
 
-    // Constructor for creating a new bank account with an initial balance
-    public BankAccount(String accountNumber, String pin, double initialBalance) {
+    // Constructor for creating a new bank account with an initial balance in paise
+    public BankAccount(String accountNumber, String pin, long initialBalance) {
         this.accountNumber = accountNumber; // Sets the account number
-        this.pin = pin; // Sets the PIN
+        this.pinHash = PinHasher.hash(pin); // Stores only the salted hash of the PIN
         this.balance = initialBalance; // Sets the initial balance
-        this.transactionHistory = new ArrayList<>(); // Initializes an empty list for transaction history
-        addTransaction("Account opened with initial balance: " + currencyFormat.format(initialBalance)); // Records the account opening transaction
+        this.transactionHistory = new TransactionHistory(); // Initializes an empty transaction history
+        this.journal = new TransactionJournal(accountNumber); // Creates the account's journal
+        addTransaction(TransactionJournal.TYPE_OPEN, initialBalance, initialBalance); // Records the account opening transaction
     }
 
     // Constructor for loading an existing bank account from stored data (e.g., from a file)
-    public BankAccount(String accountNumber, String pin, double balance, List<String> history) {
+    public BankAccount(String accountNumber, String pinHash, long balance, TransactionHistory history) {
         this.accountNumber = accountNumber; // Sets the account number
-        this.pin = pin; // Sets the PIN
+        this.pinHash = pinHash; // Sets the stored PIN hash
         this.balance = balance; // Sets the balance
-        this.transactionHistory = history; // Sets the transaction history
+        this.transactionHistory = history; // Sets the transaction history; journal records are added on replay
+        this.journal = new TransactionJournal(accountNumber); // Opens the account's journal
     }
 
-    // Verifies if the entered PIN matches the account's PIN
+    // Verifies if the entered PIN matches the account's PIN. This runs the KDF, so terminals
+    // call it once at login and then use PinHasher.sessionTag for repeat checks.
     public boolean verifyPin(String enteredPin) {
-        return pin.equals(enteredPin); // Compares the entered PIN with the stored PIN
+        return PinHasher.verify(enteredPin, pinHash); // Hashes the entered PIN with the stored salt and compares
     }
 
     // Changes the account's PIN to a new one
     public void changePin(String newPin) {
-        this.pin = newPin; // Updates the PIN
-        addTransaction("PIN changed"); // Records the PIN change in transaction history
+        this.pinHash = PinHasher.hash(newPin); // Updates the PIN hash with a fresh salt
+        addTransaction(TransactionJournal.TYPE_PIN_CHANGE, 0, balance); // Records the PIN change in transaction history
+        saveToFile(); // The PIN lives in the account file, so it is checkpointed immediately
     }
 
-    // Returns the current balance of the account
-    public double getBalance() {
+    // Returns the current balance of the account in paise
+    public long getBalance() {
         return balance;
     }
 
@@ -51,221 +762,2156 @@ class BankAccount {
         return accountNumber;
     }
 
-    // Returns the list of transaction history
-    public List<String> getTransactionHistory() {
-        return transactionHistory;
+    // Returns the salted PIN hash, for the account snapshot
+    String getPinHash() {
+        return pinHash;
     }
 
-    // Processes a deposit transaction
-    public void deposit(double amount) {
-        if (amount > 0) { // Checks if the deposit amount is positive
-            balance += amount; // Adds the amount to the balance
-            addTransaction("Deposit: " + currencyFormat.format(amount)); // Records the deposit transaction
-            System.out.println("\n✅ Deposit successful. New balance: " + currencyFormat.format(balance)); // Confirms success
-        } else {
-            System.out.println("\n❌ Error: Deposit amount must be positive"); // Error message for invalid amount
+    // Returns the number of journal records the current balance includes
+    long getJournalRecordCount() {
+        return journal.getRecordCount();
+    }
+
+    // Returns true if the .txt file holds history lines written before the journal existed
+    boolean hasLegacyHistory() {
+        return transactionHistory.legacyCount() > 0;
+    }
+
+    // Returns the transactions matching the query in time order. Journaled transactions are read
+    // from disk: the time range is located by binary search over the fixed-size records and only
+    // records inside it are read, newest first, until the limit is reached. Journal timestamps are
+    // expected to be non-decreasing, which holds as long as the system clock is not set back.
+    public TransactionHistory queryHistory(HistoryQuery query) throws IOException {
+        TransactionHistory result = new TransactionHistory();
+        long from = query.from == Long.MIN_VALUE ? 0 : journal.firstIndexAtOrAfter(query.from);
+        long to = query.to == Long.MAX_VALUE ? journal.getRecordCount() : journal.firstIndexAtOrAfter(query.to);
+        journal.scanBackward(from, to, (index, timestamp, type, amount) -> {
+            if (query.matches(timestamp, type)) {
+                result.add(timestamp, type, amount);
+            }
+            return result.size() < query.limit;
+        });
+        for (int i = transactionHistory.size() - 1; i >= 0 && result.size() < query.limit; i--) { // Older, pre-journal transactions
+            if (query.matches(transactionHistory.timeAt(i), transactionHistory.typeAt(i))) {
+                result.addFrom(transactionHistory, i);
+            }
+        }
+        result.reverse(); // Collected newest first
+        return result;
+    }
+
+    // Processes a deposit transaction. Callers hold the account's lock from the AccountRegistry.
+    public TransactionResult deposit(long amount) {
+        if (amount <= 0) { // Checks if the deposit amount is positive
+            return TransactionResult.INVALID_AMOUNT; // Deposit amount must be positive
+        }
+        if (!addTransaction(TransactionJournal.TYPE_DEPOSIT, amount, balance + amount)) { // Journaled first, so a failure changes nothing
+            return TransactionResult.FAILED;
         }
+        balance += amount; // Adds the amount to the balance
+        return TransactionResult.SUCCESS;
     }
 
-    // Processes a withdrawal transaction
-    public boolean withdraw(double amount) {
+    // Processes a withdrawal transaction. Callers hold the account's lock from the AccountRegistry.
+    public TransactionResult withdraw(long amount) {
         if (amount <= 0) { // Checks if the withdrawal amount is positive
-            System.out.println("\n❌ Error: Withdrawal amount must be positive"); // Error message for invalid amount
-            return false; // Returns false if withdrawal failed
+            return TransactionResult.INVALID_AMOUNT; // Withdrawal amount must be positive
         }
 
         if (amount > balance) { // Checks if there are sufficient funds
-            System.out.println("\n❌ Error: Insufficient funds. Available balance: " + currencyFormat.format(balance)); // Error message for insufficient funds
-            return false; // Returns false if withdrawal failed
+            return TransactionResult.INSUFFICIENT_FUNDS; // Not enough money in the account
+        }
+        long now = System.currentTimeMillis();
+        TransactionResult withinLimits = limits.check(now, amount); // Constant time, whatever the history length
+        if (withinLimits != TransactionResult.SUCCESS) {
+            return withinLimits;
         }
 
+        if (!addTransaction(TransactionJournal.TYPE_WITHDRAWAL, amount, balance - amount)) { // Journaled first, so a failure changes nothing
+            return TransactionResult.FAILED;
+        }
         balance -= amount; // Deducts the amount from the balance
-        addTransaction("Withdrawal: " + currencyFormat.format(amount)); // Records the withdrawal transaction
-        System.out.println("\n✅ Withdrawal successful. New balance: " + currencyFormat.format(balance)); // Confirms success
-        return true; // Returns true if withdrawal was successful
+        limits.record(now, amount);
+        return TransactionResult.SUCCESS;
     }
 
-    // Displays the current account balance
-    public void displayBalance() {
-        System.out.println("\n💰 Current Account Balance: " + currencyFormat.format(balance)); // Prints the formatted balance
+    // Returns how much more can be withdrawn now without exceeding the hourly or daily limit, in paise
+    public long remainingWithdrawalLimit() {
+        return limits.remaining(System.currentTimeMillis());
     }
 
-    // Displays the entire transaction history
-    public void displayTransactionHistory() {
-        System.out.println("\n═══════════════════════════════════");
-        System.out.println("      TRANSACTION HISTORY");
-        System.out.println("═══════════════════════════════════");
+    // Displays the current account balance on the given terminal
+    public void displayBalance(PrintStream out) {
+        out.println("\n💰 Current Account Balance: " + Money.format(balance)); // Prints the formatted balance
+    }
 
-        if (transactionHistory.isEmpty()) { // Checks if there are any transactions
-            System.out.println("No transactions yet."); // Message if history is empty
-        } else {
-            for (String transaction : transactionHistory) { // Iterates through and prints each transaction
-                System.out.println(transaction);
+    // Displays the transactions matching the query on the given terminal under the given title
+    public void displayTransactionHistory(PrintStream out, String title, HistoryQuery query) {
+        out.println("\n═══════════════════════════════════");
+        out.println(title);
+        out.println("═══════════════════════════════════");
+
+        try {
+            TransactionHistory transactions = queryHistory(query); // Reads only the matching records
+            if (transactions.size() == 0) { // Checks if there are any transactions
+                out.println("No transactions yet."); // Message if history is empty
+            } else {
+                StringBuilder text = new StringBuilder(transactions.size() * 64); // Renders the statement in one buffer
+                transactions.writeTo(text, 0, transactions.size());
+                out.print(text); // One write to the terminal instead of one per line
+            }
+        } catch (IOException e) { // Catches potential I/O errors
+            out.println("❌ Error reading transaction history: " + e.getMessage()); // Prints error message
+        }
+    }
+
+    // Appends a transaction to the journal, which is also where the history is read from.
+    // Returns false if the journal could not be written; callers change the balance only after it succeeds.
+    private boolean addTransaction(byte type, long amount, long newBalance) {
+        long now = System.currentTimeMillis(); // Gets current date and time
+        try {
+            journal.append(now, type, amount, newBalance); // One fixed-size append instead of rewriting the account file
+            return true;
+        } catch (IOException e) { // Catches potential I/O errors
+            System.out.println("❌ Error writing transaction journal: " + e.getMessage()); // Prints error message
+            return false;
+        }
+    }
+
+    // Applies one side of a transfer and journals it with the transfer's timestamp.
+    // Callers hold this account's lock; on an I/O error the balance is left unchanged.
+    void applyTransfer(byte type, long amount, long timestamp) throws IOException {
+        long change = type == TransactionJournal.TYPE_TRANSFER_IN ? amount : -amount;
+        journal.append(timestamp, type, amount, balance + change); // Written first, so a failure changes nothing
+        balance += change;
+    }
+
+    // Returns true if this side of a transfer is already in the journal; used by transfer recovery
+    boolean hasJournaled(byte type, long amount, long timestamp) throws IOException {
+        return journal.containsRecord(timestamp, type, amount);
+    }
+
+    // Recovers the balance from the journal records written after the file was last checkpointed;
+    // the history itself stays on disk until a statement asks for it
+    private void replayJournal(long checkpointedRecords) throws IOException {
+        balance = journal.recover(checkpointedRecords, balance);
+        limits.rebuild(journal, System.currentTimeMillis()); // Withdrawal limits carry over a restart
+    }
+
+    // Syncs and closes the journal when the account is evicted from memory
+    public void close() {
+        try {
+            journal.sync();
+            journal.close();
+        } catch (IOException e) { // Catches potential I/O errors
+            System.out.println("❌ Error closing transaction journal: " + e.getMessage()); // Prints error message
+        }
+    }
+
+    // Forces the journal to disk; called by the PersistenceScheduler instead of rewriting the account file
+    public void sync() {
+        long start = System.nanoTime();
+        try {
+            journal.sync(); // Makes every appended transaction durable
+        } catch (IOException e) { // Catches potential I/O errors
+            System.out.println("❌ Error syncing transaction journal: " + e.getMessage()); // Prints error message
+        }
+        Metrics.JOURNAL_SYNC.record(System.nanoTime() - start);
+    }
+
+    // Saves the account's data (account number, PIN, balance, history) to a file.
+    // Journaled transactions are not rewritten here; the file records how many journal
+    // records its balance already includes so that loading only replays the ones after them.
+    public void saveToFile() {
+        long start = System.nanoTime();
+        // Uses try-with-resources to ensure the PrintWriter is closed automatically
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(accountNumber + ".txt"), "UTF-8"))) {
+            writer.println("Account Number: " + accountNumber); // Writes account number
+            writer.println("PIN: " + pinHash); // Writes the salted PIN hash, never the PIN itself
+            writer.println("Balance: " + Money.toPlainString(balance)); // Writes balance in rupees, e.g. 10500.00
+            writer.println("Journal Records: " + journal.getRecordCount()); // Writes how many journal records the balance includes
+            writer.println("\nTransaction History:"); // Header for transaction history
+            transactionHistory.writeTo(writer, 0, transactionHistory.legacyCount()); // Writes each pre-journal transaction
+            // System.out.println("Account " + accountNumber + " saved successfully."); // Optional: Confirmation message
+        } catch (IOException e) { // Catches potential I/O errors
+            System.out.println("❌ Error saving account data: " + e.getMessage()); // Prints error message
+        }
+        Metrics.SAVE_TO_FILE.record(System.nanoTime() - start);
+    }
+
+    // Loads an account from its header in the account snapshot, replaying only the journal records
+    // after it; returns null if the journal is shorter than the header says, so the caller can fall
+    // back to the .txt file
+    static BankAccount loadFromSnapshot(String accountNumber, AccountIndex.Header header) {
+        BankAccount account = new BankAccount(accountNumber, header.pinHash, header.balance, new TransactionHistory());
+        try {
+            account.replayJournal(header.journalRecords);
+            if (account.journal.getRecordCount() >= header.journalRecords) {
+                return account;
             }
+        } catch (IOException e) { // Catches potential I/O errors
+            System.out.println("❌ Error loading account " + accountNumber + " from snapshot: " + e.getMessage()); // Prints error message
+        }
+        account.close();
+        return null;
+    }
+
+    // Static method to load a BankAccount object from a file
+    public static BankAccount loadFromFile(String accountNumber) {
+        File file = new File(accountNumber + ".txt"); // Creates a File object for the account file
+        if (!file.exists()) { // Checks if the file exists
+            return null; // Returns null if the file does not exist
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+            String line;
+            String loadedAccountNumber = null;
+            String loadedPin = null;
+            long loadedBalance = 0; // Balance in paise
+            long loadedJournalRecords = 0; // Files written before the journal existed have no journal records
+            TransactionHistory loadedHistory = new TransactionHistory();
+            boolean readingHistory = false; // Flag to indicate if currently reading transaction history
+
+            while ((line = reader.readLine()) != null) { // Reads the file line by line
+                if (line.startsWith("Account Number: ")) {
+                    loadedAccountNumber = line.substring("Account Number: ".length()); // Extracts account number
+                } else if (line.startsWith("PIN: ")) {
+                    loadedPin = line.substring("PIN: ".length()); // Extracts PIN
+                } else if (line.startsWith("Balance: ")) {
+                    loadedBalance = Money.parseLegacy(line.substring("Balance: ".length())); // Extracts balance; old files wrote it as a double
+                } else if (line.startsWith("Journal Records: ")) {
+                    loadedJournalRecords = Long.parseLong(line.substring("Journal Records: ".length())); // Extracts the checkpointed journal length
+                } else if (line.equals("\nTransaction History:") || line.equals("Transaction History:")) { // Check for history header
+                    readingHistory = true; // Set flag to true
+                } else if (readingHistory && !line.trim().isEmpty()) { // If reading history and line is not empty
+                    loadedHistory.addLegacyLine(line); // Parse the line into the structured history
+                }
+            }
+            boolean clearTextPin = !PinHasher.isHashed(loadedPin); // Files from before PIN hashing
+            if (clearTextPin) {
+                loadedPin = PinHasher.hash(loadedPin);
+            }
+            // Create a new BankAccount object with loaded data, then bring it up to date from its journal
+            BankAccount account = new BankAccount(loadedAccountNumber, loadedPin, loadedBalance, loadedHistory);
+            account.replayJournal(loadedJournalRecords);
+            if (clearTextPin) {
+                account.saveToFile(); // Replaces the clear-text PIN on disk right away
+            }
+            return account;
+        } catch (IOException | NumberFormatException e) { // Catches I/O errors or number format errors
+            System.out.println("❌ Error loading account data from " + accountNumber + ".txt: " + e.getMessage()); // Prints error message
+            return null; // Returns null if loading failed
+        }
+    }
+}
+
+/**
+ * TransactionJournal is an append-only binary log of an account's transactions.
+ * Every deposit or withdrawal is written as one fixed-size record instead of
+ * rewriting the whole account file, and the balance is checkpointed into the
+ * journal every few records so that recovery only has to replay the tail.
+ * Because records are fixed-size and appended in time order, record i can be
+ * read with a single seek, and a time can be found with a binary search;
+ * the journal is therefore also the index that history queries run on.
+ */
+class TransactionJournal {
+    static final byte TYPE_DEPOSIT = 1; // Record type for a deposit
+    static final byte TYPE_WITHDRAWAL = 2; // Record type for a withdrawal
+    static final byte TYPE_CHECKPOINT = 3; // Record type holding a balance checkpoint
+    static final byte TYPE_OPEN = 4; // Record type for account opening, amount is the initial balance
+    static final byte TYPE_PIN_CHANGE = 5; // Record type for a PIN change, amount is unused
+    static final byte TYPE_TRANSFER_OUT = 6; // Record type for money sent to another account
+    static final byte TYPE_TRANSFER_IN = 7; // Record type for money received from another account
+
+    static final int RECORD_SIZE = 24; // Fixed size of one record: timestamp(8) + type(1) + padding(3) + crc(4) + amount in paise(8)
+    static final int CHECKPOINT_INTERVAL = 64; // Number of transaction records between balance checkpoints
+    private static final int HEADER_SIZE = 8; // File header: magic(4) + version(4)
+    private static final int MAGIC = 0x41544D4A; // "ATMJ" marks a journal file
+    private static final int VERSION = 2; // Current record layout version; version 1 stored amounts as double rupees
+    private static final int BLOCK_RECORDS = 256; // Records read per system call when scanning
+
+    private final File file; // The <accountNumber>.journal file on disk
+    private FileChannel channel; // Channel kept open for appends and queries, opened lazily
+    private long recordCount; // Number of valid records currently in the journal
+    private int sinceCheckpoint; // Transaction records written since the last checkpoint
+    private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE); // Reused buffer for encoding one record
+    private final ByteBuffer block = ByteBuffer.allocate(RECORD_SIZE * BLOCK_RECORDS); // Reused buffer for scans
+    private final CRC32 crc = new CRC32(); // Reused checksum for detecting torn writes
+
+    // Receives decoded records from a scan; returning false stops the scan
+    interface RecordVisitor {
+        boolean visit(long index, long timestamp, byte type, long amount);
+    }
+
+    TransactionJournal(String accountNumber) {
+        this.file = new File(accountNumber + ".journal"); // One journal file per account, next to its .txt file
+    }
+
+    // Returns the number of valid records in the journal
+    long getRecordCount() {
+        return recordCount;
+    }
+
+    // Appends a transaction record and writes a balance checkpoint when one is due. Throws only if
+    // the transaction record itself was not written, so callers can treat a failure as "nothing journaled".
+    void append(long now, byte type, long amount, long balanceAfter) throws IOException {
+        writeRecord(now, type, amount);
+        if (++sinceCheckpoint >= CHECKPOINT_INTERVAL) { // Checkpoints bound how much recovery has to replay
+            try {
+                writeRecord(now, TYPE_CHECKPOINT, balanceAfter);
+                sinceCheckpoint = 0;
+            } catch (IOException e) { // Only an optimisation; retried after the next append
+                System.out.println("❌ Error writing journal checkpoint: " + e.getMessage());
+            }
+        }
+    }
+
+    // Forces all appended records to the storage device
+    void sync() throws IOException {
+        if (channel != null) {
+            channel.force(false); // Data only; the file metadata is not needed for recovery
+        }
+    }
+
+    // Closes the underlying channel; the journal reopens it on the next append
+    void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // Opens the journal, drops any torn tail and returns the current balance.
+    // Records before startRecord are already reflected in startBalance. Only the tail is read:
+    // from the last checkpoint when it lies at or after startRecord, otherwise from startRecord.
+    // A version 1 journal is rewritten in the current format first.
+    long recover(long startRecord, long startBalance) throws IOException {
+        recordCount = 0;
+        sinceCheckpoint = 0;
+        if (!file.exists()) { // Nothing has been journaled yet
+            return startBalance;
+        }
+
+        FileChannel in = channel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        in.read(header, 0);
+        header.flip();
+        int magic = header.getInt();
+        int version = header.getInt();
+        if (magic != MAGIC || (version != VERSION && version != 1)) {
+            throw new IOException("Unrecognised journal format in " + file.getName());
+        }
+        if (version == 1) {
+            upgradeFromVersion1();
+            in = channel();
+        }
+
+        long records = (in.size() - HEADER_SIZE) / RECORD_SIZE;
+        while (records > 0 && !readRecord(records - 1)) { // Partially written records from a crash
+            records--;
+        }
+        in.truncate(HEADER_SIZE + records * RECORD_SIZE); // Discards the torn tail so new appends line up
+        recordCount = records;
+
+        long checkpoint = -1;
+        long lowest = Math.max(0, records - CHECKPOINT_INTERVAL - 1); // A checkpoint is never further back than this
+        for (long i = records - 1; i >= lowest; i--) {
+            if (readRecord(i) && buffer.get(8) == TYPE_CHECKPOINT) {
+                checkpoint = i;
+                break;
+            }
+        }
+        sinceCheckpoint = (int) (checkpoint >= 0 ? records - checkpoint - 1 : Math.min(records, CHECKPOINT_INTERVAL - 1));
+
+        long[] balance = {startBalance};
+        long from = startRecord;
+        if (checkpoint >= startRecord) { // The checkpoint is authoritative for everything before it
+            readRecord(checkpoint);
+            balance[0] = buffer.getLong(16);
+            from = checkpoint + 1;
+        }
+        scan(from, records, (index, timestamp, type, amount) -> {
+            if (type == TYPE_DEPOSIT || type == TYPE_TRANSFER_IN) {
+                balance[0] += amount;
+            } else if (type == TYPE_WITHDRAWAL || type == TYPE_TRANSFER_OUT) {
+                balance[0] -= amount;
+            }
+            return true;
+        });
+        return balance[0];
+    }
+
+    // Returns true if a record with exactly this time, type and amount was written.
+    // Only the records from the given time onwards are read, newest first.
+    boolean containsRecord(long timestamp, byte type, long amount) throws IOException {
+        boolean[] found = {false};
+        scanBackward(0, recordCount, (index, time, recordType, recordAmount) -> {
+            found[0] = time == timestamp && recordType == type && recordAmount == amount;
+            return !found[0] && time >= timestamp; // Older records cannot match
+        });
+        return found[0];
+    }
+
+    // Returns the index of the first record at or after the given time, by binary search
+    long firstIndexAtOrAfter(long timestamp) throws IOException {
+        long low = 0;
+        long high = recordCount;
+        ByteBuffer time = ByteBuffer.allocate(8);
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            time.clear();
+            channel().read(time, HEADER_SIZE + mid * RECORD_SIZE); // Only the timestamp field is needed
+            if (time.getLong(0) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Reads records [from, to) in order and hands each to the visitor until it returns false
+    void scan(long from, long to, RecordVisitor visitor) throws IOException {
+        for (long first = from; first < to; first += BLOCK_RECORDS) {
+            int count = (int) Math.min(BLOCK_RECORDS, to - first);
+            readBlock(first, count);
+            for (int i = 0; i < count; i++) {
+                int base = i * RECORD_SIZE;
+                if (!visitor.visit(first + i, block.getLong(base), block.get(base + 8), block.getLong(base + 16))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Reads records [from, to) newest first and hands each to the visitor until it returns false
+    void scanBackward(long from, long to, RecordVisitor visitor) throws IOException {
+        for (long end = to; end > from; end -= BLOCK_RECORDS) {
+            int count = (int) Math.min(BLOCK_RECORDS, end - from);
+            long first = end - count;
+            readBlock(first, count);
+            for (int i = count - 1; i >= 0; i--) {
+                int base = i * RECORD_SIZE;
+                if (!visitor.visit(first + i, block.getLong(base), block.get(base + 8), block.getLong(base + 16))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Reads count consecutive records starting at record first into the scan buffer
+    private void readBlock(long first, int count) throws IOException {
+        block.clear().limit(count * RECORD_SIZE);
+        long position = HEADER_SIZE + first * RECORD_SIZE;
+        FileChannel in = channel();
+        while (block.hasRemaining()) {
+            if (in.read(block, position + block.position()) < 0) {
+                throw new EOFException("Journal ended early in " + file.getName());
+            }
+        }
+    }
+
+    // Reads record i into the record buffer and returns whether its checksum matches
+    private boolean readRecord(long i) throws IOException {
+        buffer.clear();
+        FileChannel in = channel();
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, HEADER_SIZE + i * RECORD_SIZE + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return buffer.getInt(12) == checksum(buffer.getLong(0), buffer.get(8), buffer.getLong(16));
+    }
+
+    // Rewrites a version 1 journal, whose amounts are double rupees, with exact paise amounts
+    private void upgradeFromVersion1() throws IOException {
+        File upgraded = new File(file.getPath() + ".tmp"); // Receives the rewritten journal
+        FileChannel in = channel();
+        long records = (in.size() - HEADER_SIZE) / RECORD_SIZE;
+        try (FileChannel out = FileChannel.open(upgraded.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeHeader(out);
+            out.position(HEADER_SIZE); // The header write is positional; records follow it
+            for (long i = 0; i < records; i++) {
+                if (!readRecord(i)) { // Torn tail from a crash
+                    break;
+                }
+                long amount = Math.round(Double.longBitsToDouble(buffer.getLong(16)) * 100); // Rounded once to exact paise
+                encode(buffer.getLong(0), buffer.get(8), amount);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            out.force(false);
+        }
+        close();
+        // Replaces the version 1 journal only after its rewrite is durable
+        Files.move(upgraded.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Encodes and appends one record at the end of the journal
+    private void writeRecord(long timestamp, byte type, long amount) throws IOException {
+        FileChannel out = channel();
+        encode(timestamp, type, amount);
+        while (buffer.hasRemaining()) {
+            out.write(buffer, HEADER_SIZE + recordCount * RECORD_SIZE + buffer.position());
+        }
+        recordCount++;
+    }
+
+    // Encodes one record into the reusable buffer, ready to be written
+    private void encode(long timestamp, byte type, long amount) {
+        buffer.clear();
+        buffer.putLong(timestamp).put(type).put((byte) 0).put((byte) 0).put((byte) 0);
+        buffer.putInt(checksum(timestamp, type, amount)).putLong(amount);
+        buffer.flip();
+    }
+
+    // Writes the journal file header at the start of the channel
+    private static void writeHeader(FileChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        out.write(header, 0);
+    }
+
+    // Opens the journal for reading and writing, creating it with a header on first use
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() < HEADER_SIZE) { // New or empty journal
+                writeHeader(channel);
+            }
+        }
+        return channel;
+    }
+
+    // Checksum over the meaningful fields of a record; amount is the raw stored 8 bytes
+    private int checksum(long timestamp, byte type, long bits) {
+        crc.reset();
+        for (int i = 56; i >= 0; i -= 8) {
+            crc.update((int) (timestamp >>> i));
+        }
+        crc.update(type);
+        for (int i = 56; i >= 0; i -= 8) {
+            crc.update((int) (bits >>> i));
+        }
+        return (int) crc.getValue();
+    }
+}
+
+/**
+ * AccountIndex is the account snapshot: a compact on-disk hash table of every
+ * known account kept in a memory-mapped accounts.idx file. Each fixed-width
+ * slot holds the account number and, once the account has been saved, its
+ * header: PIN hash, balance and how many journal records that balance
+ * includes. Loading an account reads its slot and replays only the journal
+ * records after it, with no text parsing, and checkpoints update the slot in
+ * place. Opening the file costs the same however many accounts exist. The
+ * per-account .txt files remain the import and export format.
+ */
+class AccountIndex {
+    private static final String FILE_NAME = "accounts.idx"; // Index file next to the account files
+    private static final int MAGIC = 0x41544D49; // "ATMI" marks an index file
+    private static final int VERSION = 2; // Current slot layout version
+    private static final int HEADER_SIZE = 16; // magic(4) + version(4) + slot count(4) + account count(4)
+    private static final int VERSION_1_SLOT_SIZE = 32; // length(1) + account number(23) + opened-at millis(8)
+    private static final int MAX_NUMBER_LENGTH = 23; // Longest account number a slot can hold
+    private static final int INITIAL_SLOTS = 1024; // Slot count of a new index; always a power of two
+
+    // Slot layout. The checksum covers every header byte, so a slot torn by a crash reads as no header.
+    private static final int SLOT_SIZE = 128; // Divides a disk sector, so a slot is written in one piece
+    private static final int OPENED_AT = 24; // Opened-at millis (8)
+    private static final int HAS_HEADER = 32; // 1 once a header has been written (1)
+    private static final int LEGACY_HISTORY = 33; // 1 if the .txt file holds pre-journal history lines (1)
+    private static final int PIN = 36; // PIN hash in PinHasher's binary form (52)
+    private static final int BALANCE = 88; // Balance in paise (8)
+    private static final int JOURNAL_RECORDS = 96; // Journal records the balance includes (8)
+    private static final int CHECKSUM = 124; // CRC32 of bytes HAS_HEADER up to CHECKSUM (4)
+
+    private final File file; // The index file on disk
+    private final CRC32 crc = new CRC32(); // Reused checksum; guarded by this
+    private final byte[] scratch = new byte[SLOT_SIZE]; // Reused copy of the bytes to checksum; guarded by this
+    private MappedByteBuffer map; // Mapped view of the whole index file
+    private int slotCount; // Number of slots in the hash table
+    private int size; // Number of slots in use
+
+    // The saved state of an account, read from its slot
+    static final class Header {
+        final String pinHash; // Salted PIN hash
+        final long balance; // Balance in paise
+        final long journalRecords; // Journal records already included in the balance
+
+        Header(String pinHash, long balance, long journalRecords) {
+            this.pinHash = pinHash;
+            this.balance = balance;
+            this.journalRecords = journalRecords;
+        }
+    }
+
+    // Opens the index, creating it from the existing account files on first run
+    public AccountIndex(File directory) throws IOException {
+        this.file = new File(directory, FILE_NAME);
+        if (file.exists()) {
+            map(file);
+        } else {
+            create(file, INITIAL_SLOTS);
+            importAccountFiles(directory); // One-time scan for accounts saved before the index existed
+        }
+    }
+
+    // Returns the number of accounts in the index
+    public synchronized int size() {
+        return size;
+    }
+
+    // Returns true if the account number is in the index
+    public synchronized boolean contains(String accountNumber) {
+        return findSlot(accountNumber) >= 0;
+    }
+
+    // Returns every account number in the index
+    public synchronized List<String> numbers() {
+        List<String> numbers = new ArrayList<>(size);
+        for (int slot = 0; slot < slotCount; slot++) {
+            int base = HEADER_SIZE + slot * SLOT_SIZE;
+            if (map.get(base) != 0) {
+                numbers.add(readNumber(map, base));
+            }
+        }
+        return numbers;
+    }
+
+    // Adds an account number to the index without a header; returns false if it was already there
+    public synchronized boolean add(String accountNumber) throws IOException {
+        if (accountNumber.length() > MAX_NUMBER_LENGTH) {
+            throw new IOException("Account number too long for the index: " + accountNumber);
+        }
+        if (findSlot(accountNumber) >= 0) {
+            return false;
+        }
+        if ((size + 1) * 10L > slotCount * 7L) { // Keeps the load factor under 0.7 so probes stay short
+            grow();
+        }
+        int slot = -findSlot(accountNumber) - 1; // Free slot where the probe ended
+        int base = HEADER_SIZE + slot * SLOT_SIZE;
+        map.put(base, (byte) accountNumber.length());
+        for (int i = 0; i < accountNumber.length(); i++) {
+            map.put(base + 1 + i, (byte) accountNumber.charAt(i));
+        }
+        map.putLong(base + OPENED_AT, System.currentTimeMillis());
+        map.putInt(12, ++size);
+        return true;
+    }
+
+    // Returns the account's saved header, or null if it has none, its checksum does not match,
+    // or its history still lives in the .txt file; the account is then loaded from that file
+    public synchronized Header readHeader(String accountNumber) {
+        int slot = findSlot(accountNumber);
+        if (slot < 0) {
+            return null;
+        }
+        int base = HEADER_SIZE + slot * SLOT_SIZE;
+        if (map.get(base + HAS_HEADER) != 1 || map.get(base + LEGACY_HISTORY) != 0 || map.getInt(base + CHECKSUM) != checksum(base)) {
+            return null;
+        }
+        return new Header(PinHasher.decode(map, base + PIN), map.getLong(base + BALANCE), map.getLong(base + JOURNAL_RECORDS));
+    }
+
+    // Overwrites the account's header in place. Callers hold the account's lock and have already
+    // synced its journal, so the header never claims records the journal could still lose.
+    public synchronized void writeHeader(String accountNumber, String pinHash, long balance, long journalRecords,
+                                         boolean legacyHistory) {
+        int slot = findSlot(accountNumber);
+        if (slot < 0) {
+            return;
+        }
+        int base = HEADER_SIZE + slot * SLOT_SIZE;
+        map.put(base + HAS_HEADER, (byte) 1);
+        map.put(base + LEGACY_HISTORY, (byte) (legacyHistory ? 1 : 0));
+        PinHasher.encode(pinHash, map, base + PIN);
+        map.putLong(base + BALANCE, balance);
+        map.putLong(base + JOURNAL_RECORDS, journalRecords);
+        map.putInt(base + CHECKSUM, checksum(base));
+    }
+
+    // Drops the account's header so that it is loaded from its .txt file next time
+    public synchronized void clearHeader(String accountNumber) {
+        int slot = findSlot(accountNumber);
+        if (slot >= 0) {
+            map.put(HEADER_SIZE + slot * SLOT_SIZE + HAS_HEADER, (byte) 0);
+        }
+    }
+
+    // Flushes the account's slot to disk, for changes that must not wait for the next checkpoint
+    public synchronized void force(String accountNumber) {
+        int slot = findSlot(accountNumber);
+        if (slot >= 0) {
+            map.force(HEADER_SIZE + slot * SLOT_SIZE, SLOT_SIZE);
+        }
+    }
+
+    // Flushes the mapped index to disk
+    public synchronized void force() {
+        map.force();
+    }
+
+    // Adds every .txt account file in the directory and drops the header of each one, so that
+    // the next load reads the file; returns the number of files found
+    public synchronized int importAccountFiles(File directory) throws IOException {
+        // Filters for .txt files that are not named "log.txt" (assuming account files are named after account numbers)
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".txt") && !name.equals("log.txt"));
+        if (files == null) {
+            return 0;
+        }
+        for (File accountFile : files) {
+            String fileName = accountFile.getName();
+            String accountNumber = fileName.substring(0, fileName.lastIndexOf(".txt")); // File names are account numbers
+            add(accountNumber);
+            clearHeader(accountNumber);
+        }
+        map.force();
+        return files.length;
+    }
+
+    // Checksum of the header bytes of the slot at base
+    private int checksum(int base) {
+        for (int i = HAS_HEADER; i < CHECKSUM; i++) {
+            scratch[i] = map.get(base + i);
+        }
+        crc.reset();
+        crc.update(scratch, HAS_HEADER, CHECKSUM - HAS_HEADER);
+        return (int) crc.getValue();
+    }
+
+    // Returns the slot holding accountNumber, or -(free slot + 1) if it is absent
+    private int findSlot(String accountNumber) {
+        int mask = slotCount - 1;
+        int slot = hash(accountNumber) & mask;
+        while (true) {
+            int base = HEADER_SIZE + slot * SLOT_SIZE;
+            int length = map.get(base);
+            if (length == 0) { // Empty slot ends the probe sequence
+                return -slot - 1;
+            }
+            if (length == accountNumber.length() && matches(base + 1, accountNumber)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask; // Linear probing
+        }
+    }
+
+    // Compares the stored account number bytes with the given account number
+    private boolean matches(int offset, String accountNumber) {
+        for (int i = 0; i < accountNumber.length(); i++) {
+            if (map.get(offset + i) != (byte) accountNumber.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Reads the account number stored at the start of a slot
+    private static String readNumber(ByteBuffer source, int base) {
+        int length = source.get(base);
+        StringBuilder number = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            number.append((char) source.get(base + 1 + i));
+        }
+        return number.toString();
+    }
+
+    // Doubles the slot count by rehashing into a new file that replaces the old one atomically
+    private void grow() throws IOException {
+        File next = new File(file.getPath() + ".tmp");
+        MappedByteBuffer old = map;
+        int oldSlots = slotCount;
+        create(next, oldSlots * 2);
+        for (int slot = 0; slot < oldSlots; slot++) {
+            int from = HEADER_SIZE + slot * SLOT_SIZE;
+            if (old.get(from) == 0) {
+                continue;
+            }
+            int to = HEADER_SIZE + (-findSlot(readNumber(old, from)) - 1) * SLOT_SIZE;
+            for (int i = 0; i < SLOT_SIZE; i++) {
+                map.put(to + i, old.get(from + i));
+            }
+            size++;
+        }
+        map.putInt(12, size);
+        map.force();
+        Files.move(next.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Creates an empty index file with the given number of slots and maps it
+    private void create(File target, int slots) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+            raf.setLength(0); // Clears any leftover from an interrupted grow
+            raf.setLength(HEADER_SIZE + (long) slots * SLOT_SIZE); // New space reads as zeros, i.e. empty slots
+            raf.writeInt(MAGIC);
+            raf.writeInt(VERSION);
+            raf.writeInt(slots);
+            raf.writeInt(0);
+        }
+        slotCount = slots;
+        size = 0;
+        map(target);
+    }
+
+    // Maps an existing index file and reads its header; a version 1 index is upgraded first
+    private void map(File source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()); // The mapping stays valid after the channel closes
+        }
+        if (map.getInt(0) == MAGIC && map.getInt(4) == 1) {
+            upgradeFromVersion1();
+            return;
+        }
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            throw new IOException("Unrecognised account index format in " + source.getName());
+        }
+        slotCount = map.getInt(8);
+        size = map.getInt(12);
+    }
+
+    // Rewrites a version 1 index, which held only account numbers, with header-sized slots.
+    // The headers start empty; each account is read from its .txt file once and saved here.
+    private void upgradeFromVersion1() throws IOException {
+        MappedByteBuffer old = map;
+        int oldSlots = old.getInt(8);
+        File next = new File(file.getPath() + ".tmp");
+        create(next, oldSlots);
+        for (int slot = 0; slot < oldSlots; slot++) {
+            int from = HEADER_SIZE + slot * VERSION_1_SLOT_SIZE;
+            if (old.get(from) == 0) {
+                continue;
+            }
+            int to = HEADER_SIZE + (-findSlot(readNumber(old, from)) - 1) * SLOT_SIZE;
+            for (int i = 0; i < VERSION_1_SLOT_SIZE; i++) { // Number and opened-at keep their offsets
+                map.put(to + i, old.get(from + i));
+            }
+            size++;
+        }
+        map.putInt(12, size);
+        map.force();
+        Files.move(next.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Hash of the account number, spread so that sequential numbers land far apart
+    private static int hash(String accountNumber) {
+        int h = accountNumber.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
+
+/**
+ * TransferLog makes a transfer between two accounts all-or-nothing across
+ * their two journals. Before either journal is written, the transfer is
+ * recorded in transfers.log as pending and forced to disk, so no journal
+ * record can outlive its log entry; once both journals are on disk the
+ * record is marked complete, and a transfer that failed before anything was
+ * journaled is marked aborted. After a crash, a pending transfer with either
+ * side in its journal is finished by writing the missing side; one with
+ * neither side never happened. Records are fixed-size slots; concurrent
+ * transfers share one force, the way the journals' group commit does.
+ */
+class TransferLog {
+    private static final String FILE_NAME = "transfers.log"; // Log file next to the account files
+    private static final int SLOT_SIZE = 72; // state(1) + from(1 + 23) + to(1 + 23) + timestamp(8) + amount(8), padded to 8 bytes
+    private static final byte PENDING = 1; // Transfer recorded, journals may be incomplete
+    private static final byte COMPLETE = 2; // Both journals written and synced
+    private static final byte ABORTED = 3; // Neither journal was written
+
+    private final FileChannel channel; // Open for the life of the process
+    private final boolean force; // False under -Datm.fsync=none, which leaves writing back to the OS
+    private final Object writeLock = new Object(); // Claims and writes a slot as one step
+    private final Object forceLock = new Object(); // One force at a time; waiting callers are usually covered by it
+    private volatile long written; // Slots fully written; only advances after a slot's bytes are in the file
+    private final AtomicLong durable = new AtomicLong(); // Slots known to be on disk
+
+    // One transfer read back from the log
+    static final class Transfer {
+        final String from; // Account the money leaves
+        final String to; // Account the money arrives in
+        final long timestamp; // Time shared by both journal records
+        final long amount; // Amount in paise
+
+        Transfer(String from, String to, long timestamp, long amount) {
+            this.from = from;
+            this.to = to;
+            this.timestamp = timestamp;
+            this.amount = amount;
+        }
+    }
+
+    // Opens the transfer log in the given directory; force is false when durability is left to the OS
+    public TransferLog(File directory, boolean force) throws IOException {
+        channel = FileChannel.open(new File(directory, FILE_NAME).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.force = force;
+        written = channel.size() / SLOT_SIZE;
+    }
+
+    // Records a transfer as pending, forces it to disk and returns its slot. Throws if the entry may not be
+    // durable, in which case the caller must not journal the transfer.
+    public long begin(String from, String to, long timestamp, long amount) throws IOException {
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        slot.put(PENDING);
+        putNumber(slot, from);
+        putNumber(slot, to);
+        slot.putLong(timestamp).putLong(amount);
+        slot.clear();
+        long index;
+        synchronized (writeLock) { // A few microseconds into the page cache; keeps written contiguous
+            index = written;
+            writeFully(slot, index * SLOT_SIZE); // A failed write leaves written unchanged, so the slot is reused
+            written = index + 1;
+        }
+        if (force) {
+            try {
+                forceThrough(index);
+            } catch (IOException e) {
+                abort(index); // Nothing will be journaled; recovery would drop it anyway
+                throw e;
+            }
+        }
+        return index;
+    }
+
+    // Makes every slot up to index durable. Callers arriving during a force wait for it and then usually
+    // find their slot covered, so concurrent transfers share one force.
+    private void forceThrough(long index) throws IOException {
+        if (durable.get() > index) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (durable.get() > index) { // Covered by the force this caller waited for
+                return;
+            }
+            long upTo = written; // Read before forcing: every slot below it is already in the file
+            channel.force(false);
+            durable.set(upTo);
+        }
+    }
+
+    // Marks the transfer in the given slot as complete; callers have synced both journals
+    public void complete(long index) throws IOException {
+        writeFully(ByteBuffer.wrap(new byte[] {COMPLETE}), index * SLOT_SIZE);
+    }
+
+    // Marks the transfer in the given slot as aborted; callers have journaled neither side
+    public void abort(long index) throws IOException {
+        writeFully(ByteBuffer.wrap(new byte[] {ABORTED}), index * SLOT_SIZE);
+    }
+
+    // Returns every transfer that was begun but neither completed nor aborted
+    public List<Transfer> pending() throws IOException {
+        List<Transfer> result = new ArrayList<>();
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        for (long index = 0; index < written; index++) {
+            slot.clear();
+            if (channel.read(slot, index * SLOT_SIZE) < SLOT_SIZE) { // Torn slot: the transfer never started
+                break;
+            }
+            slot.flip();
+            if (slot.get() == PENDING) {
+                result.add(new Transfer(getNumber(slot), getNumber(slot), slot.getLong(), slot.getLong()));
+            }
+        }
+        return result;
+    }
+
+    // Empties the log once every pending transfer has been resolved
+    public void reset() throws IOException {
+        channel.truncate(0);
+        channel.force(true);
+        written = 0;
+        durable.set(0);
+    }
+
+    // Writes an account number as a length byte followed by up to 23 ASCII characters
+    private static void putNumber(ByteBuffer slot, String number) {
+        int start = slot.position();
+        slot.put((byte) number.length());
+        for (int i = 0; i < number.length(); i++) {
+            slot.put((byte) number.charAt(i));
+        }
+        slot.position(start + 24);
+    }
+
+    // Reads an account number written by putNumber
+    private static String getNumber(ByteBuffer slot) {
+        int start = slot.position();
+        int length = slot.get();
+        StringBuilder number = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            number.append((char) slot.get());
+        }
+        slot.position(start + 24);
+        return number.toString();
+    }
+
+    // Writes the whole buffer at the given file position
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
+
+/**
+ * How PersistenceScheduler makes journaled transactions durable.
+ */
+enum FsyncPolicy {
+    ALWAYS, // fsync the journal inside every transaction
+    GROUP, // fsync changed journals in batches from a background thread; logout waits for the next batch
+    NONE // leave writing back to the operating system; fsync only on shutdown
+}
+
+/**
+ * PersistenceScheduler tracks which accounts have journaled transactions that
+ * are not yet on disk and makes them durable in batches from a background
+ * thread. Terminals that need durability (logout) join the next batch instead
+ * of each forcing their own journal, which is the group commit. Only changed
+ * accounts are ever flushed, so the cost does not grow with the account count.
+ */
+class PersistenceScheduler {
+    private final FsyncPolicy policy; // Configured with -Datm.fsync=always|group|none
+    private final long intervalMillis; // Time between background batches, -Datm.flushIntervalMillis
+    private final AccountRegistry accounts; // Provides the per-account locks
+    private final Set<BankAccount> dirty = ConcurrentHashMap.newKeySet(); // Accounts with unsynced journal records
+    private final Queue<Long> journaledTransfers = new ConcurrentLinkedQueue<>(); // Transfer slots whose journals are not yet synced
+    private final ScheduledExecutorService flusher; // Single background thread running the batches
+    private long batchesStarted; // Guarded by this; batches that have begun
+    private long batchesFinished; // Guarded by this; batches that have completed
+
+    // Constructor for the PersistenceScheduler class
+    public PersistenceScheduler(AccountRegistry accounts) {
+        this.accounts = accounts;
+        this.policy = FsyncPolicy.valueOf(System.getProperty("atm.fsync", "group").toUpperCase());
+        this.intervalMillis = Long.getLong("atm.flushIntervalMillis", 50);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "atm-persistence");
+            thread.setDaemon(true); // Never keeps the process alive on its own
+            return thread;
+        });
+        if (policy == FsyncPolicy.GROUP) {
+            flusher.scheduleWithFixedDelay(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Records that the account journaled a transaction. Callers hold the account's lock.
+    public void markDirty(BankAccount account) {
+        if (policy == FsyncPolicy.ALWAYS) {
+            account.sync(); // Durable before the terminal shows success
+            accounts.checkpoint(account);
+        } else {
+            dirty.add(account);
+        }
+    }
+
+    // Returns false under fsync=none, where nothing is forced until shutdown
+    public boolean forcesWrites() {
+        return policy != FsyncPolicy.NONE;
+    }
+
+    // Records that both sides of the transfer in the given slot are journaled and marked dirty; the slot
+    // is marked complete once a batch has synced both journals. Callers hold both accounts' locks.
+    public void transferJournaled(long slot) {
+        if (policy == FsyncPolicy.ALWAYS) { // markDirty has already synced both journals
+            accounts.completeTransfer(slot);
+        } else {
+            journaledTransfers.add(slot);
+        }
+    }
+
+    // Waits until everything journaled before this call is durable, by joining the next batch
+    public void awaitDurable() {
+        if (policy != FsyncPolicy.GROUP) { // Already durable, or durability is left to the OS
+            return;
+        }
+        long start = System.nanoTime();
+        synchronized (this) {
+            long target = batchesStarted + 1; // A batch that starts after this call covers its records
+            while (batchesFinished < target) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt(); // Terminal is shutting down; give up waiting
+                    return;
+                }
+            }
+        }
+        Metrics.AWAIT_DURABLE.record(System.nanoTime() - start);
+    }
+
+    // Syncs every dirty account's journal as one batch
+    public void flush() {
+        long batch;
+        synchronized (this) {
+            batch = ++batchesStarted;
+        }
+        long start = System.nanoTime();
+        // Transfers queued before the batch starts had both accounts in the dirty set already, so this
+        // batch syncs both of their journals and may then mark them complete
+        List<Long> transfersCovered = new ArrayList<>();
+        for (Long slot; (slot = journaledTransfers.poll()) != null; ) {
+            transfersCovered.add(slot);
+        }
+        boolean synced = false; // Empty batches are not timed
+        for (Iterator<BankAccount> it = dirty.iterator(); it.hasNext(); ) {
+            BankAccount account = it.next();
+            it.remove(); // Removed before syncing so that a concurrent transaction marks it dirty again
+            ReentrantLock lock = accounts.lockFor(account.getAccountNumber());
+            lock.lock(); // Keeps eviction from closing the journal mid-sync
+            try {
+                account.sync(); // Transfer log entries were forced before any transfer was journaled
+                accounts.checkpoint(account); // Updates the balance in the snapshot in place
+                synced = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+        for (long slot : transfersCovered) { // Not synced itself; a lost mark only makes recovery check the slot
+            accounts.completeTransfer(slot);
+        }
+        if (synced) {
+            Metrics.FLUSH_BATCH.record(System.nanoTime() - start);
+        }
+        synchronized (this) {
+            batchesFinished = batch;
+            notifyAll(); // Releases every terminal waiting on this batch
+        }
+    }
+
+    // Stops the background thread and flushes whatever is still dirty
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS); // Lets a running batch finish
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
+
+/**
+ * LatencyHistogram counts latencies in log-linear buckets, the way
+ * HdrHistogram does: 32 buckets for every power of two, so a percentile read
+ * back is within about 3% of the true value. Recording is one atomic
+ * increment per counter and never locks or allocates, so histograms stay on
+ * for every operation.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5; // log2 of the buckets per power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // Buckets per power of two
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS; // Enough for any non-negative long
+
+    final String name; // Name used in the JMX attributes and the dump files
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS); // Latencies recorded per bucket
+    private final LongAdder totalNanos = new LongAdder(); // Sum of all recorded latencies, for the mean
+    private final AtomicLong maxNanos = new AtomicLong(); // Largest latency recorded
+
+    // Summary of a histogram at one moment, in microseconds
+    static final class Snapshot {
+        long count; // Latencies recorded
+        double mean; // Mean latency
+        double p50; // Median latency
+        double p99; // 99th percentile latency
+        double p999; // 99.9th percentile latency
+        double max; // Largest latency
+    }
+
+    // Constructor for an empty histogram with the given name
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    // Records one latency in nanoseconds
+    void record(long nanos) {
+        if (nanos < 0) { // nanoTime is monotonic, but never trust a negative difference
+            nanos = 0;
+        }
+        counts.incrementAndGet(indexOf(nanos));
+        totalNanos.add(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) { // Only contended when a new maximum is set
+            max = maxNanos.get();
+        }
+    }
+
+    // Summarises the histogram. Recording may continue meanwhile, so the result can mix in a few
+    // latencies recorded during the read, but it never blocks the terminals.
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        Snapshot snapshot = new Snapshot();
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            snapshot.count += copy[i];
+        }
+        if (snapshot.count == 0) {
+            return snapshot;
+        }
+        long max = maxNanos.get(); // A bucket's highest value can lie above the largest latency in it
+        snapshot.mean = totalNanos.sum() / (double) snapshot.count / 1e3;
+        snapshot.p50 = Math.min(max, percentile(copy, snapshot.count, 0.50)) / 1e3;
+        snapshot.p99 = Math.min(max, percentile(copy, snapshot.count, 0.99)) / 1e3;
+        snapshot.p999 = Math.min(max, percentile(copy, snapshot.count, 0.999)) / 1e3;
+        snapshot.max = max / 1e3;
+        return snapshot;
+    }
+
+    // Returns the highest value in the bucket that holds the given percentile
+    private static long percentile(long[] copy, long count, double fraction) {
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < copy.length; i++) {
+            seen += copy[i];
+            if (seen >= rank) {
+                return highestValueAt(i);
+            }
+        }
+        return highestValueAt(copy.length - 1);
+    }
+
+    // Returns the bucket for a value: values below 32 get a bucket each, larger values share
+    // a bucket with the values that have the same highest six bits
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // Returns the largest value that indexOf puts in the given bucket
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1; // Exponent minus SUB_BUCKET_BITS
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
+
+/**
+ * Metrics holds the process-wide counters and latency histograms for the ATM
+ * operations and for persistence. They are exposed over JMX as
+ * IndianATM:type=Metrics and, if -Datm.metricsFile is set, written to that
+ * file every -Datm.metricsIntervalSeconds (JSON for a .json file, otherwise
+ * a text table).
+ */
+final class Metrics {
+    static final LatencyHistogram LOGIN = new LatencyHistogram("login"); // PIN check included
+    static final LatencyHistogram DEPOSIT = new LatencyHistogram("deposit");
+    static final LatencyHistogram WITHDRAW = new LatencyHistogram("withdraw");
+    static final LatencyHistogram TRANSFER = new LatencyHistogram("transfer");
+    static final LatencyHistogram CHANGE_PIN = new LatencyHistogram("changePin"); // Both KDFs included
+    static final LatencyHistogram SAVE_TO_FILE = new LatencyHistogram("saveToFile"); // Account file checkpoints
+    static final LatencyHistogram JOURNAL_SYNC = new LatencyHistogram("journalSync"); // One journal fsync
+    static final LatencyHistogram FLUSH_BATCH = new LatencyHistogram("flushBatch"); // One group commit that synced something
+    static final LatencyHistogram AWAIT_DURABLE = new LatencyHistogram("awaitDurable"); // Logout waiting for a group commit
+    static final LatencyHistogram[] HISTOGRAMS = {LOGIN, DEPOSIT, WITHDRAW, TRANSFER, CHANGE_PIN,
+            SAVE_TO_FILE, JOURNAL_SYNC, FLUSH_BATCH, AWAIT_DURABLE};
+
+    static final LongAdder LOGIN_FAILURES = new LongAdder(); // Logins refused for any reason
+    static final LongAdder LOCK_OUTS = new LongAdder(); // Accounts locked by a wrong PIN
+    static final LongAdder REJECTED = new LongAdder(); // Transactions that returned anything but SUCCESS
+    static final Map<String, LongAdder> COUNTERS = new LinkedHashMap<>(); // Counters by name, in report order
+
+    private static final String DUMP_FILE = System.getProperty("atm.metricsFile"); // No periodic dump if unset
+    private static final long DUMP_INTERVAL_SECONDS = Long.getLong("atm.metricsIntervalSeconds", 60); // Time between dumps
+    private static ScheduledExecutorService dumper; // Guarded by Metrics.class; writes the dump file
+
+    static {
+        COUNTERS.put("loginFailures", LOGIN_FAILURES);
+        COUNTERS.put("lockOuts", LOCK_OUTS);
+        COUNTERS.put("rejectedTransactions", REJECTED);
+    }
+
+    private Metrics() {
+    }
+
+    // Records the latency of a transaction that started at the given nanoTime and passes its result on.
+    // Arguments are evaluated left to right, so record(h, System.nanoTime(), operation()) times the operation.
+    static TransactionResult record(LatencyHistogram histogram, long start, TransactionResult result) {
+        histogram.record(System.nanoTime() - start);
+        if (result != TransactionResult.SUCCESS) {
+            REJECTED.increment();
+        }
+        return result;
+    }
+
+    // Registers the JMX bean and starts the periodic dump; does nothing if already started
+    static synchronized void start() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("IndianATM:type=Metrics");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsBean(), name);
+            }
+        } catch (JMException e) { // Metrics are still recorded and dumped without JMX
+            System.out.println("❌ Error registering metrics with JMX: " + e.getMessage()); // Prints error message
+        }
+        if (DUMP_FILE != null && dumper == null) {
+            dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "atm-metrics");
+                thread.setDaemon(true); // Never keeps the process alive on its own
+                return thread;
+            });
+            dumper.scheduleAtFixedRate(Metrics::dump, DUMP_INTERVAL_SECONDS, DUMP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    // Stops the periodic dump and writes a final one
+    static synchronized void stop() {
+        if (dumper != null) {
+            dumper.shutdown();
+            dumper = null;
+            dump();
+        }
+    }
+
+    // Writes the dump file, replacing the previous one atomically so readers never see half a dump
+    private static void dump() {
+        File target = new File(DUMP_FILE);
+        File temp = new File(DUMP_FILE + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8")) {
+            writer.write(DUMP_FILE.endsWith(".json") ? toJson() : toText());
+        } catch (IOException e) { // Catches potential I/O errors
+            System.out.println("❌ Error writing metrics: " + e.getMessage()); // Prints error message
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) { // Catches potential I/O errors
+            System.out.println("❌ Error writing metrics: " + e.getMessage()); // Prints error message
+        }
+    }
+
+    // Returns every counter and histogram as one JSON object
+    static String toJson() {
+        StringBuilder json = new StringBuilder(2048);
+        json.append("{\"timestamp\":\"").append(Instant.now()).append("\",\"counters\":{");
+        String separator = "";
+        for (Map.Entry<String, LongAdder> counter : COUNTERS.entrySet()) {
+            json.append(separator).append('"').append(counter.getKey()).append("\":").append(counter.getValue().sum());
+            separator = ",";
+        }
+        json.append("},\"latencyMicros\":{");
+        separator = "";
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            LatencyHistogram.Snapshot s = histogram.snapshot();
+            json.append(separator).append('"').append(histogram.name).append("\":")
+                    .append(String.format(Locale.ROOT, "{\"count\":%d,\"mean\":%.1f,\"p50\":%.1f,\"p99\":%.1f,\"p999\":%.1f,\"max\":%.1f}",
+                            s.count, s.mean, s.p50, s.p99, s.p999, s.max));
+            separator = ",";
+        }
+        return json.append("}}\n").toString();
+    }
+
+    // Returns every counter and histogram as a text table
+    static String toText() {
+        StringBuilder text = new StringBuilder(2048);
+        text.append("# IndianATM metrics at ").append(Instant.now()).append('\n');
+        for (Map.Entry<String, LongAdder> counter : COUNTERS.entrySet()) {
+            text.append(String.format(Locale.ROOT, "%-22s %d%n", counter.getKey(), counter.getValue().sum()));
+        }
+        text.append(String.format(Locale.ROOT, "%n%-14s %10s %10s %10s %10s %10s %10s%n",
+                "Latency (µs)", "count", "mean", "p50", "p99", "p99.9", "max"));
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            LatencyHistogram.Snapshot s = histogram.snapshot();
+            text.append(String.format(Locale.ROOT, "%-14s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    histogram.name, s.count, s.mean, s.p50, s.p99, s.p999, s.max));
+        }
+        return text.toString();
+    }
+}
+
+/**
+ * MetricsBean publishes Metrics over JMX as read-only attributes, e.g.
+ * loginFailures or depositP99Micros, so that JConsole or any JMX client can
+ * watch a running ATM server.
+ */
+class MetricsBean implements DynamicMBean {
+    private static final String[] STATISTICS = {"Count", "MeanMicros", "P50Micros", "P99Micros", "P999Micros", "MaxMicros"};
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        LongAdder counter = Metrics.COUNTERS.get(attribute);
+        if (counter != null) {
+            return counter.sum();
+        }
+        for (LatencyHistogram histogram : Metrics.HISTOGRAMS) {
+            if (!attribute.startsWith(histogram.name)) {
+                continue;
+            }
+            String statistic = attribute.substring(histogram.name.length());
+            LatencyHistogram.Snapshot s = histogram.snapshot();
+            switch (statistic) {
+                case "Count": return s.count;
+                case "MeanMicros": return s.mean;
+                case "P50Micros": return s.p50;
+                case "P99Micros": return s.p99;
+                case "P999Micros": return s.p999;
+                case "MaxMicros": return s.max;
+                default: break;
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList values = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                values.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) { // Unknown attributes are left out, as the JMX contract allows
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList(); // Nothing is writable
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String counter : Metrics.COUNTERS.keySet()) {
+            attributes.add(new MBeanAttributeInfo(counter, "long", counter, true, false, false));
+        }
+        for (LatencyHistogram histogram : Metrics.HISTOGRAMS) {
+            for (String statistic : STATISTICS) {
+                attributes.add(new MBeanAttributeInfo(histogram.name + statistic, statistic.equals("Count") ? "long" : "double",
+                        histogram.name + " latency " + statistic, true, false, false));
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "IndianATM operation metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
+
+/**
+ * AccountRegistry gives every ATM terminal in this process access to the bank
+ * accounts. Account numbers are looked up in the AccountIndex, and an account
+ * is only read from its file the first time a terminal logs in to it. Loaded
+ * accounts sit in a bounded concurrent cache; accounts no terminal is using
+ * are evicted, least recently used first, once the cache is full.
+ * Balance-changing operations are serialized per account through a fixed
+ * array of striped locks, so that terminals working on different accounts
+ * do not wait for each other.
+ */
+class AccountRegistry {
+    private static final int LOCK_STRIPES = 256; // Number of locks shared by all accounts; a power of two
+    private final int capacity = Integer.getInteger("atm.cachedAccounts", 1000); // Most accounts kept in memory at once
+    private final Map<String, CachedAccount> cache = new ConcurrentHashMap<>(); // Loaded accounts, keyed by account number
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES]; // Striped per-account locks
+    private final ReentrantLock evictionLock = new ReentrantLock(); // Lets one thread at a time trim the cache
+    private final AccountIndex index; // Every known account number
+    private final PersistenceScheduler persistence; // Makes changed accounts durable in background batches
+    private final LoginThrottle throttle = new LoginThrottle(); // Failed PIN attempts, shared by all terminals
+    private final TransferLog transfers; // Makes each transfer all-or-nothing across two journals
+
+    // A loaded account together with the number of sessions using it
+    private static final class CachedAccount {
+        final BankAccount account; // The loaded account
+        int sessions; // Sessions holding the account; only changed inside the cache's compute methods
+        volatile long lastUsed = System.nanoTime(); // Time the last session released the account
+
+        CachedAccount(BankAccount account) {
+            this.account = account;
+        }
+    }
+
+    // Constructor for the AccountRegistry class
+    public AccountRegistry() throws IOException {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        System.out.println("\nOpening account index...");
+        index = new AccountIndex(new File(".")); // Maps the index instead of loading every account
+        System.out.println("Account index ready. Total accounts: " + index.size());
+        initializeSampleAccounts(); // Ensures sample accounts exist
+        persistence = new PersistenceScheduler(this);
+        transfers = new TransferLog(new File("."), persistence.forcesWrites());
+        recoverTransfers(); // Finishes transfers interrupted by a crash
+        Metrics.start(); // Publishes operation metrics over JMX and to the dump file
+    }
+
+    // Moves money between two accounts. Both accounts' locks are taken in stripe order, so two
+    // opposing transfers can never deadlock, and the transfer is logged as pending before either
+    // journal is written so that it completes on both sides or, if nothing was journaled, on neither.
+    // FAILED means nothing moved; DEFERRED means the source was debited and recovery credits the
+    // recipient on the next start, because the recipient's journal could not be written now.
+    public TransactionResult transfer(BankAccount from, String toAccountNumber, long amount) {
+        if (amount <= 0) {
+            return TransactionResult.INVALID_AMOUNT;
+        }
+        if (from.getAccountNumber().equals(toAccountNumber)) {
+            return TransactionResult.SAME_ACCOUNT;
+        }
+        BankAccount to = acquire(toAccountNumber); // Keeps the target loaded for the duration
+        if (to == null) {
+            return TransactionResult.NO_SUCH_ACCOUNT;
+        }
+        ReentrantLock first = lockFor(from.getAccountNumber());
+        ReentrantLock second = lockFor(toAccountNumber);
+        if (stripeOf(toAccountNumber) < stripeOf(from.getAccountNumber())) { // Always lock the lower stripe first
+            ReentrantLock swap = first;
+            first = second;
+            second = swap;
+        }
+        first.lock();
+        if (second != first) { // Both accounts can share one stripe
+            second.lock();
+        }
+        try {
+            if (amount > from.getBalance()) {
+                return TransactionResult.INSUFFICIENT_FUNDS;
+            }
+            long now = System.currentTimeMillis();
+            long slot = transfers.begin(from.getAccountNumber(), toAccountNumber, now, amount);
+            try {
+                from.applyTransfer(TransactionJournal.TYPE_TRANSFER_OUT, amount, now);
+            } catch (IOException e) { // Nothing was journaled for either account
+                System.out.println("❌ Error writing transfer: " + e.getMessage());
+                abortTransfer(slot);
+                return TransactionResult.FAILED;
+            }
+            persistence.markDirty(from);
+            try {
+                to.applyTransfer(TransactionJournal.TYPE_TRANSFER_IN, amount, now);
+            } catch (IOException e) { // Leaves the transfer pending; recovery writes the missing side
+                System.out.println("❌ Error writing transfer to " + toAccountNumber + ": " + e.getMessage());
+                return TransactionResult.DEFERRED;
+            }
+            persistence.markDirty(to);
+            persistence.transferJournaled(slot); // Marked complete once both journals are synced
+            return TransactionResult.SUCCESS;
+        } catch (IOException e) { // The transfer log could not be written; nothing was journaled
+            System.out.println("❌ Error writing transfer: " + e.getMessage());
+            return TransactionResult.FAILED;
+        } finally {
+            if (second != first) {
+                second.unlock();
+            }
+            first.unlock();
+            release(to);
+        }
+    }
+
+    // Writes the missing side of every transfer left pending by a crash, then empties the log.
+    // A pending transfer with neither side on disk never took effect and is dropped.
+    private void recoverTransfers() throws IOException {
+        List<TransferLog.Transfer> pending = transfers.pending();
+        int recovered = 0;
+        for (TransferLog.Transfer transfer : pending) {
+            BankAccount from = acquire(transfer.from);
+            BankAccount to = acquire(transfer.to);
+            try {
+                boolean debited = from != null && from.hasJournaled(TransactionJournal.TYPE_TRANSFER_OUT, transfer.amount, transfer.timestamp);
+                boolean credited = to != null && to.hasJournaled(TransactionJournal.TYPE_TRANSFER_IN, transfer.amount, transfer.timestamp);
+                if (debited != credited) { // The journals were synced one at a time, so one side may be missing
+                    if (!debited && from != null) {
+                        from.applyTransfer(TransactionJournal.TYPE_TRANSFER_OUT, transfer.amount, transfer.timestamp);
+                    }
+                    if (!credited && to != null) {
+                        to.applyTransfer(TransactionJournal.TYPE_TRANSFER_IN, transfer.amount, transfer.timestamp);
+                    }
+                    recovered++;
+                }
+            } finally {
+                if (from != null) {
+                    from.sync();
+                    release(from);
+                }
+                if (to != null) {
+                    to.sync();
+                    release(to);
+                }
+            }
+        }
+        if (recovered > 0) {
+            System.out.println("Recovered " + recovered + " interrupted transfer(s).");
+        }
+        transfers.reset();
+    }
+
+    // Creates and saves a new account; returns null if the account number is already taken
+    public BankAccount createAccount(String accountNumber, String pin, long initialBalance) throws IOException {
+        if (index.contains(accountNumber)) {
+            return null;
+        }
+        BankAccount account = new BankAccount(accountNumber, pin, initialBalance);
+        account.saveToFile(); // Save this new account immediately
+        index.add(accountNumber);
+        account.close();
+        checkpoint(account);
+        return account;
+    }
+
+    // Marks a transfer complete; called once both of its journals are synced
+    public void completeTransfer(long slot) {
+        try {
+            transfers.complete(slot);
+        } catch (IOException e) { // The slot stays pending; recovery finds both sides journaled and skips it
+            System.out.println("❌ Error saving transfer log: " + e.getMessage()); // Prints error message
+        }
+    }
+
+    // Marks a transfer aborted; called when neither side was journaled
+    private void abortTransfer(long slot) {
+        try {
+            transfers.abort(slot);
+        } catch (IOException e) { // The slot stays pending; recovery finds neither side journaled and drops it
+            System.out.println("❌ Error saving transfer log: " + e.getMessage()); // Prints error message
+        }
+    }
+
+    // Returns the failed-PIN throttle shared by all terminals
+    public LoginThrottle throttle() {
+        return throttle;
+    }
+
+    // Records that the account journaled a transaction. Callers hold the account's lock.
+    public void markDirty(BankAccount account) {
+        persistence.markDirty(account);
+    }
+
+    // Waits until every transaction journaled so far is durable under the fsync policy
+    public void awaitDurable() {
+        persistence.awaitDurable();
+    }
+
+    // Returns the account with the given number, loading it on first use, or null if there is none.
+    // The account stays in memory until the session gives it back with release().
+    public BankAccount acquire(String accountNumber) {
+        if (!index.contains(accountNumber) && !adoptAccountFile(accountNumber)) {
+            return null;
+        }
+        CachedAccount entry = cache.compute(accountNumber, (number, cached) -> {
+            if (cached == null) { // First login since startup or since the account was evicted
+                BankAccount loaded = loadAccount(number);
+                if (loaded == null) {
+                    return null;
+                }
+                cached = new CachedAccount(loaded);
+            }
+            cached.sessions++;
+            return cached;
+        });
+        if (entry == null) {
+            return null;
+        }
+        evictColdAccounts();
+        return entry.account;
+    }
+
+    // Loads an account from its snapshot header, or from its .txt file if it has no usable header
+    // (imported, written before the snapshot, or still holding pre-journal history)
+    BankAccount loadAccount(String accountNumber) {
+        AccountIndex.Header header = index.readHeader(accountNumber);
+        if (header != null) {
+            BankAccount account = BankAccount.loadFromSnapshot(accountNumber, header);
+            if (account != null) {
+                return account;
+            }
+        }
+        BankAccount account = BankAccount.loadFromFile(accountNumber);
+        if (account != null) {
+            account.sync(); // The header may only count journal records that are on disk
+            checkpoint(account); // Later loads skip the text file
+        }
+        return account;
+    }
+
+    // Saves the account's header in the snapshot. Callers hold the account's lock (or are its only
+    // user) and have just synced its journal.
+    public void checkpoint(BankAccount account) {
+        index.writeHeader(account.getAccountNumber(), account.getPinHash(), account.getBalance(),
+                account.getJournalRecordCount(), account.hasLegacyHistory());
+    }
+
+    // Makes the account's journal and header durable right away; used when the PIN changes,
+    // which must survive a crash even before the next batch. Callers hold the account's lock.
+    public void checkpointNow(BankAccount account) {
+        account.sync();
+        checkpoint(account);
+        index.force(account.getAccountNumber());
+    }
+
+    // Writes every account's .txt file from its current state; returns the number written
+    public int exportAccountFiles() {
+        int written = 0;
+        for (String number : index.numbers()) {
+            BankAccount account = acquire(number);
+            if (account == null) {
+                continue;
+            }
+            ReentrantLock lock = lockFor(number);
+            lock.lock();
+            try {
+                account.saveToFile();
+                written++;
+            } finally {
+                lock.unlock();
+                release(account);
+            }
+        }
+        return written;
+    }
+
+    // Re-reads every .txt file in the directory on the next load of its account; returns the number found
+    public int importAccountFiles() throws IOException {
+        return index.importAccountFiles(new File("."));
+    }
+
+    // Gives back an account obtained from acquire() so that it can be evicted again
+    public void release(BankAccount account) {
+        cache.computeIfPresent(account.getAccountNumber(), (number, cached) -> {
+            cached.sessions--;
+            cached.lastUsed = System.nanoTime();
+            return cached;
+        });
+    }
+
+    // Returns the lock guarding the given account
+    public ReentrantLock lockFor(String accountNumber) {
+        return locks[stripeOf(accountNumber)];
+    }
+
+    // Returns the stripe index of the given account; also the order in which locks are taken
+    private static int stripeOf(String accountNumber) {
+        int h = accountNumber.hashCode();
+        h ^= (h >>> 16); // Spreads the high bits so similar account numbers land on different stripes
+        return h & (LOCK_STRIPES - 1);
+    }
+
+    // Adds an account file created outside the ATM (e.g. copied in by hand) to the index
+    private boolean adoptAccountFile(String accountNumber) {
+        if (!new File(accountNumber + ".txt").exists()) {
+            return false;
+        }
+        try {
+            index.add(accountNumber);
+            return true;
+        } catch (IOException e) { // Catches potential I/O errors
+            System.out.println("❌ Error updating account index: " + e.getMessage()); // Prints error message
+            return false;
+        }
+    }
+
+    // Drops the least recently used accounts that no session holds until the cache fits its capacity
+    private void evictColdAccounts() {
+        if (cache.size() <= capacity || !evictionLock.tryLock()) { // Another thread is already evicting
+            return;
+        }
+        try {
+            List<Map.Entry<String, CachedAccount>> idle = new ArrayList<>();
+            for (Map.Entry<String, CachedAccount> e : cache.entrySet()) {
+                if (e.getValue().sessions == 0) {
+                    idle.add(e);
+                }
+            }
+            idle.sort(Comparator.comparingLong(e -> e.getValue().lastUsed)); // Coldest first
+            for (int i = 0; i < idle.size() && cache.size() > capacity; i++) {
+                String number = idle.get(i).getKey();
+                ReentrantLock lock = lockFor(number);
+                lock.lock(); // Waits for any operation still finishing on the account
+                try {
+                    cache.computeIfPresent(number, (key, cached) -> {
+                        if (cached.sessions > 0) { // A session logged in after the scan
+                            return cached;
+                        }
+                        cached.account.close(); // Everything is already journaled; closing syncs the journal
+                        checkpoint(cached.account); // The next load starts from the evicted state
+                        return null;
+                    });
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // This method ensures sample accounts are created ONLY IF they don't already exist
+    // (i.e., not in the index). This prevents overwriting existing data.
+    private void initializeSampleAccounts() throws IOException {
+        // Example of creating new accounts if they don't exist, for first run setup
+        if (createAccount("123456789", "1234", Money.ofRupees(10000)) != null) {
+            System.out.println("Created new sample account: 123456789");
+        }
+        if (createAccount("987654321", "4321", Money.ofRupees(5000)) != null) {
+            System.out.println("Created new sample account: 987654321");
+        }
+        index.force();
+    }
+
+    // Makes every changed account durable before exiting; unchanged accounts are not touched
+    public void saveAllAccounts() {
+        System.out.println("\nSaving all account data...");
+        persistence.shutdown(); // Flushes only the accounts changed since the last batch
+        index.force();
+        Metrics.stop(); // Writes the final metrics dump
+        System.out.println("All accounts saved.");
+    }
+}
+
+/**
+ * ATMSession is one customer's session at a terminal, with no screen or
+ * keyboard attached: it applies the ATM's rules (minimum amounts, note size,
+ * PIN checks, lock-out) and reports each outcome as a result value. The
+ * console ATM and the batch runner both drive it.
+ */
+class ATMSession {
+    static final long MINIMUM_AMOUNT = Money.ofRupees(100); // Smallest deposit or withdrawal, and the withdrawal step
+    private static final long SESSION_PIN_TTL_MILLIS = 5 * 60 * 1000L; // How long a verified PIN is trusted without the KDF
+    private final AccountRegistry accounts; // Registry of all bank accounts, shared with the other sessions
+    private BankAccount currentAccount; // The logged-in account, or null
+    private byte[] sessionPinTag; // Keyed tag of the PIN verified in this session, or null
+    private long sessionVerifiedAt; // When the session PIN was last verified with the KDF
+
+    // Constructor for a session on the given registry; starts logged out
+    public ATMSession(AccountRegistry accounts) {
+        this.accounts = accounts;
+    }
+
+    // Logs in to the given account. Locked accounts are refused before any PIN hashing.
+    public LoginResult login(String accountNumber, String pin) {
+        if (currentAccount != null) { // A new login ends the previous one
+            logout();
+        }
+        long start = System.nanoTime();
+        LoginResult result = authenticate(accountNumber, pin);
+        Metrics.LOGIN.record(System.nanoTime() - start);
+        if (result != LoginResult.SUCCESS) {
+            Metrics.LOGIN_FAILURES.increment();
+        }
+        if (result == LoginResult.NOW_LOCKED_OUT) {
+            Metrics.LOCK_OUTS.increment();
+        }
+        return result;
+    }
+
+    // Checks the PIN and makes the account the session's current account if it is correct
+    private LoginResult authenticate(String accountNumber, String pin) {
+        if (accounts.throttle().lockedForMillis(accountNumber) > 0) {
+            return LoginResult.LOCKED_OUT;
+        }
+
+        BankAccount account = accounts.acquire(accountNumber); // Retrieves the account, loading it on first login
+        if (account != null && account.verifyPin(pin)) {
+            accounts.throttle().recordSuccess(accountNumber);
+            currentAccount = account; // Sets the current logged-in account
+            sessionPinTag = PinHasher.sessionTag(accountNumber, pin); // Lets later PIN checks in this session skip the KDF
+            sessionVerifiedAt = System.currentTimeMillis();
+            return LoginResult.SUCCESS;
+        }
+        if (account != null) {
+            accounts.release(account); // Wrong PIN; the account may be evicted again
+            if (accounts.throttle().recordFailure(accountNumber)) {
+                return LoginResult.NOW_LOCKED_OUT;
+            }
+        }
+        return LoginResult.INVALID;
+    }
+
+    // Returns how long the given account stays locked out, or 0 if it is not locked
+    public long lockedForMillis(String accountNumber) {
+        return accounts.throttle().lockedForMillis(accountNumber);
+    }
+
+    // Returns true while an account is logged in
+    public boolean isLoggedIn() {
+        return currentAccount != null;
+    }
+
+    // Makes the session's journaled transactions durable and logs the current account out
+    public void logout() {
+        accounts.awaitDurable(); // Joins the next group commit instead of forcing the journal itself
+        accounts.release(currentAccount); // Lets the registry evict the account once it is cold
+        currentAccount = null; // Logs out the current account
+        sessionPinTag = null; // Forgets the verified PIN
+    }
+
+    // Returns the balance of the logged-in account in paise
+    public long balance() {
+        ReentrantLock lock = lockCurrentAccount();
+        try {
+            return currentAccount.getBalance();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Deposits the given amount in paise into the logged-in account
+    public TransactionResult deposit(long amount) {
+        return Metrics.record(Metrics.DEPOSIT, System.nanoTime(), applyDeposit(amount));
+    }
+
+    // Applies a deposit under the account's lock
+    private TransactionResult applyDeposit(long amount) {
+        if (amount < MINIMUM_AMOUNT) { // Validates minimum deposit amount
+            return TransactionResult.BELOW_MINIMUM;
+        }
+        ReentrantLock lock = lockCurrentAccount(); // Other terminals may be using the same account
+        try {
+            TransactionResult result = currentAccount.deposit(amount);
+            if (result == TransactionResult.SUCCESS) {
+                accounts.markDirty(currentAccount); // Queues the journal for the next durable batch
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Withdraws the given amount in paise from the logged-in account
+    public TransactionResult withdraw(long amount) {
+        return Metrics.record(Metrics.WITHDRAW, System.nanoTime(), applyWithdrawal(amount));
+    }
+
+    // Applies a withdrawal under the account's lock
+    private TransactionResult applyWithdrawal(long amount) {
+        if (amount < MINIMUM_AMOUNT) { // Validates minimum withdrawal amount
+            return TransactionResult.BELOW_MINIMUM;
+        } else if (amount % MINIMUM_AMOUNT != 0) { // Validates if amount is a multiple of ₹100, exactly in paise
+            return TransactionResult.NOT_A_MULTIPLE;
+        }
+        ReentrantLock lock = lockCurrentAccount(); // Other terminals may be using the same account
+        try {
+            TransactionResult result = currentAccount.withdraw(amount);
+            if (result == TransactionResult.SUCCESS) {
+                accounts.markDirty(currentAccount); // Queues the journal for the next durable batch
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns how much more the logged-in account may withdraw before reaching a limit, in paise
+    public long remainingWithdrawalLimit() {
+        ReentrantLock lock = lockCurrentAccount();
+        try {
+            return currentAccount.remainingWithdrawalLimit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Transfers the given amount in paise to another account; the registry takes both accounts' locks
+    public TransactionResult transfer(String targetAccountNumber, long amount) {
+        return Metrics.record(Metrics.TRANSFER, System.nanoTime(), accounts.transfer(currentAccount, targetAccountNumber, amount));
+    }
+
+    // Returns the logged-in account's transactions matching the query
+    public TransactionHistory history(HistoryQuery query) throws IOException {
+        ReentrantLock lock = lockCurrentAccount(); // Keeps appends from other terminals out while reading
+        try {
+            return currentAccount.queryHistory(query);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Displays the logged-in account's balance on the given terminal
+    public void displayBalance(PrintStream out) {
+        ReentrantLock lock = lockCurrentAccount();
+        try {
+            currentAccount.displayBalance(out);
+        } finally {
+            lock.unlock();
         }
     }
 
-    // Adds a new transaction entry with a timestamp to the history
-    private void addTransaction(String description) {
-        String timestamp = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss").format(new Date()); // Gets current date and time
-        transactionHistory.add(timestamp + " - " + description); // Adds the formatted transaction to the list
+    // Displays the logged-in account's transactions matching the query on the given terminal
+    public void displayHistory(PrintStream out, String title, HistoryQuery query) {
+        ReentrantLock lock = lockCurrentAccount(); // Keeps appends from other terminals out while reading
+        try {
+            currentAccount.displayTransactionHistory(out, title, query);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    // Saves the account's data (account number, PIN, balance, history) to a file
-    public void saveToFile() {
-        // Uses try-with-resources to ensure the PrintWriter is closed automatically
-        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(accountNumber + ".txt"), "UTF-8"))) {
-            writer.println("Account Number: " + accountNumber); // Writes account number
-            writer.println("PIN: " + pin); // Writes PIN
-            writer.println("Balance: " + balance); // Writes balance
-            writer.println("\nTransaction History:"); // Header for transaction history
-            for (String transaction : transactionHistory) { // Writes each transaction
-                writer.println(transaction);
-            }
-            // System.out.println("Account " + accountNumber + " saved successfully."); // Optional: Confirmation message
-        } catch (IOException e) { // Catches potential I/O errors
-            System.out.println("❌ Error saving account data: " + e.getMessage()); // Prints error message
+    // Checks a PIN re-entered during the session, counting a wrong one towards the lock-out.
+    // Returns LOCKED_OUT, after logging out, if it was one wrong PIN too many.
+    public TransactionResult checkPin(String pin) {
+        if (verifySessionPin(pin)) {
+            return TransactionResult.SUCCESS;
+        }
+        if (accounts.throttle().recordFailure(currentAccount.getAccountNumber())) {
+            logout(); // Lock-out ends the session
+            return TransactionResult.LOCKED_OUT;
         }
+        return TransactionResult.WRONG_PIN;
     }
 
-    // Static method to load a BankAccount object from a file
-    public static BankAccount loadFromFile(String accountNumber) {
-        File file = new File(accountNumber + ".txt"); // Creates a File object for the account file
-        if (!file.exists()) { // Checks if the file exists
-            return null; // Returns null if the file does not exist
+    // Changes the logged-in account's PIN after checking the current one
+    public TransactionResult changePin(String currentPin, String newPin) {
+        return Metrics.record(Metrics.CHANGE_PIN, System.nanoTime(), applyPinChange(currentPin, newPin));
+    }
+
+    // Checks the current PIN and stores the hash of the new one
+    private TransactionResult applyPinChange(String currentPin, String newPin) {
+        TransactionResult check = checkPin(currentPin);
+        if (check != TransactionResult.SUCCESS) {
+            return check;
+        }
+        // Validates if the new PIN is 4 digits and contains only digits
+        if (newPin.length() != 4 || !newPin.matches("\\d+")) {
+            return TransactionResult.INVALID_PIN;
         }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
-            String line;
-            String loadedAccountNumber = null;
-            String loadedPin = null;
-            double loadedBalance = 0.0;
-            List<String> loadedHistory = new ArrayList<>();
-            boolean readingHistory = false; // Flag to indicate if currently reading transaction history
+        ReentrantLock lock = lockCurrentAccount(); // The PIN change rewrites the account file
+        try {
+            currentAccount.changePin(newPin); // Changes the PIN on the current account
+            accounts.checkpointNow(currentAccount); // The new PIN hash is durable in the snapshot before success is shown
+        } finally {
+            lock.unlock();
+        }
+        sessionPinTag = PinHasher.sessionTag(currentAccount.getAccountNumber(), newPin); // The session now knows the new PIN
+        sessionVerifiedAt = System.currentTimeMillis();
+        return TransactionResult.SUCCESS;
+    }
 
-            while ((line = reader.readLine()) != null) { // Reads the file line by line
-                if (line.startsWith("Account Number: ")) {
-                    loadedAccountNumber = line.substring("Account Number: ".length()); // Extracts account number
-                } else if (line.startsWith("PIN: ")) {
-                    loadedPin = line.substring("PIN: ".length()); // Extracts PIN
-                } else if (line.startsWith("Balance: ")) {
-                    loadedBalance = Double.parseDouble(line.substring("Balance: ".length())); // Extracts balance and parses to double
-                } else if (line.equals("\nTransaction History:") || line.equals("Transaction History:")) { // Check for history header
-                    readingHistory = true; // Set flag to true
-                } else if (readingHistory && !line.trim().isEmpty()) { // If reading history and line is not empty
-                    loadedHistory.add(line); // Add the line to history
-                }
-            }
-            // Create and return a new BankAccount object with loaded data
-            return new BankAccount(loadedAccountNumber, loadedPin, loadedBalance, loadedHistory);
-        } catch (IOException | NumberFormatException e) { // Catches I/O errors or number format errors
-            System.out.println("❌ Error loading account data from " + accountNumber + ".txt: " + e.getMessage()); // Prints error message
-            return null; // Returns null if loading failed
+    // Checks a PIN re-entered during the session. Within SESSION_PIN_TTL_MILLIS of the last
+    // verification it is compared with the session's keyed tag; otherwise the full KDF runs again.
+    private boolean verifySessionPin(String pin) {
+        String accountNumber = currentAccount.getAccountNumber();
+        if (sessionPinTag != null && System.currentTimeMillis() - sessionVerifiedAt < SESSION_PIN_TTL_MILLIS) {
+            return MessageDigest.isEqual(sessionPinTag, PinHasher.sessionTag(accountNumber, pin));
+        }
+        if (!currentAccount.verifyPin(pin)) {
+            return false;
         }
+        sessionPinTag = PinHasher.sessionTag(accountNumber, pin);
+        sessionVerifiedAt = System.currentTimeMillis();
+        return true;
+    }
+
+    // Acquires and returns the registry lock for the logged-in account
+    private ReentrantLock lockCurrentAccount() {
+        ReentrantLock lock = accounts.lockFor(currentAccount.getAccountNumber());
+        lock.lock();
+        return lock;
     }
 }
 
 /**
- * ATM class simulates an Automated Teller Machine, handling user interaction,
- * account login, and various banking operations.
+ * ATM class simulates one Automated Teller Machine terminal, handling user
+ * interaction, account login, and various banking operations. Many ATM
+ * sessions can run at once against the same AccountRegistry.
  */
 class ATM {
-    private BankAccount currentAccount; // Stores the currently logged-in bank account
+    private static final int MINI_STATEMENT_SIZE = 10; // Transactions shown on a mini statement
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy"); // Dates typed at the terminal
+    private ATMSession session; // The customer's session behind this terminal's screen
     private Scanner scanner; // Scanner object for reading user input
-    private Map<String, BankAccount> accounts; // Map to store all bank accounts, with account number as key
-
-    // Constructor for the ATM class
-    public ATM() {
-        this.scanner = new Scanner(System.in); // Initializes the scanner
-        this.accounts = new HashMap<>(); // Initializes the HashMap for accounts
-        loadAllAccounts(); // Loads all existing accounts from files at startup
-        initializeSampleAccounts(); // Ensures sample accounts exist if not loaded
-    }
+    private PrintStream out; // Terminal screen the session writes to
 
-    // This method ensures sample accounts are created ONLY IF they don't already exist
-    // (i.e., not loaded from file). This prevents overwriting existing data.
-    private void initializeSampleAccounts() {
-        // Example of creating new accounts if they don't exist, for first run setup
-        if (!accounts.containsKey("123456789")) {
-            BankAccount acc1 = new BankAccount("123456789", "1234", 10000.00);
-            accounts.put("123456789", acc1);
-            acc1.saveToFile(); // Save this new account immediately
-            System.out.println("Created new sample account: " + acc1.getAccountNumber());
-        }
-        if (!accounts.containsKey("987654321")) {
-            BankAccount acc2 = new BankAccount("987654321", "4321", 5000.00);
-            accounts.put("987654321", acc2);
-            acc2.saveToFile(); // Save this new account immediately
-            System.out.println("Created new sample account: " + acc2.getAccountNumber());
-        }
+    // Constructor for an ATM terminal reading from in and writing to out
+    public ATM(AccountRegistry accounts, InputStream in, PrintStream out) {
+        this.scanner = new Scanner(in, "UTF-8"); // Initializes the scanner
+        this.out = out; // Sets the terminal output
+        this.session = new ATMSession(accounts); // Shares the registry with the other terminals
     }
 
-    // Main run method for the ATM application loop
+    // Main run method for the ATM session loop; returns when the user exits
     public void run() {
-        System.out.println("\n═══════════════════════════════════");
-        System.out.println("      WELCOME TO INDIAN BANK ATM");
-        System.out.println("═══════════════════════════════════");
+        try {
+            out.println("\n═══════════════════════════════════");
+            out.println("      WELCOME TO INDIAN BANK ATM");
+            out.println("═══════════════════════════════════");
 
-        while (true) { // Loop for main ATM menu (Login/Exit)
-            System.out.println("\n1. Login");
-            System.out.println("2. Exit");
-            int choice = getIntInput("Enter choice: "); // Gets user's choice
+            while (true) { // Loop for main ATM menu (Login/Exit)
+                out.println("\n1. Login");
+                out.println("2. Exit");
+                int choice = getIntInput("Enter choice: "); // Gets user's choice
 
-            switch (choice) {
-                case 1:
-                    if (login()) { // Attempts to log in
-                        showMainMenu(); // If login successful, show main account menu
-                    }
-                    break;
-                case 2:
-                    System.out.println("\n🙏 Thank you for using our ATM. Goodbye!"); // Exit message
-                    saveAllAccounts(); // Saves all accounts before exiting
-                    return; // Exits the application
-                default:
-                    System.out.println("❌ Invalid choice"); // Error for invalid input
+                switch (choice) {
+                    case 1:
+                        if (login()) { // Attempts to log in
+                            showMainMenu(); // If login successful, show main account menu
+                        }
+                        break;
+                    case 2:
+                        out.println("\n🙏 Thank you for using our ATM. Goodbye!"); // Exit message
+                        return; // Ends the session
+                    default:
+                        out.println("❌ Invalid choice"); // Error for invalid input
+                }
+            }
+        } finally {
+            if (session.isLoggedIn()) { // Terminal went away while logged in
+                session.logout();
             }
         }
     }
 
     // Handles the login process for a bank account
     private boolean login() {
-        System.out.println("\n═══════════════════════════════════");
-        System.out.println("            LOGIN");
-        System.out.println("═══════════════════════════════════");
+        out.println("\n═══════════════════════════════════");
+        out.println("            LOGIN");
+        out.println("═══════════════════════════════════");
 
         String accountNumber = getStringInput("Enter account number: "); // Gets account number from user
         String pin = getStringInput("Enter PIN: "); // Gets PIN from user
 
-        BankAccount account = accounts.get(accountNumber); // Retrieves the account from the map
-        // Checks if the account exists and if the PIN is correct
-        if (account != null && account.verifyPin(pin)) {
-            currentAccount = account; // Sets the current logged-in account
-            System.out.println("\n✅ Login successful!"); // Success message
-            return true; // Returns true for successful login
+        switch (session.login(accountNumber, pin)) {
+            case SUCCESS:
+                out.println("\n✅ Login successful!"); // Success message
+                return true; // Returns true for successful login
+            case LOCKED_OUT:
+                long lockedFor = session.lockedForMillis(accountNumber);
+                out.println("\n❌ Too many incorrect PIN attempts. Try again in " + (lockedFor / 60000 + 1) + " minute(s)."); // Lock-out message
+                return false;
+            case NOW_LOCKED_OUT:
+                out.println("\n❌ Too many incorrect PIN attempts. This account is temporarily locked."); // Lock-out message
+                return false;
+            default:
+                out.println("\n❌ Invalid account number or PIN"); // Error message for failed login
+                return false; // Returns false for failed login
         }
-
-        System.out.println("\n❌ Invalid account number or PIN"); // Error message for failed login
-        return false; // Returns false for failed login
     }
 
     // Displays the main menu for a logged-in user and handles their choices
     private void showMainMenu() {
-        while (currentAccount != null) { // Loop continues as long as a user is logged in
-            System.out.println("\n═══════════════════════════════════");
-            System.out.println("            MAIN MENU");
-            System.out.println("═══════════════════════════════════");
-            System.out.println("1. Check Balance");
-            System.out.println("2. Deposit Money");
-            System.out.println("3. Withdraw Money");
-            System.out.println("4. Transaction History");
-            System.out.println("5. Change PIN");
-            System.out.println("6. Logout");
+        while (session.isLoggedIn()) { // Loop continues as long as a user is logged in
+            out.println("\n═══════════════════════════════════");
+            out.println("            MAIN MENU");
+            out.println("═══════════════════════════════════");
+            out.println("1. Check Balance");
+            out.println("2. Deposit Money");
+            out.println("3. Withdraw Money");
+            out.println("4. Transfer Money");
+            out.println("5. Transaction History");
+            out.println("6. Change PIN");
+            out.println("7. Logout");
 
             int choice = getIntInput("Enter choice: "); // Gets user's choice
 
             switch (choice) {
                 case 1:
-                    currentAccount.displayBalance(); // Displays current account balance
+                    session.displayBalance(out); // Displays current account balance
                     break;
                 case 2:
                     doDeposit(); // Initiates deposit process
@@ -274,142 +2920,907 @@ class ATM {
                     doWithdraw(); // Initiates withdrawal process
                     break;
                 case 4:
-                    currentAccount.displayTransactionHistory(); // Displays transaction history
+                    doTransfer(); // Initiates transfer process
                     break;
                 case 5:
-                    changePin(); // Initiates PIN change process
+                    showHistory(); // Displays a mini statement or a filtered transaction history
                     break;
                 case 6:
-                    currentAccount.saveToFile(); // Saves the current account's data before logging out
-                    currentAccount = null; // Logs out the current account
-                    System.out.println("✅ Logged out successfully."); // Logout confirmation
+                    changePin(); // Initiates PIN change process
+                    break;
+                case 7:
+                    session.logout();
+                    out.println("✅ Logged out successfully."); // Logout confirmation
                     break;
                 default:
-                    System.out.println("❌ Invalid choice"); // Error for invalid input
+                    out.println("❌ Invalid choice"); // Error for invalid input
             }
         }
     }
 
+    // Lets the user choose between a mini statement, a date range and the full history
+    private void showHistory() {
+        out.println("\n1. Mini Statement (last " + MINI_STATEMENT_SIZE + " transactions)");
+        out.println("2. Transactions Between Dates");
+        out.println("3. Full Transaction History");
+        int choice = getIntInput("Enter choice: "); // Gets user's choice
+
+        String title;
+        HistoryQuery query;
+        switch (choice) {
+            case 1:
+                title = "         MINI STATEMENT";
+                query = HistoryQuery.lastN(MINI_STATEMENT_SIZE);
+                break;
+            case 2:
+                LocalDate from = getDateInput("Enter start date (dd-MM-yyyy): ");
+                LocalDate to = getDateInput("Enter end date (dd-MM-yyyy): ");
+                ZoneId zone = ZoneId.systemDefault();
+                title = "      TRANSACTION HISTORY";
+                query = HistoryQuery.all().between(from.atStartOfDay(zone).toInstant().toEpochMilli(),
+                        to.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli()); // The end date is included
+                String type = getStringInput("Show (all/deposits/withdrawals): ").toLowerCase();
+                if (type.startsWith("d")) {
+                    query = query.ofType(TransactionJournal.TYPE_DEPOSIT);
+                } else if (type.startsWith("w")) {
+                    query = query.ofType(TransactionJournal.TYPE_WITHDRAWAL);
+                }
+                break;
+            case 3:
+                title = "      TRANSACTION HISTORY";
+                query = HistoryQuery.all();
+                break;
+            default:
+                out.println("❌ Invalid choice"); // Error for invalid input
+                return;
+        }
+
+        session.displayHistory(out, title, query); // Displays the matching transactions
+    }
+
     // Handles the deposit operation
     private void doDeposit() {
-        System.out.println("\n═══════════════════════════════════");
-        System.out.println("            DEPOSIT");
-        System.out.println("═══════════════════════════════════");
+        out.println("\n═══════════════════════════════════");
+        out.println("            DEPOSIT");
+        out.println("═══════════════════════════════════");
 
-        double amount = getDoubleInput("Enter amount (minimum ₹100): "); // Gets deposit amount from user
-        if (amount >= 100) { // Validates minimum deposit amount
-            currentAccount.deposit(amount); // Calls deposit method on the current account
-        } else {
-            System.out.println("\n❌ Error: Minimum deposit is ₹100"); // Error message for low amount
+        long amount = getAmountInput("Enter amount (minimum ₹100): "); // Gets deposit amount in paise from user
+        switch (session.deposit(amount)) {
+            case SUCCESS:
+                out.println("\n✅ Deposit successful. New balance: " + Money.format(session.balance())); // Confirms success
+                break;
+            case BELOW_MINIMUM:
+                out.println("\n❌ Error: Minimum deposit is ₹100"); // Error message for low amount
+                break;
+            case FAILED:
+                out.println("\n❌ Error: Deposit could not be recorded. Your balance is unchanged."); // Error message for I/O failure
+                break;
+            default:
+                out.println("\n❌ Error: Deposit amount must be positive"); // Error message for invalid amount
         }
     }
 
     // Handles the withdrawal operation
     private void doWithdraw() {
-        System.out.println("\n═══════════════════════════════════");
-        System.out.println("            WITHDRAW");
-        System.out.println("═══════════════════════════════════");
-
-        double amount = getDoubleInput("Enter amount (multiples of ₹100): "); // Gets withdrawal amount from user
-        if (amount < 100) { // Validates minimum withdrawal amount
-            System.out.println("\n❌ Error: Minimum withdrawal is ₹100"); // Error message for low amount
-        } else if (amount % 100 != 0) { // Validates if amount is a multiple of 100
-            System.out.println("\n❌ Error: Amount must be in multiples of ₹100"); // Error message for non-multiple
-        } else {
-            currentAccount.withdraw(amount); // Calls withdrawal method on the current account
+        out.println("\n═══════════════════════════════════");
+        out.println("            WITHDRAW");
+        out.println("═══════════════════════════════════");
+
+        long amount = getAmountInput("Enter amount (multiples of ₹100): "); // Gets withdrawal amount in paise from user
+        switch (session.withdraw(amount)) {
+            case SUCCESS:
+                out.println("\n✅ Withdrawal successful. New balance: " + Money.format(session.balance())); // Confirms success
+                break;
+            case BELOW_MINIMUM:
+                out.println("\n❌ Error: Minimum withdrawal is ₹100"); // Error message for low amount
+                break;
+            case NOT_A_MULTIPLE:
+                out.println("\n❌ Error: Amount must be in multiples of ₹100"); // Error message for non-multiple
+                break;
+            case INSUFFICIENT_FUNDS:
+                out.println("\n❌ Error: Insufficient funds. Available balance: " + Money.format(session.balance())); // Error message for insufficient funds
+                break;
+            case DAILY_LIMIT_EXCEEDED:
+                out.println("\n❌ Error: Daily withdrawal limit is " + Money.format(WithdrawalLimits.DAILY_LIMIT)
+                        + ". You can withdraw up to " + Money.format(session.remainingWithdrawalLimit()) + " now."); // Error message for the 24-hour limit
+                break;
+            case HOURLY_LIMIT_EXCEEDED:
+                out.println("\n❌ Error: Hourly withdrawal limit is " + Money.format(WithdrawalLimits.HOURLY_LIMIT)
+                        + ". You can withdraw up to " + Money.format(session.remainingWithdrawalLimit()) + " now."); // Error message for the one-hour limit
+                break;
+            case TOO_MANY_WITHDRAWALS:
+                out.println("\n❌ Error: At most " + WithdrawalLimits.HOURLY_WITHDRAWALS + " withdrawals are allowed per hour. Please try later."); // Error message for the velocity limit
+                break;
+            case FAILED:
+                out.println("\n❌ Error: Withdrawal could not be recorded. Your balance is unchanged."); // Error message for I/O failure
+                break;
+            default:
+                out.println("\n❌ Error: Withdrawal amount must be positive"); // Error message for invalid amount
+        }
+    }
+
+    // Handles the transfer operation
+    private void doTransfer() {
+        out.println("\n═══════════════════════════════════");
+        out.println("            TRANSFER");
+        out.println("═══════════════════════════════════");
+
+        String target = getStringInput("Enter recipient account number: "); // Gets the target account from user
+        long amount = getAmountInput("Enter amount: "); // Gets transfer amount in paise from user
+
+        switch (session.transfer(target, amount)) {
+            case SUCCESS:
+                out.println("\n✅ Transfer successful. New balance: " + Money.format(session.balance())); // Confirms success
+                break;
+            case INSUFFICIENT_FUNDS:
+                out.println("\n❌ Error: Insufficient funds. Available balance: " + Money.format(session.balance())); // Error message for insufficient funds
+                break;
+            case NO_SUCH_ACCOUNT:
+                out.println("\n❌ Error: Recipient account not found"); // Error message for unknown target
+                break;
+            case SAME_ACCOUNT:
+                out.println("\n❌ Error: Cannot transfer to the same account"); // Error message for self-transfer
+                break;
+            case INVALID_AMOUNT:
+                out.println("\n❌ Error: Transfer amount must be positive"); // Error message for invalid amount
+                break;
+            case DEFERRED:
+                out.println("\n⚠️ Transfer debited. The recipient will be credited when the ATM restarts."); // Recovery finishes the transfer
+                break;
+            default:
+                out.println("\n❌ Error: Transfer could not be completed. Your balance is unchanged."); // Error message for I/O failure
         }
     }
 
     // Handles the PIN change operation
     private void changePin() {
-        System.out.println("\n═══════════════════════════════════");
-        System.out.println("            CHANGE PIN");
-        System.out.println("═══════════════════════════════════");
+        out.println("\n═══════════════════════════════════");
+        out.println("            CHANGE PIN");
+        out.println("═══════════════════════════════════");
 
         String currentPin = getStringInput("Enter current PIN: "); // Gets current PIN from user
-        if (!currentAccount.verifyPin(currentPin)) { // Verifies the current PIN
-            System.out.println("\n❌ Incorrect current PIN"); // Error message for incorrect PIN
-            return; // Exits if PIN is incorrect
+        switch (session.checkPin(currentPin)) { // Verifies the current PIN before asking for the new one
+            case SUCCESS:
+                break;
+            case LOCKED_OUT:
+                out.println("\n❌ Incorrect current PIN"); // Error message for incorrect PIN
+                out.println("❌ Too many incorrect PIN attempts. Logging out."); // Lock-out ends the session
+                return;
+            default:
+                out.println("\n❌ Incorrect current PIN"); // Error message for incorrect PIN
+                return; // Exits if PIN is incorrect
         }
 
         String newPin = getStringInput("Enter new PIN (4 digits): "); // Gets new PIN from user
-        // Validates if the new PIN is 4 digits and contains only digits
-        if (newPin.length() != 4 || !newPin.matches("\\d+")) {
-            System.out.println("\n❌ PIN must be 4 digits"); // Error message for invalid new PIN format
-            return; // Exits if new PIN is invalid
+        switch (session.changePin(currentPin, newPin)) { // The current PIN is checked again against the session tag
+            case SUCCESS:
+                out.println("\n✅ PIN changed successfully"); // Confirmation message
+                break;
+            case INVALID_PIN:
+                out.println("\n❌ PIN must be 4 digits"); // Error message for invalid new PIN format
+                break;
+            default:
+                out.println("\n❌ PIN could not be changed"); // Error message for any other failure
         }
+    }
 
-        currentAccount.changePin(newPin); // Changes the PIN on the current account
-        System.out.println("\n✅ PIN changed successfully"); // Confirmation message
+    // Helper method to get string input from the user
+    private String getStringInput(String prompt) {
+        out.print(prompt); // Prints the prompt
+        out.flush(); // Remote terminals only see the prompt once it is flushed
+        return scanner.nextLine().trim(); // Reads the line, trims whitespace, and returns it
     }
 
-    // Saves data for all accounts in the system to individual files
-    private void saveAllAccounts() {
-        System.out.println("\nSaving all account data...");
-        for (BankAccount account : accounts.values()) { // Iterates through all accounts in the map
-            account.saveToFile(); // Calls saveToFile method for each account
+    // Helper method to get integer input from the user with error handling
+    private int getIntInput(String prompt) {
+        while (true) { // Loops until valid integer input is received
+            try {
+                return Integer.parseInt(getStringInput(prompt)); // Parses input to integer
+            } catch (NumberFormatException e) { // Catches if input is not a valid number
+                out.println("❌ Invalid input. Please enter a number."); // Error message
+            }
         }
-        System.out.println("All accounts saved.");
     }
 
-    // Loads all existing accounts from files into the ATM system
-    private void loadAllAccounts() {
-        System.out.println("\nLoading existing accounts...");
-        File currentDir = new File("."); // Gets the current directory
-        // Filters for .txt files that are not named "log.txt" (assuming account files are named after account numbers)
-        File[] files = currentDir.listFiles((dir, name) -> name.endsWith(".txt") && !name.equals("log.txt"));
+    // Helper method to get a date from the user with error handling
+    private LocalDate getDateInput(String prompt) {
+        while (true) { // Loops until a valid date is received
+            try {
+                return LocalDate.parse(getStringInput(prompt), DATE_FORMAT); // Parses input as dd-MM-yyyy
+            } catch (DateTimeParseException e) { // Catches if input is not a valid date
+                out.println("❌ Invalid date. Please use dd-MM-yyyy."); // Error message
+            }
+        }
+    }
+
+    // Helper method to get a rupee amount from the user as paise, with error handling
+    private long getAmountInput(String prompt) {
+        while (true) { // Loops until a valid amount is received
+            try {
+                return Money.parse(getStringInput(prompt)); // Parses input exactly to paise
+            } catch (NumberFormatException e) { // Catches if input is not a valid number
+                out.println("❌ Invalid input. Please enter a positive amount."); // Error message
+            }
+        }
+    }
+}
+
+/**
+ * ATMServer serves many ATM terminals from one process. Each terminal connects
+ * over TCP and gets its own ATM session running on its own thread; all
+ * sessions share one AccountRegistry.
+ */
+class ATMServer {
+    private final AccountRegistry accounts; // Registry shared by every session
+    private final int port; // TCP port terminals connect to
+    private final ExecutorService sessions = newSessionExecutor(); // Runs one task per connected terminal
+
+    // Constructor for the ATMServer class
+    public ATMServer(AccountRegistry accounts, int port) {
+        this.accounts = accounts;
+        this.port = port;
+    }
+
+    // Accepts terminal connections until the process is stopped
+    public void run() throws IOException {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            sessions.shutdownNow(); // Stops accepting work from terminals
+            accounts.saveAllAccounts(); // Saves all accounts before exiting
+        }));
+
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("ATM server listening on port " + port);
+            while (true) {
+                Socket terminal = server.accept(); // Waits for the next terminal
+                sessions.execute(() -> serve(terminal));
+            }
+        }
+    }
+
+    // Runs one ATM session for a connected terminal
+    private void serve(Socket terminal) {
+        String name = String.valueOf(terminal.getRemoteSocketAddress());
+        System.out.println("Terminal connected: " + name);
+        try (Socket socket = terminal) {
+            PrintStream screen = new PrintStream(new BufferedOutputStream(socket.getOutputStream()), true, "UTF-8");
+            new ATM(accounts, socket.getInputStream(), screen).run();
+        } catch (IOException | NoSuchElementException e) { // Terminal disconnected mid-session
+            System.out.println("Terminal " + name + " disconnected: " + e.getMessage());
+        }
+        System.out.println("Terminal closed: " + name);
+    }
+
+    // Uses a virtual thread per session when the JDK provides them (Java 21+),
+    // and otherwise falls back to a cached pool of platform threads
+    private static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
+
+/**
+ * BatchRunner replays a script of ATM sessions against the accounts in the
+ * current directory at full speed on several worker threads, without any
+ * terminal, and reports throughput and latency for each kind of operation.
+ * A script holds one command per line:
+ *
+ *   open <account> <pin> <balance>  creates the account before the run if it does not exist
+ *   login <account> <pin>            starts a session; the commands up to logout belong to it
+ *   balance, deposit <amount>, withdraw <amount>, transfer <account> <amount>,
+ *   statement [count], changepin <old> <new>, logout
+ *
+ * Blank lines and lines starting with # are ignored. Each session runs in
+ * order on one worker while different sessions run concurrently.
+ */
+class BatchRunner {
+    // The kinds of command a script can contain, reported separately
+    private enum Op { LOGIN, BALANCE, DEPOSIT, WITHDRAW, TRANSFER, STATEMENT, CHANGE_PIN, LOGOUT }
+
+    // One parsed script command; amounts are parsed up front so that parsing is not timed
+    private static final class Command {
+        final Op op; // What to do
+        final String text; // Account number or current PIN, if the command has one
+        final String text2; // PIN or new PIN, if the command has one
+        final long amount; // Amount in paise, or the statement length
 
-        if (files != null) { // Checks if any files were found
-            for (File file : files) { // Iterates through each found file
-                String fileName = file.getName();
-                String accountNumber = fileName.substring(0, fileName.lastIndexOf(".txt")); // Extracts account number from file name
+        Command(Op op, String text, String text2, long amount) {
+            this.op = op;
+            this.text = text;
+            this.text2 = text2;
+            this.amount = amount;
+        }
+    }
+
+    // Latencies of one kind of operation on one worker, in nanoseconds
+    private static final class Latencies {
+        long[] nanos = new long[1024]; // Recorded latencies; grows as needed
+        int count; // Number of latencies recorded
+        long failed; // Operations that did not succeed
+
+        void record(long elapsed, boolean succeeded) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = elapsed;
+            if (!succeeded) {
+                failed++;
+            }
+        }
+    }
+
+    // Runs the script with the given number of workers; returns false if the script could not be read
+    static boolean run(AccountRegistry accounts, String scriptFile, int threads) throws Exception {
+        List<String[]> opens = new ArrayList<>();
+        List<List<Command>> sessions = new ArrayList<>();
+        if (!parse(scriptFile, opens, sessions)) {
+            return false;
+        }
+        int created = 0;
+        for (String[] open : opens) { // Setup is not timed
+            if (accounts.createAccount(open[0], open[1], Money.parse(open[2])) != null) {
+                created++;
+            }
+        }
+        if (created > 0) {
+            System.out.println("Created " + created + " account(s) for the batch.");
+        }
+
+        AtomicInteger next = new AtomicInteger(); // Next session to hand out
+        Latencies[][] results = new Latencies[threads][Op.values().length];
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            Latencies[] mine = results[t];
+            for (int op = 0; op < mine.length; op++) {
+                mine[op] = new Latencies();
+            }
+            workers[t] = new Thread(() -> {
+                ATMSession session = new ATMSession(accounts); // One terminal per worker
+                int index;
+                while ((index = next.getAndIncrement()) < sessions.size()) {
+                    for (Command command : sessions.get(index)) {
+                        long begin = System.nanoTime();
+                        boolean succeeded = execute(session, command);
+                        mine[command.op.ordinal()].record(System.nanoTime() - begin, succeeded);
+                        if (!session.isLoggedIn()) { // Login failed or the session was locked out: skip the rest
+                            break;
+                        }
+                    }
+                    if (session.isLoggedIn()) { // Sessions without a logout are ended here, untimed
+                        session.logout();
+                    }
+                }
+            }, "batch-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        report(results, sessions.size(), threads, (System.nanoTime() - start) / 1e9);
+        return true;
+    }
+
+    // Executes one command on the session; returns true if it succeeded
+    private static boolean execute(ATMSession session, Command command) {
+        switch (command.op) {
+            case LOGIN:
+                return session.login(command.text, command.text2) == LoginResult.SUCCESS;
+            case BALANCE:
+                session.balance();
+                return true;
+            case DEPOSIT:
+                return session.deposit(command.amount) == TransactionResult.SUCCESS;
+            case WITHDRAW:
+                return session.withdraw(command.amount) == TransactionResult.SUCCESS;
+            case TRANSFER:
+                return session.transfer(command.text, command.amount) == TransactionResult.SUCCESS;
+            case STATEMENT:
+                try {
+                    TransactionHistory transactions = session.history(HistoryQuery.lastN((int) command.amount));
+                    StringBuilder text = new StringBuilder(transactions.size() * 64); // Rendered as a terminal would
+                    transactions.writeTo(text, 0, transactions.size());
+                    return true;
+                } catch (IOException e) { // Catches potential I/O errors
+                    return false;
+                }
+            case CHANGE_PIN:
+                return session.changePin(command.text, command.text2) == TransactionResult.SUCCESS;
+            default:
+                session.logout();
+                return true;
+        }
+    }
 
-                BankAccount loadedAccount = BankAccount.loadFromFile(accountNumber); // Attempts to load the account from its file
-                if (loadedAccount != null) { // If account was successfully loaded
-                    accounts.put(loadedAccount.getAccountNumber(), loadedAccount); // Adds the loaded account to the map
-                    System.out.println("Loaded account: " + loadedAccount.getAccountNumber()); // Confirms loading
+    // Reads the script into account openings and sessions; prints the first error and returns false
+    private static boolean parse(String scriptFile, List<String[]> opens, List<List<Command>> sessions) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(scriptFile), "UTF-8"))) {
+            List<Command> session = null; // Session being read, or null between sessions
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] words = line.split("\\s+");
+                String verb = words[0].toLowerCase();
+                try {
+                    if (verb.equals("open") && words.length == 4) {
+                        Money.parse(words[3]); // Rejects a bad balance while the line number is known
+                        opens.add(new String[] {words[1], words[2], words[3]});
+                    } else if (verb.equals("login") && words.length == 3) {
+                        session = new ArrayList<>();
+                        sessions.add(session);
+                        session.add(new Command(Op.LOGIN, words[1], words[2], 0));
+                    } else if (session == null) {
+                        System.out.println("❌ Line " + lineNumber + ": '" + verb + "' outside a session; start one with login");
+                        return false;
+                    } else if (verb.equals("balance") && words.length == 1) {
+                        session.add(new Command(Op.BALANCE, null, null, 0));
+                    } else if (verb.equals("deposit") && words.length == 2) {
+                        session.add(new Command(Op.DEPOSIT, null, null, Money.parse(words[1])));
+                    } else if (verb.equals("withdraw") && words.length == 2) {
+                        session.add(new Command(Op.WITHDRAW, null, null, Money.parse(words[1])));
+                    } else if (verb.equals("transfer") && words.length == 3) {
+                        session.add(new Command(Op.TRANSFER, words[1], null, Money.parse(words[2])));
+                    } else if (verb.equals("statement") && words.length <= 2) {
+                        session.add(new Command(Op.STATEMENT, null, null, words.length == 2 ? Integer.parseInt(words[1]) : 10));
+                    } else if (verb.equals("changepin") && words.length == 3) {
+                        session.add(new Command(Op.CHANGE_PIN, words[1], words[2], 0));
+                    } else if (verb.equals("logout") && words.length == 1) {
+                        session.add(new Command(Op.LOGOUT, null, null, 0));
+                        session = null;
+                    } else {
+                        System.out.println("❌ Line " + lineNumber + ": unrecognised command '" + line + "'");
+                        return false;
+                    }
+                } catch (NumberFormatException e) { // Catches a malformed amount or count
+                    System.out.println("❌ Line " + lineNumber + ": invalid number in '" + line + "'");
+                    return false;
                 }
             }
+            return true;
+        } catch (IOException e) { // Catches potential I/O errors
+            System.out.println("❌ Error reading batch script: " + e.getMessage()); // Prints error message
+            return false;
         }
-        System.out.println("Account loading complete. Total accounts loaded: " + accounts.size());
     }
 
-    // Helper method to get string input from the user
-    private String getStringInput(String prompt) {
-        System.out.print(prompt); // Prints the prompt
-        return scanner.nextLine().trim(); // Reads the line, trims whitespace, and returns it
+    // Prints throughput and p50/p99/p99.9 latency for each kind of operation
+    private static void report(Latencies[][] results, int sessions, int threads, double seconds) {
+        long total = 0;
+        for (Latencies[] worker : results) {
+            for (Latencies latencies : worker) {
+                total += latencies.count;
+            }
+        }
+        System.out.printf("%nSessions: %d on %d threads in %.2f s, %d operations (%.0f per second)%n",
+                sessions, threads, seconds, total, total / seconds);
+        System.out.printf("%-11s %10s %8s %12s %10s %10s %10s%n", "Operation", "Count", "Failed", "Per second", "p50 µs", "p99 µs", "p99.9 µs");
+        for (Op op : Op.values()) {
+            int count = 0;
+            long failed = 0;
+            for (Latencies[] worker : results) {
+                count += worker[op.ordinal()].count;
+                failed += worker[op.ordinal()].failed;
+            }
+            if (count == 0) {
+                continue;
+            }
+            long[] merged = new long[count];
+            int filled = 0;
+            for (Latencies[] worker : results) {
+                Latencies latencies = worker[op.ordinal()];
+                System.arraycopy(latencies.nanos, 0, merged, filled, latencies.count);
+                filled += latencies.count;
+            }
+            Arrays.sort(merged);
+            System.out.printf("%-11s %10d %8d %12.0f %10.1f %10.1f %10.1f%n", op.name().toLowerCase(), count, failed, count / seconds,
+                    percentile(merged, 0.50) / 1e3, percentile(merged, 0.99) / 1e3, percentile(merged, 0.999) / 1e3);
+        }
     }
 
-    // Helper method to get integer input from the user with error handling
-    private int getIntInput(String prompt) {
-        while (true) { // Loops until valid integer input is received
-            try {
-                System.out.print(prompt); // Prints the prompt
-                return Integer.parseInt(scanner.nextLine().trim()); // Parses input to integer
-            } catch (NumberFormatException e) { // Catches if input is not a valid number
-                System.out.println("❌ Invalid input. Please enter a number."); // Error message
+    // Returns the value at the given percentile of sorted latencies (nearest rank)
+    private static long percentile(long[] sorted, double fraction) {
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+}
+
+/**
+ * Benchmarks measures the cost of the account operations, of saving and
+ * loading account files with small, medium and very large histories, of
+ * statements, and of a concurrent mixed workload through ATMSession. Each
+ * benchmark is warmed up and then timed over several fixed-length
+ * iterations; the mean and its spread are printed and written to a results
+ * file that can be checked in and passed back as the baseline of a later run.
+ */
+class Benchmarks {
+    private static final int WARMUP_ITERATIONS = 2; // Untimed iterations that let the JIT compile the code
+    private static final int MEASURED_ITERATIONS = 5; // Timed iterations averaged into the result
+    private static final long ITERATION_NANOS = Long.getLong("atm.benchIterationMillis", 1000) * 1_000_000; // Length of one iteration
+    private static final int[] HISTORY_SIZES = {10, 1_000, 100_000}; // Small, medium and very large account histories
+    static volatile long sink; // Receives every result so the JIT cannot drop the measured work
+
+    // One measured call; returns a value that is fed to the sink
+    private interface Operation {
+        long run() throws Exception;
+    }
+
+    // Mean time per operation and its standard deviation across iterations, in nanoseconds
+    private static final class Result {
+        final String name; // Benchmark name, the key used to match a baseline
+        final double mean; // Mean nanoseconds per operation
+        final double error; // Standard deviation between iterations
+
+        Result(String name, double mean, double error) {
+            this.name = name;
+            this.mean = mean;
+            this.error = error;
+        }
+    }
+
+    // Runs every benchmark, writes the results file and compares with the baseline file if one is given
+    static boolean run(String resultsFile, String baselineFile) throws Exception {
+        String[] names = new File(".").list();
+        if (names != null && names.length > 0) {
+            System.out.println("❌ Run --bench in an empty directory; it creates its own accounts.");
+            return false;
+        }
+        Map<String, Double> baseline = baselineFile == null ? Collections.emptyMap() : readResults(baselineFile);
+        if (baseline == null) {
+            return false;
+        }
+
+        AccountRegistry accounts = new AccountRegistry();
+        String pinHash = PinHasher.hash("0000"); // Hashed once; the benchmarks never log in with it
+        List<Result> results = new ArrayList<>();
+
+        // In-memory and single-record costs
+        accounts.createAccount("7000000000", "0000", Money.ofRupees(1_000_000));
+        BankAccount depositAccount = accounts.acquire("7000000000");
+        results.add(measure("deposit", () -> {
+            depositAccount.deposit(Money.ofRupees(100)); // Includes the journal append, without fsync
+            return depositAccount.getBalance();
+        }));
+        results.add(measure("deposit.fsync", () -> {
+            depositAccount.deposit(Money.ofRupees(100));
+            depositAccount.sync(); // The cost of -Datm.fsync=always
+            return depositAccount.getBalance();
+        }));
+        TransactionHistory statement = depositAccount.queryHistory(HistoryQuery.lastN(10));
+        results.add(measure("statement.render", () -> {
+            StringBuilder text = new StringBuilder(640);
+            statement.writeTo(text, 0, statement.size());
+            return text.length();
+        }));
+        accounts.release(depositAccount);
+
+        // Loading an account from its header in the account snapshot
+        accounts.createAccount("7000000001", "0000", Money.ofRupees(1_000_000));
+        results.add(measure("loadFromSnapshot", () -> {
+            BankAccount loaded = accounts.loadAccount("7000000001");
+            loaded.close();
+            return loaded.getBalance();
+        }));
+
+        // Saving and loading account files, and statements read from the journal, by history size
+        for (int size : HISTORY_SIZES) {
+            String number = String.valueOf(7_000_000_100L + size);
+            BankAccount sized = new BankAccount(number, pinHash, Money.ofRupees(1_000_000), legacyHistory(size));
+            for (int i = 0; i < size; i++) {
+                sized.deposit(Money.ofRupees(100)); // The same number of journaled transactions
+            }
+            sized.sync();
+            results.add(measure("saveToFile." + size, () -> {
+                sized.saveToFile();
+                return sized.getBalance();
+            }));
+            results.add(measure("loadFromFile." + size, () -> {
+                BankAccount loaded = BankAccount.loadFromFile(number);
+                loaded.close();
+                return loaded.getBalance();
+            }));
+            results.add(measure("statement.lastN." + size, () -> sized.queryHistory(HistoryQuery.lastN(10)).size()));
+            sized.close();
+        }
+
+        // Loading an account whose file is behind its journal, as after a crash
+        BankAccount behind = new BankAccount("7000000200", pinHash, Money.ofRupees(1_000_000), new TransactionHistory());
+        behind.saveToFile(); // Checkpoints before the journaled transactions below
+        for (int i = 0; i < 10_000; i++) {
+            behind.deposit(Money.ofRupees(100));
+        }
+        behind.close();
+        results.add(measure("loadFromFile.journalTail.10000", () -> {
+            BankAccount loaded = BankAccount.loadFromFile("7000000200");
+            loaded.close();
+            return loaded.getBalance();
+        }));
+
+        results.add(measureMixedWorkload(accounts));
+        accounts.saveAllAccounts();
+
+        report(results, baseline);
+        return writeResults(resultsFile, results);
+    }
+
+    // Times one operation: runs it repeatedly for each iteration and returns the mean time per call
+    private static Result measure(String name, Operation operation) throws Exception {
+        double[] perOperation = new double[MEASURED_ITERATIONS];
+        for (int iteration = -WARMUP_ITERATIONS; iteration < MEASURED_ITERATIONS; iteration++) {
+            long calls = 0;
+            long start = System.nanoTime();
+            long end = start + ITERATION_NANOS;
+            long now;
+            do {
+                sink += operation.run();
+                calls++;
+            } while ((now = System.nanoTime()) < end);
+            if (iteration >= 0) {
+                perOperation[iteration] = (double) (now - start) / calls;
             }
         }
+        return summarise(name, perOperation);
     }
 
-    // Helper method to get double input from the user with error handling
-    private double getDoubleInput(String prompt) {
-        while (true) { // Loops until valid double input is received
-            try {
-                System.out.print(prompt); // Prints the prompt
-                return Double.parseDouble(scanner.nextLine().trim()); // Parses input to double
-            } catch (NumberFormatException e) { // Catches if input is not a valid number
-                System.out.println("❌ Invalid input. Please enter a number."); // Error message
+    // Times deposits, withdrawals, balance checks and transfers from one logged-in session per
+    // thread, with two threads per account so that sessions contend for the same accounts
+    private static Result measureMixedWorkload(AccountRegistry accounts) throws Exception {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        String[] numbers = new String[(threads + 1) / 2];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = String.valueOf(7_000_000_300L + i);
+            accounts.createAccount(numbers[i], "0000", Money.ofRupees(10_000_000));
+        }
+        ATMSession[] sessions = new ATMSession[threads];
+        for (int t = 0; t < threads; t++) { // Logged in once; login cost is measured by --bench-pin
+            sessions[t] = new ATMSession(accounts);
+            sessions[t].login(numbers[t / 2], "0000");
+        }
+
+        double[] perOperation = new double[MEASURED_ITERATIONS];
+        for (int iteration = -WARMUP_ITERATIONS; iteration < MEASURED_ITERATIONS; iteration++) {
+            AtomicLong calls = new AtomicLong();
+            long start = System.nanoTime();
+            long end = start + ITERATION_NANOS;
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                ATMSession session = sessions[t];
+                workers[t] = new Thread(() -> {
+                    java.util.concurrent.ThreadLocalRandom random = java.util.concurrent.ThreadLocalRandom.current();
+                    long mine = 0;
+                    while (System.nanoTime() < end) {
+                        int pick = random.nextInt(10);
+                        if (pick < 4) {
+                            session.deposit(Money.ofRupees(100));
+                        } else if (pick < 7) {
+                            session.withdraw(Money.ofRupees(100));
+                        } else if (pick < 9) {
+                            sink += session.balance();
+                        } else {
+                            session.transfer(numbers[random.nextInt(numbers.length)], Money.ofRupees(1));
+                        }
+                        mine++;
+                    }
+                    calls.addAndGet(mine);
+                });
+                workers[t].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            if (iteration >= 0) {
+                perOperation[iteration] = (double) (System.nanoTime() - start) / calls.get(); // Wall time per operation, all threads together
+            }
+        }
+        for (ATMSession session : sessions) {
+            session.logout();
+        }
+        return summarise("mixed." + threads + "threads", perOperation);
+    }
+
+    // Builds an account file history of the given number of lines
+    private static TransactionHistory legacyHistory(int size) {
+        TransactionHistory history = new TransactionHistory();
+        StringBuilder line = new StringBuilder(64);
+        long time = System.currentTimeMillis() - size * 60_000L;
+        for (int i = 0; i < size; i++) {
+            line.setLength(0);
+            TransactionHistory.TIME_FORMAT.formatTo(Instant.ofEpochMilli(time + i * 60_000L).atZone(ZoneId.systemDefault()), line);
+            history.addLegacyLine(Money.appendTo(line.append(i % 2 == 0 ? " - Deposit: " : " - Withdrawal: "), Money.ofRupees(100)).toString());
+        }
+        return history;
+    }
+
+    // Returns the mean and standard deviation of the per-iteration times
+    private static Result summarise(String name, double[] perOperation) {
+        double mean = 0;
+        for (double value : perOperation) {
+            mean += value;
+        }
+        mean /= perOperation.length;
+        double variance = 0;
+        for (double value : perOperation) {
+            variance += (value - mean) * (value - mean);
+        }
+        return new Result(name, mean, Math.sqrt(variance / Math.max(1, perOperation.length - 1)));
+    }
+
+    // Prints the results, with the change from the baseline where the baseline has the same benchmark
+    private static void report(List<Result> results, Map<String, Double> baseline) {
+        System.out.printf("%n%-32s %14s %12s %14s %10s%n", "Benchmark", "ns/op", "± error", "ops/s", "vs base");
+        for (Result result : results) {
+            Double before = baseline.get(result.name);
+            String change = before == null ? "" : String.format("%+.1f%%", (result.mean - before) / before * 100);
+            System.out.printf("%-32s %14.1f %12.1f %14.0f %10s%n", result.name, result.mean, result.error, 1e9 / result.mean, change);
+        }
+    }
+
+    // Writes one tab-separated line per benchmark: name, mean ns/op, error
+    private static boolean writeResults(String resultsFile, List<Result> results) {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(resultsFile), "UTF-8"))) {
+            writer.println("# IndianATM benchmarks, " + LocalDate.now() + ", Java " + System.getProperty("java.version")
+                    + ", " + Runtime.getRuntime().availableProcessors() + " cores, PBKDF2 iterations " + PinHasher.ITERATIONS);
+            writer.println("# benchmark\tns/op\terror");
+            for (Result result : results) {
+                writer.println(result.name + "\t" + String.format(Locale.ROOT, "%.1f", result.mean)
+                        + "\t" + String.format(Locale.ROOT, "%.1f", result.error));
+            }
+            System.out.println("\nResults written to " + resultsFile);
+            return true;
+        } catch (IOException e) { // Catches potential I/O errors
+            System.out.println("❌ Error writing benchmark results: " + e.getMessage()); // Prints error message
+            return false;
+        }
+    }
+
+    // Reads a results file written by writeResults; returns null if it cannot be read
+    private static Map<String, Double> readResults(String file) {
+        Map<String, Double> results = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                results.put(fields[0], Double.parseDouble(fields[1]));
             }
+            return results;
+        } catch (IOException | RuntimeException e) { // Catches I/O errors or malformed lines
+            System.out.println("❌ Error reading benchmark baseline " + file + ": " + e.getMessage()); // Prints error message
+            return null;
+        }
+    }
+}
+
+/**
+ * TransferStress checks that transfers conserve money under heavy contention:
+ * many threads move random amounts between a small set of accounts, then the
+ * total is compared in memory and again after reloading every account from
+ * disk. It creates its own accounts, so it only runs in an empty directory.
+ */
+class TransferStress {
+    // Runs the stress check; returns true if money was conserved
+    static boolean run(int threads, int transfers, int accountCount) throws Exception {
+        String[] names = new File(".").list();
+        if (names != null && names.length > 0) {
+            System.out.println("❌ Run --stress-transfers in an empty directory; it creates its own accounts.");
+            return false;
+        }
+
+        AccountRegistry accounts = new AccountRegistry();
+        BankAccount[] all = new BankAccount[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            String number = String.valueOf(5_000_000_000L + i);
+            accounts.createAccount(number, "0000", Money.ofRupees(1_000_000));
+            all[i] = accounts.acquire(number); // Held for the whole run so nothing is evicted
+        }
+        long before = total(all);
+
+        AtomicLong succeeded = new AtomicLong();
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int share = transfers / threads + (t < transfers % threads ? 1 : 0);
+            workers[t] = new Thread(() -> {
+                java.util.concurrent.ThreadLocalRandom random = java.util.concurrent.ThreadLocalRandom.current();
+                for (int i = 0; i < share; i++) {
+                    BankAccount from = all[random.nextInt(all.length)];
+                    BankAccount to = all[random.nextInt(all.length)];
+                    if (accounts.transfer(from, to.getAccountNumber(), random.nextLong(1, Money.ofRupees(5_000))) == TransactionResult.SUCCESS) {
+                        succeeded.incrementAndGet();
+                    }
+                }
+            });
+            workers[t].start();
         }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long after = total(all);
+
+        for (BankAccount account : all) {
+            accounts.release(account);
+        }
+        accounts.saveAllAccounts();
+        AccountRegistry reloaded = new AccountRegistry(); // Reads every balance back from the journals
+        BankAccount[] again = new BankAccount[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            again[i] = reloaded.acquire(all[i].getAccountNumber());
+        }
+        long recovered = total(again);
+        reloaded.saveAllAccounts();
+
+        System.out.printf("Transfers: %d attempted, %d succeeded in %.2f s (%.0f per second) on %d threads%n",
+                transfers, succeeded.get(), seconds, transfers / seconds, threads);
+        System.out.println("Total before:          " + Money.format(before));
+        System.out.println("Total after:           " + Money.format(after));
+        System.out.println("Total after reloading: " + Money.format(recovered));
+        boolean conserved = before == after && after == recovered;
+        System.out.println(conserved ? "✅ Money conserved" : "❌ Money NOT conserved");
+        return conserved;
+    }
+
+    // Sums the balances of the given accounts
+    private static long total(BankAccount[] accounts) {
+        long sum = 0;
+        for (BankAccount account : accounts) {
+            sum += account.getBalance();
+        }
+        return sum;
     }
 }
 
 // Main class to run the ATM application
 public class IndianATM {
-    public static void main(String[] args) {
-        // Corrected line: Create an instance of the ATM class, not IndianATM
-        ATM atm = new ATM();
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--bench-pin")) { // Measures login cost at the configured PIN hashing cost
+            PinHasher.benchmark(args.length > 1 ? Integer.parseInt(args[1]) : 5);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--bench")) { // Measures operation, persistence and concurrent costs
+            boolean completed = Benchmarks.run(args[1], args.length > 2 ? args[2] : null);
+            System.exit(completed ? 0 : 1);
+        }
+        if (args.length > 0 && args[0].equals("--stress-transfers")) { // Checks money conservation under contention
+            boolean conserved = TransferStress.run(
+                    args.length > 1 ? Integer.parseInt(args[1]) : 8,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000,
+                    args.length > 3 ? Integer.parseInt(args[3]) : 32);
+            System.exit(conserved ? 0 : 1);
+        }
+        AccountRegistry accounts = new AccountRegistry(); // Loads every account once for all terminals
+        if (args.length > 0 && args[0].equals("--export-accounts")) { // Writes every account's .txt file
+            System.out.println("Exported " + accounts.exportAccountFiles() + " account file(s).");
+            accounts.saveAllAccounts();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--import-accounts")) { // Makes the next load of each account read its .txt file
+            System.out.println("Imported " + accounts.importAccountFiles() + " account file(s).");
+            accounts.saveAllAccounts();
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--batch")) { // Replays a script of sessions without a terminal
+            int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            boolean completed = BatchRunner.run(accounts, args[1], threads);
+            accounts.saveAllAccounts();
+            System.exit(completed ? 0 : 1);
+        }
+        if (args.length > 0 && args[0].equals("--server")) { // Serves many terminals over TCP
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : 9090;
+            new ATMServer(accounts, port).run();
+            return;
+        }
+
+        ATM atm = new ATM(accounts, System.in, System.out); // A single terminal on this console
         atm.run(); // Starts the ATM application
+        accounts.saveAllAccounts(); // Saves all accounts before exiting
     }
 }
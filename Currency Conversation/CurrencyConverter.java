@@ -1,14 +1,267 @@
+import com.sun.net.httpserver.HttpServer; // Imports the JDK's embedded HTTP server for the mock rate service
+import java.io.IOException; // Imports IOException for failed rate fetches
+import java.io.Reader; // Imports Reader for reading the rates file
+import java.net.InetAddress; // Imports InetAddress to bind the mock service to loopback only
+import java.net.InetSocketAddress; // Imports InetSocketAddress for the mock service address
+import java.net.URI; // Imports URI for the rate service address
+import java.net.http.HttpClient; // Imports HttpClient for fetching rates over HTTP
+import java.net.http.HttpRequest; // Imports HttpRequest for fetching rates over HTTP
+import java.net.http.HttpResponse; // Imports HttpResponse for fetching rates over HTTP
+import java.nio.charset.StandardCharsets; // Imports StandardCharsets so rate files and responses are UTF-8
+import java.nio.file.Files; // Imports Files for reading the rates file
+import java.nio.file.Path; // Imports Path for the rates file location
+import java.nio.file.Paths; // Imports Paths to turn a file name into a Path
 import java.text.DecimalFormat; // Imports the DecimalFormat class for formatting numerical output
+import java.time.Duration; // Imports Duration for the cache time-to-live and HTTP timeouts
+import java.time.Instant; // Imports Instant to record when rates were fetched
+import java.time.LocalTime; // Imports LocalTime to show when rates were fetched
+import java.time.ZoneId; // Imports ZoneId to show fetch times in local time
+import java.time.temporal.ChronoUnit; // Imports ChronoUnit to show fetch times to the second
+import java.util.HashMap; // Imports HashMap for building a rate table
+import java.util.Locale; // Imports Locale so the mock service writes numbers the same way in every locale
+import java.util.Map; // Imports Map for currency code -> rate
+import java.util.Properties; // Imports Properties for parsing the rates file
+import java.util.Random; // Imports Random for the mock service's rate drift
 import java.util.Scanner;        // Imports the Scanner class for reading user input
+import java.util.concurrent.Executors; // Imports Executors to create the refresh thread
+import java.util.concurrent.ScheduledExecutorService; // Imports ScheduledExecutorService for periodic background refresh
+import java.util.concurrent.TimeUnit; // Imports TimeUnit for the refresh schedule
+import java.util.concurrent.atomic.AtomicBoolean; // Imports AtomicBoolean so only one refresh runs at a time
+import java.util.concurrent.atomic.AtomicReference; // Imports AtomicReference to swap in a new rate table atomically
+import java.util.regex.Matcher; // Imports Matcher for reading rates out of the JSON response
+import java.util.regex.Pattern; // Imports Pattern for reading rates out of the JSON response
+
+// RateTable is one immutable set of exchange rates to INR. A new table replaces the old one whole,
+// so a conversion that reads one table never mixes rates from two fetches.
+final class RateTable {
+    private final Map<String, Double> toInr; // Currency code -> value of one unit in INR; never changes
+    final String source; // Where the rates came from
+    final Instant fetchedAt; // When the rates were fetched
+
+    RateTable(Map<String, Double> toInr, String source, Instant fetchedAt) {
+        Map<String, Double> rates = new HashMap<>(toInr);
+        rates.put("INR", 1.0); // INR is the base currency
+        this.toInr = Map.copyOf(rates); // Unmodifiable copy, so the caller's map can change without affecting the table
+        this.source = source;
+        this.fetchedAt = fetchedAt;
+    }
+
+    // The fixed rates the converter used before rates could be fetched; also used until the first fetch completes
+    static RateTable defaults() {
+        return new RateTable(Map.of("USD", 85.50, "EUR", 88.25, "GBP", 102.10, "JPY", 0.67), "built-in rates", Instant.now());
+    }
+
+    // Value of one unit of the currency in INR
+    double toInr(String code) {
+        Double rate = toInr.get(code);
+        if (rate == null) throw new IllegalStateException("No rate for " + code); // Providers are checked, so this is a bug
+        return rate;
+    }
+
+    // Checks that every currency has a positive rate
+    static void validate(Map<String, Double> rates, String[] codes, String source) throws IOException {
+        for (String code : codes) {
+            if (code.equals("INR")) continue;
+            Double rate = rates.get(code);
+            if (rate == null || !(rate > 0) || rate.isInfinite()) throw new IOException(source + " has no valid rate for " + code);
+        }
+    }
+}
+
+// RateProvider fetches the current exchange rates; fetches may be slow and are never made on the conversion path
+interface RateProvider {
+    RateTable fetch() throws IOException; // Returns a new table or throws if the rates could not be read
+    String describe(); // Where the rates come from, for display
+}
+
+// FileRateProvider reads rates from a properties file such as "USD=85.50", one currency per line.
+// The file is read again on every refresh, so editing it updates the rates of a running converter.
+class FileRateProvider implements RateProvider {
+    private final Path file; // Rates file
+    private final String[] codes; // Currencies the file must cover
+
+    FileRateProvider(Path file, String[] codes) {
+        this.file = file;
+        this.codes = codes;
+    }
+
+    @Override
+    public RateTable fetch() throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader); // Handles '#' comments and blank lines
+        }
+        Map<String, Double> rates = new HashMap<>();
+        for (String code : properties.stringPropertyNames()) {
+            try {
+                rates.put(code.trim().toUpperCase(), Double.parseDouble(properties.getProperty(code).trim()));
+            } catch (NumberFormatException e) {
+                throw new IOException(file + ": invalid rate for " + code);
+            }
+        }
+        RateTable.validate(rates, codes, file.toString());
+        return new RateTable(rates, "file " + file, Instant.now());
+    }
+
+    @Override
+    public String describe() {
+        return "file " + file;
+    }
+}
+
+// HttpRateProvider fetches rates from a service that answers with JSON such as {"base":"INR","rates":{"USD":85.5}}
+class HttpRateProvider implements RateProvider {
+    private static final Pattern RATE = Pattern.compile("\"([A-Z]{3})\"\\s*:\\s*([0-9]+(?:\\.[0-9]+)?(?:[eE][-+]?[0-9]+)?)"); // "USD": 85.5
+    private final URI uri; // Rate service address
+    private final String[] codes; // Currencies the response must cover
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build(); // Reused connection pool
+
+    HttpRateProvider(URI uri, String[] codes) {
+        this.uri = uri;
+        this.codes = codes;
+    }
+
+    @Override
+    public RateTable fetch() throws IOException {
+        HttpResponse<String> response;
+        try {
+            response = client.send(HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(5)).build(), HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while fetching rates");
+        }
+        if (response.statusCode() != 200) throw new IOException(uri + " answered HTTP " + response.statusCode());
+        Map<String, Double> rates = new HashMap<>();
+        Matcher matcher = RATE.matcher(response.body());
+        while (matcher.find()) {
+            rates.put(matcher.group(1), Double.parseDouble(matcher.group(2)));
+        }
+        RateTable.validate(rates, codes, uri.toString());
+        return new RateTable(rates, uri.toString(), Instant.now());
+    }
+
+    @Override
+    public String describe() {
+        return uri.toString();
+    }
+}
+
+// MockRateServer is a local stand-in for a live rate service: it serves the built-in rates with a small random
+// drift on every request, after an artificial delay, so background refresh can be tried without a network
+class MockRateServer {
+    private final HttpServer server; // JDK embedded server on loopback
+    private final Random random = new Random(); // Rate drift
+
+    // Starts the server on a free port; every response waits delayMillis first
+    MockRateServer(long delayMillis) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/rates", exchange -> {
+            try {
+                Thread.sleep(delayMillis); // Simulates a slow upstream service
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            RateTable base = RateTable.defaults();
+            StringBuilder json = new StringBuilder("{\"base\":\"INR\",\"rates\":{");
+            String[] codes = {"USD", "EUR", "GBP", "JPY"};
+            for (int i = 0; i < codes.length; i++) {
+                double drift = 1 + (random.nextDouble() - 0.5) / 100; // Within half a percent
+                json.append(i > 0 ? "," : "").append('"').append(codes[i]).append("\":")
+                        .append(String.format(Locale.ROOT, "%.4f", base.toInr(codes[i]) * drift)); // JSON needs a '.' decimal point in every locale
+            }
+            byte[] body = json.append("}}").toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "mock-rate-server");
+            thread.setDaemon(true); // Never keeps the program alive on its own
+            return thread;
+        }));
+        server.start();
+    }
+
+    // Stops the server; its dispatcher thread would otherwise keep the program running
+    void stop() {
+        server.stop(0);
+    }
+
+    // Address of the rates endpoint
+    URI uri() {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + "/rates");
+    }
+}
+
+// CachedRates holds the current rate table and keeps it fresh in the background. Readers take the current table
+// with one volatile read and never wait for a fetch: once the table is older than the time-to-live it is still
+// returned (stale-while-revalidate) while a single background refresh fetches a new one and swaps it in.
+class CachedRates {
+    private final RateProvider provider; // Source of new tables
+    private final Duration ttl; // Age after which a table is stale
+    private final AtomicReference<RateTable> current = new AtomicReference<>(RateTable.defaults()); // Until the first fetch lands
+    private final AtomicBoolean refreshing = new AtomicBoolean(); // True while a fetch is running
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "rate-refresher");
+        thread.setDaemon(true); // Never keeps the program alive on its own
+        return thread;
+    });
+    private volatile String lastError; // Why the last refresh failed, or null if it succeeded
+    private volatile boolean fetchedOnce; // False while the built-in rates are still in use
+
+    // Starts fetching at once and then every ttl, in the background
+    CachedRates(RateProvider provider, Duration ttl) {
+        this.provider = provider;
+        this.ttl = ttl;
+        refreshing.set(true); // The first scheduled run is the initial fetch
+        refresher.scheduleWithFixedDelay(this::refreshNow, 0, ttl.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // The current table, never blocking; starts a background refresh if it is stale and none is running
+    RateTable rates() {
+        RateTable table = current.get();
+        if (isStale(table) && refreshing.compareAndSet(false, true)) {
+            refresher.execute(this::refreshNow); // Revalidates while the caller uses the stale table
+        }
+        return table;
+    }
+
+    // True once the table is older than the time-to-live (the built-in table is stale until a fetch succeeds)
+    boolean isStale(RateTable table) {
+        return !fetchedOnce || Duration.between(table.fetchedAt, Instant.now()).compareTo(ttl) > 0;
+    }
+
+    // Fetches a new table and swaps it in; on failure the old table stays in use
+    private void refreshNow() {
+        refreshing.set(true); // Scheduled runs also count, so reads do not start a second fetch meanwhile
+        try {
+            current.set(provider.fetch()); // Readers see the old table or the new one, never a mix
+            fetchedOnce = true;
+            lastError = null;
+        } catch (IOException | RuntimeException e) {
+            lastError = e.getMessage() != null ? e.getMessage() : e.toString(); // Kept for display; the converter carries on with the last good rates
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    String lastError() {
+        return lastError;
+    }
+
+    String describe() {
+        return provider.describe();
+    }
+}
 
 public class CurrencyConverter { // Declares the main class for the currency converter application
     
-    // Exchange rates to Indian Rupee (INR) - These are declared as private static final
-    // to make them constant and accessible throughout the class without object instantiation.
-    private static final double USD_TO_INR = 85.50; // Exchange rate for US Dollar to Indian Rupee
-    private static final double EUR_TO_INR = 88.25; // Exchange rate for Euro to Indian Rupee
-    private static final double GBP_TO_INR = 102.10; // Exchange rate for British Pound to Indian Rupee
-    private static final double JPY_TO_INR = 0.67;   // Exchange rate for Japanese Yen to Indian Rupee
+    // Exchange rates to Indian Rupee (INR) - held in an immutable RateTable that is swapped whole when new rates arrive.
+    // Without a rate source the built-in table (RateTable.defaults) is used for the whole session.
+    private static CachedRates cachedRates; // Live rates kept fresh in the background, or null for built-in rates only
+    private static final RateTable BUILT_IN_RATES = RateTable.defaults(); // Used when no rate source is configured
+    private static MockRateServer mockServer; // Local mock rate service started by --mock-rates, or null
     
     // Currency symbols and names - Arrays to store display information for currencies
     private static final String[] CURRENCY_SYMBOLS = {"$", "€", "£", "¥", "₹"}; // Array of currency symbols
@@ -16,6 +269,42 @@ public class CurrencyConverter { // Declares the main class for the currency con
     private static final String[] CURRENCY_CODES = {"USD", "EUR", "GBP", "JPY", "INR"}; // Array of currency ISO codes
     
     public static void main(String[] args) { // Main method, the entry point of the program
+        // Rate source: --rates-file <file> | --rates-url <url> | --mock-rates [delay ms]; --ttl <seconds> sets the refresh interval
+        RateProvider provider = null; // Stays null for the built-in rates
+        Duration ttl = Duration.ofSeconds(60); // Rates older than this are refreshed in the background
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--rates-file": provider = new FileRateProvider(Paths.get(args[++i]), CURRENCY_CODES); break;
+                    case "--rates-url": provider = new HttpRateProvider(URI.create(args[++i]), CURRENCY_CODES); break;
+                    case "--mock-rates": // Local mock service; an optional delay shows that conversions do not wait for it
+                        long delay = i + 1 < args.length && args[i + 1].matches("\\d+") ? Long.parseLong(args[++i]) : 500;
+                        mockServer = new MockRateServer(delay);
+                        provider = new HttpRateProvider(mockServer.uri(), CURRENCY_CODES);
+                        break;
+                    case "--ttl":
+                        ttl = Duration.ofSeconds(Long.parseLong(args[++i]));
+                        if (ttl.isZero() || ttl.isNegative()) throw new IllegalArgumentException("--ttl must be a positive number of seconds");
+                        break;
+                    default: System.out.println("Ignoring unknown option: " + args[i]);
+                }
+            }
+        } catch (IOException | RuntimeException e) { // Missing option value, bad number, non-positive ttl or port in use
+            System.out.println("Invalid rate options: " + e.getMessage() + ". Using built-in rates.");
+            provider = null;
+            ttl = null; // Nothing is fetched, as the message says
+            if (mockServer != null) {
+                mockServer.stop(); // Started before the bad option was read, and never used
+                mockServer = null;
+            }
+        }
+        if (provider == null && ttl != null && Files.exists(Paths.get("rates.properties"))) {
+            provider = new FileRateProvider(Paths.get("rates.properties"), CURRENCY_CODES); // Picked up automatically
+        }
+        if (provider != null) {
+            cachedRates = new CachedRates(provider, ttl); // First fetch starts in the background right away
+        }
+
         Scanner scanner = new Scanner(System.in); // Creates a Scanner object to read input from the console
         DecimalFormat df = new DecimalFormat("#,##0.00"); // Creates a DecimalFormat object to format numbers with commas and two decimal places
         
@@ -52,8 +341,9 @@ public class CurrencyConverter { // Declares the main class for the currency con
             double amount = getPositiveAmount(scanner, "Enter amount to convert: "); // Prompts user to enter amount and validates for positive value
             
             // Convert currency
-            double convertedAmount = convertCurrency(amount, sourceChoice, targetChoice); // Calls the conversion method for the entered amount
-            double oneUnitConversion = convertCurrency(1, sourceChoice, targetChoice); // Calls the conversion method for one unit to show the rate
+            RateTable rates = cachedRates != null ? cachedRates.rates() : BUILT_IN_RATES; // One table for the whole conversion; never waits for a fetch
+            double convertedAmount = convertCurrency(rates, amount, sourceChoice, targetChoice); // Calls the conversion method for the entered amount
+            double oneUnitConversion = convertCurrency(rates, 1, sourceChoice, targetChoice); // Calls the conversion method for one unit to show the rate
             
             // Display conversion rate and result
             System.out.println("\n════════════ Conversion Details ════════════"); // Prints a header for conversion details
@@ -61,6 +351,7 @@ public class CurrencyConverter { // Declares the main class for the currency con
                 CURRENCY_CODES[sourceChoice-1], // Displays the source currency code
                 df.format(oneUnitConversion),   // Displays the formatted one-unit conversion
                 CURRENCY_CODES[targetChoice-1]); // Displays the target currency code
+            printRateSource(rates); // Shows where the rates came from and how fresh they are
                 
             System.out.println("\n════════════ Conversion Result ════════════"); // Prints a header for conversion result
             System.out.printf("%s %s (%s) = %s %s (%s)\n", // Formats and prints the detailed conversion result
@@ -84,30 +375,28 @@ public class CurrencyConverter { // Declares the main class for the currency con
         }
         
         scanner.close(); // Closes the scanner object to release system resources
+        if (mockServer != null) mockServer.stop(); // Lets the program exit
     }
     
-    private static double convertCurrency(double amount, int source, int target) { // Method to perform currency conversion
+    private static double convertCurrency(RateTable rates, double amount, int source, int target) { // Method to perform currency conversion
         // First convert to INR, then to target currency - This is a common approach for multiple currency conversions
-        double amountInInr; // Declares a variable to hold the amount converted to INR
-        
-        // Convert source to INR
-        switch (source) { // Uses a switch statement to handle conversion from source currency to INR
-            case 1: amountInInr = amount * USD_TO_INR; break; // Converts USD to INR
-            case 2: amountInInr = amount * EUR_TO_INR; break; // Converts EUR to INR
-            case 3: amountInInr = amount * GBP_TO_INR; break; // Converts GBP to INR
-            case 4: amountInInr = amount * JPY_TO_INR; break; // Converts JPY to INR
-            case 5: amountInInr = amount; break;             // If source is INR, amount remains unchanged
-            default: amountInInr = 0; // Default case, though input validation should prevent this
+        double amountInInr = amount * rates.toInr(CURRENCY_CODES[source - 1]); // Convert source to INR (INR's rate is 1)
+        return amountInInr / rates.toInr(CURRENCY_CODES[target - 1]); // Convert INR to target
+    }
+    
+    private static void printRateSource(RateTable rates) { // Prints where the rates came from and whether they are stale
+        if (cachedRates == null) { // No rate source configured
+            System.out.println("Rates: " + rates.source);
+            return;
         }
-        
-        // Convert INR to target
-        switch (target) { // Uses a switch statement to handle conversion from INR to target currency
-            case 1: return amountInInr / USD_TO_INR; // Converts INR to USD
-            case 2: return amountInInr / EUR_TO_INR; // Converts INR to EUR
-            case 3: return amountInInr / GBP_TO_INR; // Converts INR to GBP
-            case 4: return amountInInr / JPY_TO_INR; // Converts INR to JPY
-            case 5: return amountInInr;              // If target is INR, amount remains unchanged
-            default: return 0; // Default case, though input validation should prevent this
+        String age = rates.fetchedAt.atZone(ZoneId.systemDefault()).toLocalTime().truncatedTo(ChronoUnit.SECONDS).toString(); // Local fetch time
+        if (rates.source.equals(BUILT_IN_RATES.source)) { // Nothing fetched yet
+            System.out.println("Rates: built-in (no rates from " + cachedRates.describe() + " yet)");
+        } else {
+            System.out.println("Rates: " + rates.source + " as of " + age + (cachedRates.isStale(rates) ? " (stale, refreshing)" : ""));
+        }
+        if (cachedRates.lastError() != null) {
+            System.out.println("Last refresh failed: " + cachedRates.lastError()); // Conversions keep using the last good rates
         }
     }
     
@@ -1,7 +1,58 @@
+import com.sun.net.httpserver.HttpExchange; // Imports HttpExchange for one HTTP request and response
+import com.sun.net.httpserver.HttpServer; // Imports the JDK's embedded HTTP server
 import java.io.*; // Imports classes for input/output operations (e.g., File, FileReader, FileWriter, BufferedReader, PrintWriter)
+import java.net.InetAddress; // Imports InetAddress to bind the service to loopback only
+import java.net.InetSocketAddress; // Imports InetSocketAddress for the service address
+import java.net.Socket; // Imports Socket for the load generator's keep-alive connections
+import java.net.URI; // Imports URI for load generator requests
+import java.net.URLDecoder; // Imports URLDecoder for roll numbers in paths and query values
+import java.net.URLEncoder; // Imports URLEncoder for Location headers
+import java.net.http.HttpClient; // Imports HttpClient for the load generator
+import java.net.http.HttpRequest; // Imports HttpRequest for the load generator
+import java.net.http.HttpResponse; // Imports HttpResponse for the load generator
+import java.nio.ByteBuffer; // Imports ByteBuffer for framing log records
+import java.nio.ByteOrder; // Imports ByteOrder for reading CSV bytes eight at a time
+import java.nio.channels.FileChannel; // Imports FileChannel for appending to and forcing the log
+import java.nio.charset.Charset; // Imports Charset for encoding table pages once per write
+import java.nio.charset.StandardCharsets; // Imports StandardCharsets so files are always UTF-8
+import java.nio.file.*; // Imports Path, Paths, Files and the open/copy options
+import java.util.ArrayDeque; // Imports ArrayDeque for chains waiting to be pruned
 import java.util.ArrayList; // Imports ArrayList for dynamic array implementation
+import java.util.Arrays; // Imports Arrays for growing the column arrays
+import java.util.Collections; // Imports Collections for single-student batches
+import java.util.Comparator; // Imports Comparator for the page sort orders
+import java.util.HashMap; // Imports HashMap for the email and phone indexes
+import java.util.HashSet; // Imports HashSet for the roll numbers under each search term
+import java.util.LinkedHashMap; // Imports LinkedHashMap for the roll number index (keeps insertion order)
+import java.util.LinkedHashSet; // Imports LinkedHashSet for the unique terms of a student
 import java.util.List; // Imports List interface for collection of students
+import java.util.Locale; // Imports Locale for case-insensitive email keys
+import java.util.Map; // Imports Map interface for the indexes
+import java.util.NavigableMap; // Imports NavigableMap for the sorted term index
+import java.util.PriorityQueue; // Imports PriorityQueue to pick one sorted page without sorting everything
+import java.util.Random; // Imports Random for load generator roll numbers
 import java.util.Scanner; // Imports Scanner for reading user input
+import java.util.Set; // Imports Set for the roll numbers under each term
+import java.util.SortedMap; // Imports SortedMap for prefix ranges of terms
+import java.util.TreeMap; // Imports TreeMap so all terms with a prefix are adjacent
+import java.util.concurrent.ConcurrentHashMap; // Imports ConcurrentHashMap for lock-free lookups
+import java.util.concurrent.ConcurrentSkipListMap; // Imports ConcurrentSkipListMap for lock-free insertion-order iteration
+import java.util.concurrent.ExecutorService; // Imports ExecutorService for background compaction
+import java.util.concurrent.Executors; // Imports Executors to create the compaction thread
+import java.util.concurrent.ForkJoinPool; // Imports ForkJoinPool for parallel CSV parsing
+import java.util.concurrent.ForkJoinTask; // Imports ForkJoinTask for the per-chunk parse results
+import java.util.concurrent.TimeUnit; // Imports TimeUnit for waiting on compaction at exit
+import java.util.concurrent.atomic.AtomicBoolean; // Imports AtomicBoolean to allow one compaction at a time
+import java.util.concurrent.locks.Lock; // Imports Lock for the index read and write locks
+import java.util.concurrent.locks.ReentrantLock; // Imports ReentrantLock to serialize registry writers
+import java.util.concurrent.locks.ReentrantReadWriteLock; // Imports ReentrantReadWriteLock so readers can run concurrently
+import java.util.function.Consumer; // Imports Consumer for visiting students under the read lock
+import java.util.function.Function; // Imports Function for the value each report field groups by
+import java.util.function.UnaryOperator; // Imports UnaryOperator for edits merged under the write lock
+import java.util.regex.Pattern; // Imports Pattern for the precompiled phone number rule
+import java.util.stream.Collectors; // Imports Collectors for the parallel group-by reports
+import java.util.stream.Stream; // Imports Stream for scanning a snapshot in parallel
+import java.util.zip.CRC32; // Imports CRC32 to detect torn log records
 
 // Student class represents a single student with their details
 class Student {
@@ -38,108 +89,3227 @@ class Student {
     public String toString() {
         // Uses String.format for structured output, ensuring consistent column widths
         return String.format("| %-15s | %-12s | %-6s | %-25s | %-12s |",
-                name, rollNumber, grade, email, phone);
+                getName(), getRollNumber(), getGrade(), getEmail(), getPhone()); // Getters, so columnar views print correctly
+    }
+}
+
+// Outcome of a store mutation, so callers can tell which uniqueness rule was broken
+enum StoreResult {
+    OK, // The change was applied
+    DUPLICATE_ROLL, // Another student already has this roll number
+    DUPLICATE_EMAIL, // Another student already has this email address
+    DUPLICATE_PHONE, // Another student already has this phone number
+    NOT_FOUND, // No student with the given roll number exists
+    NOT_SAVED // The change could not be written to the log; nothing was changed
+}
+
+// StudentColumns stores students column by column: UTF-8 byte arenas for text, a dictionary for grades and packed longs for phones.
+// Rows are handed out as View objects, flyweight Students that read and write the columns, so the rest of the code is unchanged.
+class StudentColumns {
+    private static final int LENGTH_BITS = 20; // A text reference is (arena offset << 20) | byte length
+    private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+    private static final int PHONE_LENGTH_SHIFT = 56; // A packed phone is (digit count << 56) | numeric value
+    private static final long PHONE_VALUE_MASK = (1L << PHONE_LENGTH_SHIFT) - 1;
+    private static final int MAX_PACKED_DIGITS = 16; // 10^16 < 2^56, so up to 16 digits fit beside the count
+    private static final long UNPACKED_PHONE = -1; // Marks a phone that is kept as a String in oddPhones
+    private static final int MIN_COMPACT_GARBAGE = 1 << 20; // Arena garbage below 1 MiB is never worth a compaction
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); // Views read under the read lock
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+
+    private byte[] arena = new byte[1 << 16]; // UTF-8 bytes of every name, roll number and email
+    private int arenaUsed; // Bytes of arena in use, live or garbage
+    private long garbage; // Bytes of arena left behind by edits and removals
+    private long[] names = new long[1024]; // Text reference of each row's name
+    private long[] rolls = new long[1024]; // Text reference of each row's roll number
+    private long[] emails = new long[1024]; // Text reference of each row's email
+    private short[] grades = new short[1024]; // Dictionary code of each row's grade
+    private long[] phones = new long[1024]; // Packed phone of each row
+    private final List<String> gradeNames = new ArrayList<>(); // Grade dictionary: code -> grade
+    private final Map<String, Short> gradeCodes = new HashMap<>(); // Grade dictionary: grade -> code
+    private final Map<Integer, String> oddPhones = new HashMap<>(); // Phones that cannot be packed (non-digits, too long), by row
+    private int rows; // Rows ever allocated; freed rows are reused before this grows
+    private int[] freeRows = new int[16]; // Stack of rows released by remove
+    private int freeCount; // Entries in freeRows
+
+    // A Student backed by one row of the columns. Once its row is removed the view is detached:
+    // it keeps its last values in the fields inherited from Student, so a caller still holding it sees a stable record.
+    class View extends Student {
+        private final int row; // The row this view reads while attached
+        private String detachedRoll; // Student has no roll number setter, so a detached view keeps it here
+        private boolean detached; // Changed only under the write lock; read under the read lock
+
+        private View(int row) {
+            super(null, null, null, null, null); // The inherited fields are only used once detached
+            this.row = row;
+        }
+
+        @Override public String getName() { return read(this, 0); }
+        @Override public String getRollNumber() { return read(this, 1); }
+        @Override public String getGrade() { return read(this, 2); }
+        @Override public String getEmail() { return read(this, 3); }
+        @Override public String getPhone() { return read(this, 4); }
+        @Override public void setName(String name) { write(this, 0, name); }
+        @Override public void setGrade(String grade) { write(this, 2, grade); }
+        @Override public void setEmail(String email) { write(this, 3, email); }
+        @Override public void setPhone(String phone) { write(this, 4, phone); }
+
+        // Copies the row into the inherited fields; caller holds the write lock
+        private void detach() {
+            super.setName(column(row, 0));
+            detachedRoll = column(row, 1);
+            super.setGrade(column(row, 2));
+            super.setEmail(column(row, 3));
+            super.setPhone(column(row, 4));
+            detached = true;
+        }
+
+        // One field of a detached view
+        private String detachedField(int field) {
+            switch (field) {
+                case 0: return super.getName();
+                case 1: return detachedRoll;
+                case 2: return super.getGrade();
+                case 3: return super.getEmail();
+                default: return super.getPhone();
+            }
+        }
+
+        // Changes one field of a detached view
+        private void setDetachedField(int field, String value) {
+            switch (field) {
+                case 0: super.setName(value); break;
+                case 2: super.setGrade(value); break;
+                case 3: super.setEmail(value); break;
+                default: super.setPhone(value); break;
+            }
+        }
+    }
+
+    // Stores a student in a free or new row and returns its view
+    View add(Student student) {
+        writeLock.lock();
+        try {
+            int row = freeCount > 0 ? freeRows[--freeCount] : allocateRow();
+            names[row] = putText(student.getName());
+            rolls[row] = putText(student.getRollNumber());
+            emails[row] = putText(student.getEmail());
+            grades[row] = gradeCode(student.getGrade());
+            phones[row] = packPhone(row, student.getPhone());
+            return new View(row);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Releases a view's row for reuse; the view keeps working from a private copy of its values
+    void remove(View view) {
+        writeLock.lock();
+        try {
+            if (view.detached) return;
+            view.detach();
+            int row = view.row;
+            garbage += (names[row] & LENGTH_MASK) + (rolls[row] & LENGTH_MASK) + (emails[row] & LENGTH_MASK);
+            oddPhones.remove(row);
+            if (freeCount == freeRows.length) freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+            freeRows[freeCount++] = row;
+            compactIfWasteful();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Reads one field of a view: 0 = name, 1 = roll number, 2 = grade, 3 = email, 4 = phone
+    private String read(View view, int field) {
+        readLock.lock(); // Arena growth and compaction swap arrays under the write lock
+        try {
+            return view.detached ? view.detachedField(field) : column(view.row, field);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // Replaces one field of a view; replaced text becomes arena garbage
+    private void write(View view, int field, String value) {
+        writeLock.lock();
+        try {
+            if (view.detached) {
+                view.setDetachedField(field, value); // A removed student is no longer in the columns
+                return;
+            }
+            int row = view.row;
+            switch (field) {
+                case 0:
+                    garbage += names[row] & LENGTH_MASK;
+                    names[row] = putText(value);
+                    break;
+                case 2:
+                    grades[row] = gradeCode(value);
+                    break;
+                case 3:
+                    garbage += emails[row] & LENGTH_MASK;
+                    emails[row] = putText(value);
+                    break;
+                default:
+                    oddPhones.remove(row);
+                    phones[row] = packPhone(row, value);
+                    break;
+            }
+            compactIfWasteful();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Decodes one field of a row; caller holds a lock
+    private String column(int row, int field) {
+        switch (field) {
+            case 0: return text(names[row]);
+            case 1: return text(rolls[row]);
+            case 2: return gradeNames.get(grades[row]);
+            case 3: return text(emails[row]);
+            default: return unpackPhone(row, phones[row]);
+        }
+    }
+
+    // Returns a new row index, growing every column by half when full
+    private int allocateRow() {
+        if (rows == names.length) {
+            int capacity = rows + (rows >> 1);
+            names = Arrays.copyOf(names, capacity);
+            rolls = Arrays.copyOf(rolls, capacity);
+            emails = Arrays.copyOf(emails, capacity);
+            grades = Arrays.copyOf(grades, capacity);
+            phones = Arrays.copyOf(phones, capacity);
+        }
+        return rows++;
+    }
+
+    // Appends the UTF-8 bytes of value to the arena and returns its reference
+    private long putText(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > LENGTH_MASK) throw new IllegalArgumentException("Text longer than " + LENGTH_MASK + " bytes");
+        if (arenaUsed + bytes.length > arena.length) {
+            long capacity = Math.max((long) arena.length * 2, (long) arenaUsed + bytes.length);
+            if (capacity > Integer.MAX_VALUE - 8) throw new IllegalStateException("Student text arena is full");
+            arena = Arrays.copyOf(arena, (int) capacity);
+        }
+        System.arraycopy(bytes, 0, arena, arenaUsed, bytes.length);
+        long ref = ((long) arenaUsed << LENGTH_BITS) | bytes.length;
+        arenaUsed += bytes.length;
+        return ref;
+    }
+
+    // Decodes a text reference
+    private String text(long ref) {
+        return new String(arena, (int) (ref >>> LENGTH_BITS), (int) (ref & LENGTH_MASK), StandardCharsets.UTF_8);
+    }
+
+    // Returns the dictionary code of a grade, adding it the first time it is seen
+    private short gradeCode(String grade) {
+        Short code = gradeCodes.get(grade);
+        if (code == null) {
+            if (gradeNames.size() > Short.MAX_VALUE) throw new IllegalStateException("Too many distinct grades");
+            code = (short) gradeNames.size();
+            gradeNames.add(grade);
+            gradeCodes.put(grade, code);
+        }
+        return code;
+    }
+
+    // Packs an all-digit phone as (digit count << 56) | value, so leading zeros survive; anything else goes to oddPhones
+    private long packPhone(int row, String phone) {
+        int length = phone.length();
+        if (length == 0 || length > MAX_PACKED_DIGITS) {
+            oddPhones.put(row, phone);
+            return UNPACKED_PHONE;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = phone.charAt(i);
+            if (c < '0' || c > '9') {
+                oddPhones.put(row, phone);
+                return UNPACKED_PHONE;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return ((long) length << PHONE_LENGTH_SHIFT) | value;
+    }
+
+    // Rebuilds a phone string from its packed form, restoring leading zeros
+    private String unpackPhone(int row, long packed) {
+        if (packed == UNPACKED_PHONE) return oddPhones.get(row);
+        String digits = Long.toString(packed & PHONE_VALUE_MASK);
+        int length = (int) (packed >>> PHONE_LENGTH_SHIFT);
+        if (digits.length() == length) return digits;
+        StringBuilder padded = new StringBuilder(length);
+        for (int i = digits.length(); i < length; i++) padded.append('0');
+        return padded.append(digits).toString();
+    }
+
+    // Copies live text into a fresh arena once garbage outweighs live bytes; caller holds the write lock
+    private void compactIfWasteful() {
+        if (garbage < MIN_COMPACT_GARBAGE || garbage < arenaUsed / 2) return;
+        boolean[] free = new boolean[rows];
+        for (int i = 0; i < freeCount; i++) free[freeRows[i]] = true;
+        byte[] old = arena;
+        arena = new byte[Math.max(1 << 16, (int) (arenaUsed - garbage) + (1 << 16))];
+        arenaUsed = 0;
+        garbage = 0;
+        for (int row = 0; row < rows; row++) {
+            if (free[row]) continue;
+            names[row] = moveText(old, names[row]);
+            rolls[row] = moveText(old, rolls[row]);
+            emails[row] = moveText(old, emails[row]);
+        }
+    }
+
+    // Copies one text from the old arena to the end of the current one and returns its new reference
+    private long moveText(byte[] old, long ref) {
+        int length = (int) (ref & LENGTH_MASK);
+        System.arraycopy(old, (int) (ref >>> LENGTH_BITS), arena, arenaUsed, length);
+        long moved = ((long) arenaUsed << LENGTH_BITS) | length;
+        arenaUsed += length;
+        return moved;
+    }
+}
+
+// MemoryBenchmark compares the heap used by an ArrayList of Student objects with the same students in StudentColumns
+class MemoryBenchmark {
+    // Builds count synthetic students both ways and prints the retained heap of each
+    static void run(int count) {
+        String[] grades = {"A+", "A", "B+", "B", "C", "D", "F"}; // A realistic, tiny grade vocabulary
+        long baseline = usedHeap();
+        List<Student> objects = new ArrayList<>(); // The original representation
+        for (int i = 0; i < count; i++) {
+            objects.add(synthetic(i, grades)); // Fresh Strings per field, as the file loader creates them
+        }
+        long objectBytes = usedHeap() - baseline;
+        int check = objects.size();
+        objects = null; // Released before the columnar run is measured
+
+        baseline = usedHeap();
+        StudentColumns columns = new StudentColumns();
+        List<Student> views = new ArrayList<>(); // The index keeps one view per student, so they are counted too
+        for (int i = 0; i < count; i++) {
+            views.add(columns.add(synthetic(i, grades)));
+        }
+        long columnBytes = usedHeap() - baseline;
+
+        System.out.println("\nMemory Footprint (" + check + " students)");
+        System.out.println("----------------------------------------");
+        System.out.printf("ArrayList<Student>:  %,14d bytes  %6.1f bytes/student%n", objectBytes, (double) objectBytes / count);
+        System.out.printf("StudentColumns:      %,14d bytes  %6.1f bytes/student%n", columnBytes, (double) columnBytes / count);
+        System.out.printf("Saving:              %.1f%%%n", 100.0 * (objectBytes - columnBytes) / Math.max(objectBytes, 1));
+        if (!views.get(count - 1).getEmail().equals("student" + (count - 1) + "@college.edu")) {
+            System.out.println("Columnar read-back mismatch!"); // Guards against measuring a broken store
+        }
+    }
+
+    // A student with distinct name, roll number, email and phone
+    private static Student synthetic(int i, String[] grades) {
+        return new Student("Student Name " + i, "R" + (100000 + i), new String(grades[i % grades.length]),
+                "student" + i + "@college.edu", String.valueOf(9000000000L + i));
+    }
+
+    // Heap in use after letting the collector settle
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
+
+// StudentIndex keeps every committed version of every student that an open snapshot might still read.
+// Writers are serialized and never change a stored Student; each change installs a new version stamped with the next
+// commit number. Readers pick a commit number and read without locks, so reports and exports never block edits.
+class StudentIndex {
+    // One committed version of a student; value is null when the student was removed at this commit
+    private static final class Version {
+        final Student value; // Never modified once stored
+        final long commit; // Commit that created this version
+        volatile Version older; // Previous version, or null once no snapshot can need it
+
+        Version(Student value, long commit, Version older) {
+            this.value = value;
+            this.commit = commit;
+            this.older = older;
+        }
+    }
+
+    // The versions of one roll number since it was last added, newest first
+    private static final class Chain {
+        final String rollNumber;
+        final long order; // Position in insertion order
+        volatile Version newest; // Head of the version list
+        volatile Chain earlier; // The chain of a previous add of this roll number, while old snapshots may still see it
+
+        Chain(String rollNumber, long order, Chain earlier) {
+            this.rollNumber = rollNumber;
+            this.order = order;
+            this.earlier = earlier;
+        }
+    }
+
+    // A consistent, read-only view of the registry as of one commit; close it so old versions can be dropped
+    class Snapshot implements AutoCloseable {
+        final long commit; // Versions newer than this are invisible
+        private boolean closed;
+
+        private Snapshot(long commit) {
+            this.commit = commit;
+        }
+
+        // The student with the given roll number as of this snapshot, or null
+        Student get(String rollNumber) {
+            for (Chain chain = byRoll.get(rollNumber); chain != null; chain = chain.earlier) {
+                Version version = visible(chain, commit);
+                if (version != null) return version.value; // A removal hides any earlier add
+            }
+            return null;
+        }
+
+        // Visits every student of this snapshot in insertion order, without locks
+        void forEach(Consumer<Student> action) {
+            for (Chain chain : inOrder.values()) {
+                Version version = visible(chain, commit);
+                if (version != null && version.value != null) action.accept(version.value);
+            }
+        }
+
+        // The students of this snapshot in insertion order as a stream; a parallel stream splits the skip list
+        // into ranges for the fork-join pool, without copying the students first
+        Stream<Student> stream() {
+            return inOrder.values().stream()
+                    .map(chain -> visible(chain, commit))
+                    .filter(version -> version != null && version.value != null)
+                    .map(version -> version.value);
+        }
+
+        // All students of this snapshot in insertion order
+        List<Student> list() {
+            List<Student> students = new ArrayList<>();
+            forEach(students::add);
+            return students;
+        }
+
+        @Override
+        public void close() {
+            synchronized (openSnapshots) {
+                if (closed) return;
+                closed = true;
+                openSnapshots.compute(commit, (c, count) -> count == 1 ? null : count - 1);
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<String, Chain> byRoll = new ConcurrentHashMap<>(); // Primary index; O(1) lookups without locks
+    private final ConcurrentSkipListMap<Long, Chain> inOrder = new ConcurrentSkipListMap<>(); // Insertion order for listing and saving
+    private final ConcurrentHashMap<String, String> emailOwners = new ConcurrentHashMap<>(); // Normalized email -> roll number that owns it
+    private final ConcurrentHashMap<String, String> phoneOwners = new ConcurrentHashMap<>(); // Phone number -> roll number that owns it
+    private final TreeMap<Long, Integer> openSnapshots = new TreeMap<>(); // Commit -> open snapshots at it; also the lock for opening them
+    private final ArrayDeque<Chain> pendingPrune = new ArrayDeque<>(); // Chains holding versions an open snapshot may still need
+    private final ReentrantLock writeLock = new ReentrantLock(); // One writer at a time; readers never take it
+    private final StudentColumns columns; // Columnar storage for the versions, or null to keep plain Student objects
+    private volatile long committed; // Newest commit whose versions are all installed
+    private volatile int size; // Students in the newest commit
+    private long nextOrder; // Next insertion order number; guarded by writeLock
+
+    // Creates an index that keeps plain Student objects, or columnar views when columnar is true
+    StudentIndex(boolean columnar) {
+        columns = columnar ? new StudentColumns() : null;
+    }
+
+    // Emails are compared case-insensitively, so they are lower-cased before being used as keys
+    private static String emailKey(String email) {
+        return email.trim().toLowerCase(Locale.ROOT); // Locale.ROOT avoids surprises such as the Turkish dotless i
+    }
+
+    // The newest version of a chain visible at commit, or null if the chain was added later
+    private static Version visible(Chain chain, long commit) {
+        Version version = chain.newest;
+        while (version != null && version.commit > commit) version = version.older;
+        return version;
+    }
+
+    // Opens a snapshot of the newest commit; the caller must close it
+    public Snapshot openSnapshot() {
+        synchronized (openSnapshots) { // Registered atomically with reading the commit, so pruning cannot miss it
+            long commit = committed;
+            openSnapshots.merge(commit, 1, Integer::sum);
+            return new Snapshot(commit);
+        }
+    }
+
+    // The oldest commit an open snapshot can read
+    private long oldestVisibleCommit() {
+        synchronized (openSnapshots) {
+            return openSnapshots.isEmpty() ? committed : Math.min(openSnapshots.firstKey(), committed);
+        }
+    }
+
+    // Returns the newest committed version of a student, or null if there is none
+    public Student get(String rollNumber) {
+        for (Chain chain = byRoll.get(rollNumber); chain != null; chain = chain.earlier) {
+            Version version = chain.newest;
+            if (version != null && version.commit > committed) {
+                version = version.older; // Skips a version whose commit is still being installed; pruning always keeps this one
+            }
+            if (version != null) return version.value;
+        }
+        return null;
+    }
+
+    // Returns true if the email belongs to a student other than excludeRoll (pass null to check every student)
+    public boolean isEmailTaken(String email, String excludeRoll) {
+        String owner = emailOwners.get(emailKey(email)); // Who owns this email, if anyone
+        return owner != null && !owner.equals(excludeRoll); // Owning your own email is not a conflict
+    }
+
+    // Returns true if the phone number belongs to a student other than excludeRoll (pass null to check every student)
+    public boolean isPhoneTaken(String phone, String excludeRoll) {
+        String owner = phoneOwners.get(phone); // Who owns this phone number, if anyone
+        return owner != null && !owner.equals(excludeRoll);
+    }
+
+    // Returns what insertAll would return for the batch, without changing anything. Writers are serialized by the caller,
+    // so the answer still holds when the batch is inserted.
+    public List<StoreResult> checkAll(List<Student> batch) {
+        List<StoreResult> results = new ArrayList<>(batch.size());
+        Set<String> rolls = new HashSet<>(), emails = new HashSet<>(), phones = new HashSet<>(); // Claimed earlier in the batch
+        for (Student student : batch) {
+            String email = emailKey(student.getEmail());
+            Chain existing = byRoll.get(student.getRollNumber());
+            StoreResult result;
+            if ((existing != null && existing.newest.value != null) || rolls.contains(student.getRollNumber())) {
+                result = StoreResult.DUPLICATE_ROLL;
+            } else if (emailOwners.containsKey(email) || emails.contains(email)) {
+                result = StoreResult.DUPLICATE_EMAIL;
+            } else if (phoneOwners.containsKey(student.getPhone()) || phones.contains(student.getPhone())) {
+                result = StoreResult.DUPLICATE_PHONE;
+            } else {
+                result = StoreResult.OK;
+                rolls.add(student.getRollNumber());
+                emails.add(email);
+                phones.add(student.getPhone());
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    // Returns what replace would return for the edited student, without changing anything
+    public StoreResult checkReplace(Student edited) {
+        String roll = edited.getRollNumber();
+        if (get(roll) == null) return StoreResult.NOT_FOUND;
+        String emailOwner = emailOwners.get(emailKey(edited.getEmail()));
+        if (emailOwner != null && !emailOwner.equals(roll)) return StoreResult.DUPLICATE_EMAIL;
+        String phoneOwner = phoneOwners.get(edited.getPhone());
+        if (phoneOwner != null && !phoneOwner.equals(roll)) return StoreResult.DUPLICATE_PHONE;
+        return StoreResult.OK;
+    }
+
+    // Adds a student if its roll number, email and phone are all unused
+    public StoreResult insert(Student student) {
+        return insertAll(Collections.singletonList(student)).get(0);
+    }
+
+    // Adds students in order under one commit, so readers see all of them or none; returns each student's result
+    public List<StoreResult> insertAll(List<Student> batch) {
+        List<StoreResult> results = new ArrayList<>(batch.size());
+        writeLock.lock();
+        try {
+            long commit = committed + 1; // Published only after every version is installed
+            for (Student student : batch) {
+                results.add(install(student, commit));
+            }
+            publish(commit);
+        } finally {
+            writeLock.unlock();
+        }
+        return results;
+    }
+
+    // Checks and installs one new student at commit; caller holds writeLock
+    private StoreResult install(Student student, long commit) {
+        String roll = student.getRollNumber();
+        String email = emailKey(student.getEmail()); // Normalized email key
+        Chain existing = byRoll.get(roll);
+        if (existing != null && existing.newest.value != null) return StoreResult.DUPLICATE_ROLL;
+        if (emailOwners.containsKey(email)) return StoreResult.DUPLICATE_EMAIL;
+        if (phoneOwners.containsKey(student.getPhone())) return StoreResult.DUPLICATE_PHONE;
+        if (existing != null && prune(existing)) existing = null; // A removal no snapshot can see past needs no link
+        Chain chain = new Chain(roll, nextOrder++, existing); // Re-adding a roll number moves it to the end, as before
+        chain.newest = new Version(store(student), commit, null);
+        byRoll.put(roll, chain);
+        inOrder.put(chain.order, chain);
+        emailOwners.put(email, roll); // Claims the email
+        phoneOwners.put(student.getPhone(), roll); // Claims the phone number
+        size++;
+        return StoreResult.OK;
+    }
+
+    // Removes the student with the given roll number and releases its email and phone; returns the removed student or null
+    public Student remove(String rollNumber) {
+        writeLock.lock();
+        try {
+            Chain chain = byRoll.get(rollNumber);
+            if (chain == null || chain.newest.value == null) return null;
+            Student student = chain.newest.value;
+            long commit = committed + 1;
+            chain.newest = new Version(null, commit, chain.newest); // Older snapshots still see the student
+            emailOwners.remove(emailKey(student.getEmail())); // Frees the email for reuse
+            phoneOwners.remove(student.getPhone()); // Frees the phone number for reuse
+            size--;
+            publish(commit);
+            schedulePrune(chain);
+            return student;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Changes one field of a student; field is 1 = name, 2 = grade, 3 = email, 4 = phone
+    public StoreResult update(String rollNumber, int field, String value) {
+        Student edited = withField(rollNumber, field, value);
+        return edited == null ? StoreResult.NOT_FOUND : replace(edited);
+    }
+
+    // Returns a copy of the student with one field changed, or null if there is no such student
+    public Student withField(String rollNumber, int field, String value) {
+        Student current = get(rollNumber);
+        if (current == null) return null;
+        Student edited = new Student(current.getName(), rollNumber, current.getGrade(), current.getEmail(), current.getPhone());
+        switch (field) {
+            case 1: edited.setName(value); break;
+            case 2: edited.setGrade(value); break;
+            case 3: edited.setEmail(value); break;
+            case 4: edited.setPhone(value); break;
+            default: throw new IllegalArgumentException("Unknown field: " + field);
+        }
+        return edited;
+    }
+
+    // Replaces every field of a student (matched by roll number) in one commit
+    public StoreResult replace(Student edited) {
+        writeLock.lock();
+        try {
+            String roll = edited.getRollNumber();
+            Chain chain = byRoll.get(roll);
+            if (chain == null || chain.newest.value == null) return StoreResult.NOT_FOUND;
+            Student current = chain.newest.value;
+            String oldEmail = emailKey(current.getEmail());
+            String newEmail = emailKey(edited.getEmail());
+            String emailOwner = emailOwners.get(newEmail);
+            if (emailOwner != null && !emailOwner.equals(roll)) return StoreResult.DUPLICATE_EMAIL;
+            String phoneOwner = phoneOwners.get(edited.getPhone());
+            if (phoneOwner != null && !phoneOwner.equals(roll)) return StoreResult.DUPLICATE_PHONE;
+            long commit = committed + 1;
+            chain.newest = new Version(store(edited), commit, chain.newest); // All fields change together
+            emailOwners.remove(oldEmail); // Moves the email claim
+            emailOwners.put(newEmail, roll);
+            phoneOwners.remove(current.getPhone()); // Moves the phone claim
+            phoneOwners.put(edited.getPhone(), roll);
+            publish(commit);
+            schedulePrune(chain);
+            return StoreResult.OK;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // A private copy of a student to store as a version, so the caller's object can change without affecting it
+    private Student store(Student student) {
+        if (columns != null) return columns.add(student); // Copies the fields into a new row
+        return new Student(student.getName(), student.getRollNumber(), student.getGrade(), student.getEmail(), student.getPhone());
+    }
+
+    // Makes commit visible to new readers and tidies a few chains left by earlier writes; caller holds writeLock
+    private void publish(long commit) {
+        committed = commit;
+        for (int i = 0; i < 2 && !pendingPrune.isEmpty(); i++) { // Bounded work per write
+            schedulePrune(pendingPrune.poll());
+        }
+    }
+
+    // Prunes a chain now and queues it again if an open snapshot still needs some of its versions
+    private void schedulePrune(Chain chain) {
+        if (prune(chain)) return; // Gone entirely
+        if (chain.newest.older != null || chain.newest.value == null) pendingPrune.add(chain);
+    }
+
+    // Drops versions no open snapshot can read; returns true if the chain was a removal nobody can see past and is now gone.
+    // Caller holds writeLock.
+    private boolean prune(Chain chain) {
+        long oldest = oldestVisibleCommit();
+        Version keep = visible(chain, oldest); // What the oldest snapshot sees; anything older is unreachable
+        if (keep != null && keep.older != null) {
+            Version dropped = keep.older;
+            keep.older = null;
+            release(dropped);
+        }
+        if (keep == null || keep != chain.newest || keep.value != null) return false;
+        if (inOrder.remove(chain.order, chain)) { // The removal is visible to everyone, so the chain can go
+            byRoll.remove(chain.rollNumber, chain);
+            Chain live = byRoll.get(chain.rollNumber);
+            if (live != null && live.earlier == chain) live.earlier = null;
+        }
+        return true;
+    }
+
+    // Frees the column rows of dropped versions
+    private void release(Version version) {
+        if (columns == null) return;
+        for (; version != null; version = version.older) {
+            if (version.value != null) columns.remove((StudentColumns.View) version.value); // The view detaches, so late holders still read it
+        }
+    }
+
+    // Returns a copy of all students in insertion order, as of one commit
+    public List<Student> snapshot() {
+        try (Snapshot snapshot = openSnapshot()) {
+            return snapshot.list();
+        }
+    }
+
+    // Calls action for every student in insertion order, as of one commit, without blocking writers
+    public void forEach(Consumer<Student> action) {
+        try (Snapshot snapshot = openSnapshot()) {
+            snapshot.forEach(action);
+        }
+    }
+
+    // Returns the number of students in the newest commit
+    public int size() {
+        return size;
+    }
+}
+
+// StudentField names the Student fields that reports can group, count and de-duplicate by
+enum StudentField {
+    NAME("name", Student::getName),
+    ROLL_NUMBER("roll", Student::getRollNumber),
+    GRADE("grade", Student::getGrade),
+    EMAIL("email", student -> student.getEmail().trim().toLowerCase(Locale.ROOT)), // Emails are unique case-insensitively
+    EMAIL_DOMAIN("domain", student -> StudentField.domainOf(student.getEmail())),
+    PHONE("phone", Student::getPhone);
+
+    final String label; // Name used in menus, queries and JSON
+    final Function<Student, String> key; // Value a student is grouped under
+
+    StudentField(String label, Function<Student, String> key) {
+        this.label = label;
+        this.key = key;
+    }
+
+    // The field with the given label, or null if there is none
+    static StudentField parse(String label) {
+        for (StudentField field : values()) {
+            if (field.label.equalsIgnoreCase(label.trim())) return field;
+        }
+        return null;
+    }
+
+    // The lower-cased part of an email after the last '@', or "" if there is none
+    static String domainOf(String email) {
+        int at = email.lastIndexOf('@');
+        return at < 0 ? "" : email.substring(at + 1).trim().toLowerCase(Locale.ROOT);
+    }
+}
+
+// StudentAggregation runs ad-hoc group-by, count and distinct queries over a snapshot.
+// The snapshot's stream splits the insertion-order skip list into parts that the fork-join pool aggregates in parallel.
+class StudentAggregation {
+    // Number of students per value of field, largest groups first (ties by value)
+    static Map<String, Long> countBy(StudentIndex.Snapshot snapshot, StudentField field) {
+        Map<String, Long> counts = snapshot.stream().parallel()
+                .collect(Collectors.groupingByConcurrent(field.key, Collectors.counting()));
+        return sortedByCount(counts);
+    }
+
+    // Number of distinct values of field
+    static long countDistinct(StudentIndex.Snapshot snapshot, StudentField field) {
+        return snapshot.stream().parallel().map(field.key).distinct().count();
+    }
+
+    // Number of students whose field equals value (case-insensitively)
+    static long countWhere(StudentIndex.Snapshot snapshot, StudentField field, String value) {
+        return snapshot.stream().parallel().filter(student -> field.key.apply(student).equalsIgnoreCase(value)).count();
+    }
+
+    // Groups of students that share a contact once the usual variations are ignored: case, "+tags" and dots in
+    // Gmail addresses, and country codes or punctuation in phone numbers. Exact duplicates are already refused on add.
+    static List<List<Student>> duplicateContacts(StudentIndex.Snapshot snapshot) {
+        ConcurrentHashMap<String, Student> firstByKey = new ConcurrentHashMap<>(); // Contact key -> first student seen with it
+        ConcurrentHashMap<String, List<Student>> shared = new ConcurrentHashMap<>(); // Only keys seen more than once
+        snapshot.stream().parallel().forEach(student -> {
+            claim(firstByKey, shared, "email:" + normalizeEmail(student.getEmail()), student);
+            claim(firstByKey, shared, "phone:" + normalizePhone(student.getPhone()), student);
+        });
+        List<List<Student>> duplicates = new ArrayList<>(shared.values());
+        for (List<Student> group : duplicates) group.sort(Comparator.comparing(Student::getRollNumber)); // Stable output
+        duplicates.sort(Comparator.comparing((List<Student> group) -> group.get(0).getRollNumber()));
+        return duplicates;
+    }
+
+    // Records student under key; a group list is only built once a second student has the same key
+    private static void claim(ConcurrentHashMap<String, Student> firstByKey, ConcurrentHashMap<String, List<Student>> shared,
+            String key, Student student) {
+        Student first = firstByKey.putIfAbsent(key, student);
+        if (first == null) return; // The usual case: nobody else has this contact
+        shared.compute(key, (k, group) -> {
+            if (group == null) {
+                group = new ArrayList<>();
+                group.add(first);
+            }
+            group.add(student);
+            return group;
+        });
+    }
+
+    // An email reduced to the mailbox it delivers to
+    static String normalizeEmail(String email) {
+        String lower = email.trim().toLowerCase(Locale.ROOT);
+        int at = lower.lastIndexOf('@');
+        if (at < 0) return lower;
+        String local = lower.substring(0, at);
+        String domain = lower.substring(at + 1);
+        int plus = local.indexOf('+');
+        if (plus >= 0) local = local.substring(0, plus); // name+tag@ delivers to name@
+        if (domain.equals("gmail.com") || domain.equals("googlemail.com")) {
+            local = local.replace(".", ""); // Gmail ignores dots
+            domain = "gmail.com";
+        }
+        return local + "@" + domain;
+    }
+
+    // A phone number reduced to its last ten digits, dropping a country code
+    static String normalizePhone(String phone) {
+        StringBuilder digits = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') digits.append(c);
+        }
+        return digits.length() > 10 ? digits.substring(digits.length() - 10) : digits.toString();
+    }
+
+    // A copy of counts ordered by count, largest first, then by value
+    static Map<String, Long> sortedByCount(Map<String, Long> counts) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Long> sorted = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries) sorted.put(entry.getKey(), entry.getValue());
+        return sorted;
+    }
+}
+
+// StudentCounts keeps the common group-bys (students per grade and per email domain) up to date on every change,
+// so dashboards read them without scanning the registry. Changes are applied by the single writer; readers may see
+// a change that is half applied (an edit moved out of one grade but not yet into the next) for a moment.
+class StudentCounts {
+    private final ConcurrentHashMap<String, Long> byGrade = new ConcurrentHashMap<>(); // Grade -> students
+    private final ConcurrentHashMap<String, Long> byDomain = new ConcurrentHashMap<>(); // Email domain -> students
+
+    // Counts a student that was added
+    void add(Student student) {
+        byGrade.merge(StudentField.GRADE.key.apply(student), 1L, Long::sum);
+        byDomain.merge(StudentField.EMAIL_DOMAIN.key.apply(student), 1L, Long::sum);
+    }
+
+    // Uncounts a student that was removed; empty groups disappear
+    void remove(Student student) {
+        byGrade.computeIfPresent(StudentField.GRADE.key.apply(student), (grade, count) -> count == 1 ? null : count - 1);
+        byDomain.computeIfPresent(StudentField.EMAIL_DOMAIN.key.apply(student), (domain, count) -> count == 1 ? null : count - 1);
+    }
+
+    // Moves a student between groups after an edit
+    void replace(Student before, Student after) {
+        remove(before);
+        add(after);
+    }
+
+    // Recomputes every count from a snapshot in parallel, for start-up
+    void rebuild(StudentIndex.Snapshot snapshot) {
+        byGrade.clear();
+        byDomain.clear();
+        byGrade.putAll(StudentAggregation.countBy(snapshot, StudentField.GRADE));
+        byDomain.putAll(StudentAggregation.countBy(snapshot, StudentField.EMAIL_DOMAIN));
+    }
+
+    // Students per grade, largest groups first
+    Map<String, Long> byGrade() {
+        return StudentAggregation.sortedByCount(byGrade);
+    }
+
+    // Students per email domain, largest groups first
+    Map<String, Long> byEmailDomain() {
+        return StudentAggregation.sortedByCount(byDomain);
+    }
+}
+
+// StudentSearchIndex finds students by words in their name, email and roll number, optionally filtered by grade
+class StudentSearchIndex {
+    // The indexed terms of one student, kept so the student can be unindexed and re-checked without a lookup
+    private static class Entry {
+        final String[] terms; // Lower-cased words from name, email and roll number
+        final String grade; // Lower-cased grade
+
+        Entry(String[] terms, String grade) {
+            this.terms = terms;
+            this.grade = grade;
+        }
+    }
+
+    private static final int MAX_FILTER_TERMS = 16; // A word covering more terms than this is checked term by term
+    private final NavigableMap<String, Set<String>> postings = new TreeMap<>(); // Term -> roll numbers; sorted so a prefix is one sub-map
+    private final Map<String, Set<String>> byGrade = new HashMap<>(); // Lower-cased grade -> roll numbers
+    private final Map<String, Entry> entries = new HashMap<>(); // Roll number -> what was indexed for it
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); // Queries share, updates exclude
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+
+    // Splits text into lower-case runs of letters and digits ("Ana-Maria O'Neil" -> ana, maria, o, neil)
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        int start = -1; // Start of the current word, or -1 between words
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    // Indexes a student, replacing whatever was indexed for its roll number before
+    public void add(Student student) {
+        writeLock.lock();
+        try {
+            unindex(student.getRollNumber());
+            index(student);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Removes a student from the index
+    public void remove(String rollNumber) {
+        writeLock.lock();
+        try {
+            unindex(rollNumber);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Replaces the whole index with the given students (used once after loading)
+    public void rebuild(List<Student> students) {
+        writeLock.lock();
+        try {
+            postings.clear();
+            byGrade.clear();
+            entries.clear();
+            for (Student student : students) {
+                index(student);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Adds a student's terms and grade; caller holds the write lock
+    private void index(Student student) {
+        Set<String> unique = new LinkedHashSet<>(); // A repeated word is indexed once
+        unique.addAll(tokenize(student.getName()));
+        unique.addAll(tokenize(student.getEmail()));
+        unique.addAll(tokenize(student.getRollNumber()));
+        String roll = student.getRollNumber();
+        String grade = student.getGrade().toLowerCase(Locale.ROOT);
+        for (String term : unique) {
+            postings.computeIfAbsent(term, k -> new HashSet<>()).add(roll);
+        }
+        byGrade.computeIfAbsent(grade, k -> new HashSet<>()).add(roll);
+        entries.put(roll, new Entry(unique.toArray(new String[0]), grade));
+    }
+
+    // Removes everything indexed for a roll number; caller holds the write lock
+    private void unindex(String rollNumber) {
+        Entry entry = entries.remove(rollNumber);
+        if (entry == null) return;
+        for (String term : entry.terms) {
+            Set<String> rolls = postings.get(term);
+            rolls.remove(rollNumber);
+            if (rolls.isEmpty()) postings.remove(term); // Keeps prefix scans from walking dead terms
+        }
+        Set<String> rolls = byGrade.get(entry.grade);
+        rolls.remove(rollNumber);
+        if (rolls.isEmpty()) byGrade.remove(entry.grade);
+    }
+
+    // Returns up to limit + 1 roll numbers whose terms start with every query word, so callers can tell there are more.
+    // A "grade:X" word filters by grade instead of matching text.
+    public List<String> search(String query, int limit) {
+        List<String> words = new ArrayList<>(); // Text words; each must prefix-match one of the student's terms
+        String grade = null; // Grade filter, lower-cased
+        for (String raw : query.trim().split("\\s+")) {
+            if (raw.regionMatches(true, 0, "grade:", 0, 6)) {
+                grade = raw.substring(6).toLowerCase(Locale.ROOT);
+            } else {
+                words.addAll(tokenize(raw));
+            }
+        }
+        List<String> results = new ArrayList<>();
+        readLock.lock();
+        try {
+            Set<String> gradeRolls = grade == null ? null : byGrade.get(grade);
+            if (grade != null && gradeRolls == null) return results; // Nobody has that grade
+            if (words.isEmpty()) { // Grade-only query
+                if (gradeRolls != null) {
+                    for (String roll : gradeRolls) {
+                        results.add(roll);
+                        if (results.size() > limit) break;
+                    }
+                }
+                return results;
+            }
+            String driver = mostSelective(words); // Only this word's matches are enumerated; the others are checked per student
+            List<List<Set<String>>> filters = new ArrayList<>(); // For each other word: its posting sets, or null if it has too many terms
+            List<String> others = new ArrayList<>();
+            for (String word : words) {
+                if (word.equals(driver)) continue;
+                others.add(word);
+                filters.add(postingSets(word));
+            }
+            SortedMap<String, Set<String>> range = prefixRange(driver);
+            boolean severalTerms = !range.isEmpty() && !range.firstKey().equals(range.lastKey()); // O(log n), unlike size() on a sub-map
+            Set<String> seen = severalTerms ? new HashSet<>() : null; // A student can only repeat when several terms match
+            for (Set<String> rolls : range.values()) {
+                for (String roll : rolls) {
+                    if (seen != null && !seen.add(roll)) continue;
+                    if (gradeRolls != null && !gradeRolls.contains(roll)) continue;
+                    if (!matchesAll(roll, others, filters)) continue;
+                    results.add(roll);
+                    if (results.size() > limit) return results; // Type-ahead only needs the first page
+                }
+            }
+            return results;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // All terms that start with prefix, as a view of the sorted postings
+    private SortedMap<String, Set<String>> prefixRange(String prefix) {
+        return postings.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    // Picks the word with the fewest matching roll numbers, giving up on a word once it is no better than the best so far
+    private String mostSelective(List<String> words) {
+        if (words.size() == 1) return words.get(0);
+        List<String> ordered = new ArrayList<>(words);
+        ordered.sort((a, b) -> b.length() - a.length()); // Longer prefixes usually match less, so they set a tight bound early
+        String best = ordered.get(0);
+        long bestCount = Long.MAX_VALUE;
+        for (String word : ordered) {
+            long count = 0;
+            for (Set<String> rolls : prefixRange(word).values()) {
+                count += rolls.size();
+                if (count >= bestCount) break;
+            }
+            if (count < bestCount) {
+                best = word;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    // The posting sets of every term starting with word, or null if there are more than MAX_FILTER_TERMS of them
+    private List<Set<String>> postingSets(String word) {
+        List<Set<String>> sets = new ArrayList<>();
+        for (Set<String> rolls : prefixRange(word).values()) {
+            if (sets.size() == MAX_FILTER_TERMS) return null; // Cheaper to check the student's own terms instead
+            sets.add(rolls);
+        }
+        return sets;
+    }
+
+    // True if every word is a prefix of at least one of the student's terms
+    private boolean matchesAll(String roll, List<String> words, List<List<Set<String>>> filters) {
+        for (int i = 0; i < words.size(); i++) {
+            List<Set<String>> sets = filters.get(i);
+            boolean found = false;
+            if (sets != null) {
+                for (Set<String> rolls : sets) { // Hash lookups in the few sets the word covers
+                    if (rolls.contains(roll)) {
+                        found = true;
+                        break;
+                    }
+                }
+            } else {
+                for (String term : entries.get(roll).terms) { // Broad word: scan the student's handful of terms
+                    if (term.startsWith(words.get(i))) {
+                        found = true;
+                        break;
+                    }
+                }
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+}
+
+// Orders in which the student list can be paged
+enum SortKey {
+    ADDED("order added", null), // Insertion order; paged by position
+    NAME("name", Comparator.comparing(Student::getName, String.CASE_INSENSITIVE_ORDER)),
+    ROLL_NUMBER("roll number", Comparator.comparing(Student::getRollNumber, String.CASE_INSENSITIVE_ORDER)),
+    GRADE("grade", Comparator.comparing(Student::getGrade, String.CASE_INSENSITIVE_ORDER));
+
+    final String label; // Shown in the page footer
+    final Comparator<Student> order; // Full order, ending with the roll number so keyset cursors are unambiguous; null for ADDED
+
+    SortKey(String label, Comparator<Student> key) {
+        this.label = label;
+        this.order = key == null ? null : key.thenComparing(Student::getRollNumber);
+    }
+}
+
+// Marks where the next page starts: the last row shown (for sorted pages) or a position (for insertion order)
+class PageCursor {
+    final SortKey sortKey; // The order the cursor belongs to
+    final Student last; // Detached copy of the last row shown; the next page starts strictly after it
+    final int offset; // Rows shown so far; the position of the next page in insertion order
+    final int pageNumber; // 1-based number of the next page
+
+    PageCursor(SortKey sortKey, Student last, int offset, int pageNumber) {
+        this.sortKey = sortKey;
+        this.last = last;
+        this.offset = offset;
+        this.pageNumber = pageNumber;
+    }
+}
+
+// One page of students plus what is needed to render its footer and fetch the next one
+class StudentPage {
+    final List<Student> rows; // The students on this page, in order
+    final int pageNumber; // 1-based
+    final int totalPages; // Pages in the whole registry at the moment this page was taken
+    final int totalStudents; // Students in the registry at the moment this page was taken
+    final SortKey sortKey; // The order of the rows
+    final PageCursor next; // Cursor for the following page, or null if this is the last
+
+    StudentPage(List<Student> rows, int pageNumber, int totalPages, int totalStudents, SortKey sortKey, PageCursor next) {
+        this.rows = rows;
+        this.pageNumber = pageNumber;
+        this.totalPages = totalPages;
+        this.totalStudents = totalStudents;
+        this.sortKey = sortKey;
+        this.next = next;
+    }
+}
+
+// StudentTableWriter renders student tables into a reusable buffer and writes each page to the console in one call
+class StudentTableWriter {
+    static final String BORDER = "+-----------------+--------------+--------+---------------------------+--------------+";
+    static final String HEADER = "| Name            | Roll Number  | Grade  | Email                     | Phone        |";
+    private static final int FLUSH_CHARS = 256 * 1024; // Very long tables are written in blocks of about this size
+    private final StringBuilder buffer = new StringBuilder(8 * 1024); // Reused for every page
+    private final PrintStream out; // Destination stream
+    private final Charset charset; // Encoding the destination expects
+
+    StudentTableWriter(PrintStream out) {
+        this.out = out;
+        String encoding = System.getProperty("sun.stdout.encoding"); // Set when the console differs from the default (e.g. Windows)
+        this.charset = encoding != null ? Charset.forName(encoding) : Charset.defaultCharset();
+    }
+
+    // Writes a table of rows followed by a footer line, as one write when it fits in the buffer
+    void writeTable(List<Student> rows, String footer) {
+        buffer.append('\n').append(BORDER).append('\n').append(HEADER).append('\n').append(BORDER).append('\n');
+        for (Student student : rows) {
+            appendRow(student);
+            if (buffer.length() >= FLUSH_CHARS) flush(); // Keeps memory bounded for the full listing
+        }
+        buffer.append(BORDER).append('\n').append(footer).append('\n');
+        flush();
+    }
+
+    // Encodes one row with the same fixed column widths as Student.toString, without String.format
+    private void appendRow(Student student) {
+        buffer.append("| ");
+        appendPadded(student.getName(), 15);
+        buffer.append(" | ");
+        appendPadded(student.getRollNumber(), 12);
+        buffer.append(" | ");
+        appendPadded(student.getGrade(), 6);
+        buffer.append(" | ");
+        appendPadded(student.getEmail(), 25);
+        buffer.append(" | ");
+        appendPadded(student.getPhone(), 12);
+        buffer.append(" |\n");
+    }
+
+    // Appends value left-aligned in width columns; longer values are kept whole, as %-Ns does
+    private void appendPadded(String value, int width) {
+        buffer.append(value);
+        for (int i = value.length(); i < width; i++) buffer.append(' ');
+    }
+
+    // Sends the buffered text to the stream in a single write
+    private void flush() {
+        out.flush(); // Anything printed before, such as a prompt, must come out first
+        byte[] bytes = buffer.toString().getBytes(charset);
+        out.write(bytes, 0, bytes.length);
+        out.flush();
+        buffer.setLength(0);
+    }
+}
+
+// StudentLog is the append-only write-ahead log of student changes; each record is [length][CRC32][payload]
+class StudentLog {
+    static final byte OP_ADD = 1; // Payload: lsn, op, name, roll number, grade, email, phone
+    static final byte OP_UPDATE = 2; // Payload: lsn, op, roll number, field number, new value
+    static final byte OP_REMOVE = 3; // Payload: lsn, op, roll number
+    static final byte OP_REPLACE = 4; // Payload: lsn, op, name, roll number, grade, email, phone (every field at once)
+    private static final int HEADER_SIZE = 8; // Payload length (int) + CRC32 of the payload (int)
+    private static final int MAX_PAYLOAD = 1 << 20; // Anything larger is treated as a torn or corrupt length
+
+    // Receives the records of a log in the order they were written
+    interface Visitor {
+        void add(long lsn, Student student); // A student was added
+        void update(long lsn, String rollNumber, int field, String value); // One field of a student changed
+        void remove(long lsn, String rollNumber); // A student was removed
+        void replace(long lsn, Student student); // Every field of a student changed in one edit
+    }
+
+    private final Path path; // Location of the live log
+    private FileChannel channel; // Append-only channel to the live log
+    private long records; // Records written to the live log since it was created or rotated
+    private long syncedLength; // Bytes of the live log known to be on disk
+    private long syncedRecords; // Records within syncedLength
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream(256); // Reused payload buffer
+    private final DataOutputStream out = new DataOutputStream(payload); // Writes typed fields into the payload buffer
+    private final CRC32 crc = new CRC32(); // Reused checksum
+    private final ByteBuffer pending = ByteBuffer.allocateDirect(64 * 1024); // Records written since the last flush
+
+    // Opens the log for appending, cutting off anything past validLength (a record torn by a crash)
+    StudentLog(Path path, long validLength, long records) throws IOException {
+        this.path = path;
+        this.records = records; // Records already in the file, counted during replay
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() > validLength) {
+            channel.truncate(validLength); // Drops the torn tail so new records follow the last good one
+        }
+        channel.position(channel.size()); // Appends from the end
+        syncedLength = channel.size();
+        syncedRecords = records;
+    }
+
+    // Appends an add record
+    void appendAdd(long lsn, Student student) throws IOException {
+        appendStudent(lsn, OP_ADD, student);
+    }
+
+    // Appends a record replacing every field of a student
+    void appendReplace(long lsn, Student student) throws IOException {
+        appendStudent(lsn, OP_REPLACE, student);
+    }
+
+    // Appends a record carrying a whole student
+    private void appendStudent(long lsn, byte op, Student student) throws IOException {
+        out.writeLong(lsn);
+        out.writeByte(op);
+        out.writeUTF(student.getName());
+        out.writeUTF(student.getRollNumber());
+        out.writeUTF(student.getGrade());
+        out.writeUTF(student.getEmail());
+        out.writeUTF(student.getPhone());
+        writeRecord();
+    }
+
+    // Appends an update record for one field
+    void appendUpdate(long lsn, String rollNumber, int field, String value) throws IOException {
+        out.writeLong(lsn);
+        out.writeByte(OP_UPDATE);
+        out.writeUTF(rollNumber);
+        out.writeByte(field);
+        out.writeUTF(value);
+        writeRecord();
+    }
+
+    // Appends a remove record
+    void appendRemove(long lsn, String rollNumber) throws IOException {
+        out.writeLong(lsn);
+        out.writeByte(OP_REMOVE);
+        out.writeUTF(rollNumber);
+        writeRecord();
+    }
+
+    // Frames the buffered payload with its length and checksum and queues it in the write buffer
+    private void writeRecord() throws IOException {
+        byte[] bytes = payload.toByteArray();
+        payload.reset(); // Ready for the next record
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
+        if (pending.remaining() < HEADER_SIZE + bytes.length) {
+            flush(); // Makes room; a record larger than the whole buffer is written on its own
+            if (pending.remaining() < HEADER_SIZE + bytes.length) {
+                writeFully(ByteBuffer.allocate(HEADER_SIZE + bytes.length).putInt(bytes.length).putInt((int) crc.getValue()).put(bytes));
+                records++;
+                return;
+            }
+        }
+        pending.putInt(bytes.length).putInt((int) crc.getValue()).put(bytes); // Cost depends on the record, not on the size of the registry
+        records++;
+    }
+
+    // Writes queued records to the file without forcing them
+    private void flush() throws IOException {
+        writeFully(pending);
+        pending.clear();
+    }
+
+    // Writes everything between position and limit of a buffer that is still being filled
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Writes queued records and forces them to disk
+    void sync() throws IOException {
+        flush(); // A batch of records goes out in as few writes as the buffer allows
+        channel.force(false); // Data only; the file length is covered because the OS must update it to expose the data
+        syncedLength = channel.position();
+        syncedRecords = records;
+    }
+
+    // Drops every record appended since the last successful sync, queued or already written, after a failed
+    // append or sync, so the log never holds a change the registry does not
+    void discardUnsynced() throws IOException {
+        pending.clear();
+        payload.reset();
+        records = syncedRecords;
+        channel.truncate(syncedLength);
+        channel.position(syncedLength);
+    }
+
+    // Returns the number of records in the live log
+    long records() {
+        return records;
+    }
+
+    // Moves the live log to segment and starts a new, empty live log in its place
+    void rotate(Path segment) throws IOException {
+        sync(); // Queued records belong to the segment being handed over
+        channel.close();
+        Files.move(path, segment, StandardCopyOption.ATOMIC_MOVE); // The segment now belongs to the compactor
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        records = 0;
+        syncedLength = 0;
+        syncedRecords = 0;
+    }
+
+    // Writes, forces and closes the live log
+    void close() throws IOException {
+        sync();
+        channel.close();
+    }
+
+    // Feeds every intact record of file to visitor and returns the length of the intact prefix (0 if the file is missing)
+    static long replay(Path file, Visitor visitor) throws IOException {
+        if (!Files.exists(file)) return 0;
+        long valid = 0; // Bytes up to the end of the last intact record
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt(); // Payload length
+                } catch (EOFException e) {
+                    break; // Clean end of file
+                }
+                if (length <= 0 || length > MAX_PAYLOAD) break; // Torn or corrupt header
+                byte[] bytes = new byte[length];
+                int checksum;
+                try {
+                    checksum = in.readInt();
+                    in.readFully(bytes);
+                } catch (EOFException e) {
+                    break; // Record cut short by a crash
+                }
+                crc.reset();
+                crc.update(bytes, 0, length);
+                if ((int) crc.getValue() != checksum) break; // Partially written record
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+                long lsn = record.readLong();
+                byte op = record.readByte();
+                switch (op) {
+                    case OP_ADD:
+                    case OP_REPLACE:
+                        String name = record.readUTF();
+                        String roll = record.readUTF();
+                        Student student = new Student(name, roll, record.readUTF(), record.readUTF(), record.readUTF());
+                        if (op == OP_ADD) {
+                            visitor.add(lsn, student);
+                        } else {
+                            visitor.replace(lsn, student);
+                        }
+                        break;
+                    case OP_UPDATE:
+                        String updated = record.readUTF();
+                        int field = record.readByte();
+                        visitor.update(lsn, updated, field, record.readUTF());
+                        break;
+                    case OP_REMOVE:
+                        visitor.remove(lsn, record.readUTF());
+                        break;
+                    default:
+                        throw new IOException("Unknown log operation " + op + " in " + file);
+                }
+                valid += HEADER_SIZE + length; // This record is good
+            }
+        }
+        return valid;
     }
 }
 
 // Student Management System class handles operations related to managing students
 class StudentManagementSystem {
-    private List<Student> students; // A list to store Student objects
-    private static final String FILE_NAME = "students.txt"; // Constant for the file name where student data is stored
+    private final StudentIndex students = new StudentIndex(Boolean.getBoolean("sms.columnar")); // Hash-indexed store; -Dsms.columnar=true keeps it in columns
+    private final StudentSearchIndex search = new StudentSearchIndex(); // Word and prefix index over name, email and roll number
+    private final StudentCounts counts = new StudentCounts(); // Students per grade and email domain, kept current
+    private static final String FILE_NAME = "students.txt"; // Snapshot of the registry, rewritten only by compaction
+    private static final String LOG_NAME = "students.log"; // Write-ahead log of changes since the snapshot
+    private static final String SEGMENT_NAME = "students.log.1"; // Log being folded into the snapshot by a compaction
+    private static final int COMPACT_THRESHOLD = 10_000; // Minimum live log records before a compaction starts
+
+    private final Object writeMutex = new Object(); // Keeps index changes and their log records in the same order
+    private long lsn; // Sequence number of the last logged change
+    private boolean snapshotOutdated; // The loaded students.txt uses an older schema and is rewritten after start-up
+    private StudentLog log; // The live write-ahead log
+    private final AtomicBoolean compacting = new AtomicBoolean(); // True while a background compaction runs
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "student-compactor");
+        thread.setDaemon(true); // Never keeps the program alive on its own
+        return thread;
+    });
+
+    // Constructor for StudentManagementSystem
+    public StudentManagementSystem() {
+        long snapshotLsn = loadStudentsFromFile(); // Loads the snapshot when the system starts
+        lsn = snapshotLsn;
+        try {
+            ReplayVisitor visitor = new ReplayVisitor(snapshotLsn);
+            StudentLog.replay(Paths.get(SEGMENT_NAME), visitor); // Changes from an interrupted compaction, if any
+            visitor.records = 0; // Only the live log's records count towards the next compaction
+            long valid = StudentLog.replay(Paths.get(LOG_NAME), visitor); // Changes since the last compaction
+            log = new StudentLog(Paths.get(LOG_NAME), valid, visitor.records);
+        } catch (IOException e) {
+            System.out.println("Error loading student data: " + e.getMessage());
+            throw new UncheckedIOException(e); // Continuing without a log would silently lose every change
+        }
+        search.rebuild(students.snapshot()); // Built once after replay, then kept up to date by each change
+        try (StudentIndex.Snapshot snapshot = students.openSnapshot()) {
+            counts.rebuild(snapshot); // Likewise for the report counts
+        }
+        if (Files.exists(Paths.get(SEGMENT_NAME))) {
+            compact(); // Finishes the compaction a crash interrupted
+        } else if (snapshotOutdated) {
+            System.out.println("Upgrading " + FILE_NAME + " to schema version " + StudentCsv.SCHEMA_VERSION);
+            compact(); // Rewrites the snapshot in the current format
+        }
+    }
+
+    // Applies replayed records that are newer than the snapshot
+    private class ReplayVisitor implements StudentLog.Visitor {
+        private final long snapshotLsn; // Records at or below this are already in the snapshot
+        long records; // Records seen, for the compaction threshold
+
+        ReplayVisitor(long snapshotLsn) {
+            this.snapshotLsn = snapshotLsn;
+        }
+
+        // Skips old records and advances the sequence number; returns true if the record should be applied
+        private boolean accept(long recordLsn) {
+            records++;
+            if (recordLsn <= snapshotLsn) return false; // Already part of the snapshot
+            lsn = Math.max(lsn, recordLsn);
+            return true;
+        }
+
+        @Override
+        public void add(long recordLsn, Student student) {
+            if (accept(recordLsn)) students.insert(student);
+        }
+
+        @Override
+        public void update(long recordLsn, String rollNumber, int field, String value) {
+            if (accept(recordLsn)) students.update(rollNumber, field, value);
+        }
+
+        @Override
+        public void remove(long recordLsn, String rollNumber) {
+            if (accept(recordLsn)) students.remove(rollNumber);
+        }
+
+        @Override
+        public void replace(long recordLsn, Student student) {
+            if (accept(recordLsn)) students.replace(student);
+        }
+    }
+
+    // Every write checks the change, then logs and syncs it, and only then publishes it, all under writeMutex.
+    // If the log cannot be written the change is dropped and the caller gets NOT_SAVED.
+
+    // Adds a new student to the system; fails if the roll number, email or phone is already in use
+    public StoreResult addStudent(Student student) {
+        StoreResult result;
+        synchronized (writeMutex) {
+            result = students.checkAll(Collections.singletonList(student)).get(0); // O(1) uniqueness checks
+            if (result == StoreResult.OK) {
+                try {
+                    log.appendAdd(lsn + 1, student); // One log record instead of rewriting the whole file
+                    log.sync();
+                } catch (IOException e) {
+                    return notSaved(e);
+                }
+                lsn++;
+                students.insert(student);
+                search.add(student);
+                counts.add(student);
+            }
+        }
+        compactIfNeeded();
+        return result;
+    }
+
+    // Removes a student from the system based on their roll number
+    public StoreResult removeStudent(String rollNumber) {
+        synchronized (writeMutex) {
+            if (students.get(rollNumber) == null) return StoreResult.NOT_FOUND;
+            try {
+                log.appendRemove(lsn + 1, rollNumber);
+                log.sync();
+            } catch (IOException e) {
+                return notSaved(e);
+            }
+            lsn++;
+            Student student = students.remove(rollNumber); // O(1) removal through the roll number index
+            search.remove(rollNumber);
+            counts.remove(student);
+        }
+        compactIfNeeded();
+        return StoreResult.OK;
+    }
+
+    // Adds many students in one commit and one log flush; returns each student's result in order.
+    // If the log cannot be written, every student that would have been added gets NOT_SAVED.
+    public List<StoreResult> addStudents(List<Student> batch) {
+        List<StoreResult> results;
+        synchronized (writeMutex) {
+            results = students.checkAll(batch);
+            List<Student> accepted = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                if (results.get(i) == StoreResult.OK) accepted.add(batch.get(i));
+            }
+            try {
+                for (int i = 0; i < accepted.size(); i++) {
+                    log.appendAdd(lsn + 1 + i, accepted.get(i)); // Buffered; written in large blocks
+                }
+                log.sync(); // A single flush and force for the whole batch
+            } catch (IOException e) {
+                notSaved(e);
+                results.replaceAll(result -> result == StoreResult.OK ? StoreResult.NOT_SAVED : result);
+                return results;
+            }
+            lsn += accepted.size();
+            students.insertAll(accepted); // Readers see the whole batch or none of it
+            for (Student student : accepted) {
+                search.add(student);
+                counts.add(student);
+            }
+        }
+        compactIfNeeded();
+        return results;
+    }
+
+    // Reports a failed log write and drops whatever part of it reached the file; caller holds writeMutex
+    private StoreResult notSaved(IOException e) {
+        System.out.println("Error saving student data: " + e.getMessage());
+        try {
+            log.discardUnsynced();
+        } catch (IOException discardFailed) {
+            System.out.println("Error discarding unsaved student data: " + discardFailed.getMessage());
+        }
+        return StoreResult.NOT_SAVED;
+    }
+
+    // Finds students whose name, email or roll number has words starting with every query word; "grade:X" filters by grade.
+    // Returns at most limit + 1 students so callers can say there are more.
+    public List<Student> searchStudents(String query, int limit) {
+        List<Student> matches = new ArrayList<>();
+        for (String roll : search.search(query, limit)) {
+            Student student = students.get(roll);
+            if (student != null) matches.add(student); // Skips a student removed since the query ran
+        }
+        return matches;
+    }
+
+    // Returns a copy of all students in insertion order
+    public List<Student> snapshot() {
+        return students.snapshot();
+    }
+
+    // Finds a student by their roll number
+    public Student findStudent(String rollNumber) {
+        return students.get(rollNumber); // Hash lookup; returns null if no student has this roll number
+    }
+
+    // Returns true if another student (not excludeRoll) already uses this email
+    public boolean isEmailTaken(String email, String excludeRoll) {
+        return students.isEmailTaken(email, excludeRoll);
+    }
+
+    // Returns true if another student (not excludeRoll) already uses this phone number
+    public boolean isPhoneTaken(String phone, String excludeRoll) {
+        return students.isPhoneTaken(phone, excludeRoll);
+    }
+
+    // Edits one field of a student; field is 1 = name, 2 = grade, 3 = email, 4 = phone
+    public StoreResult updateStudent(String rollNumber, int field, String value) {
+        StoreResult result;
+        synchronized (writeMutex) {
+            Student before = students.get(rollNumber); // Writers are serialized, so this is the version being replaced
+            Student after = students.withField(rollNumber, field, value);
+            result = after == null ? StoreResult.NOT_FOUND : students.checkReplace(after);
+            if (result == StoreResult.OK) {
+                try {
+                    log.appendUpdate(lsn + 1, rollNumber, field, value);
+                    log.sync();
+                } catch (IOException e) {
+                    return notSaved(e);
+                }
+                lsn++;
+                students.replace(after);
+                search.add(after); // Re-indexes the edited student
+                counts.replace(before, after);
+            }
+        }
+        compactIfNeeded();
+        return result;
+    }
+
+    // Replaces every field of a student (matched by roll number) as one atomic edit
+    public StoreResult updateStudent(Student edited) {
+        StoreResult result;
+        synchronized (writeMutex) {
+            result = replaceLocked(edited);
+        }
+        compactIfNeeded();
+        return result;
+    }
+
+    // Applies edit to a copy of the student's current version and commits the result as one atomic edit. The read, the
+    // edit and the commit all happen under writeMutex, so two concurrent edits of different fields both survive.
+    // edit may throw to reject the change, in which case nothing is changed; it must not change the roll number.
+    public StoreResult updateStudent(String rollNumber, UnaryOperator<Student> edit) {
+        StoreResult result;
+        synchronized (writeMutex) {
+            Student current = students.get(rollNumber);
+            if (current == null) return StoreResult.NOT_FOUND;
+            Student edited = edit.apply(new Student(current.getName(), rollNumber, current.getGrade(), current.getEmail(), current.getPhone()));
+            if (!edited.getRollNumber().equals(rollNumber)) throw new IllegalArgumentException("rollNumber cannot be changed");
+            result = replaceLocked(edited);
+        }
+        compactIfNeeded();
+        return result;
+    }
+
+    // Checks, logs and publishes a whole-student replace; caller holds writeMutex
+    private StoreResult replaceLocked(Student edited) {
+        Student before = students.get(edited.getRollNumber());
+        StoreResult result = students.checkReplace(edited);
+        if (result == StoreResult.OK) {
+            try {
+                log.appendReplace(lsn + 1, edited); // One record, so replay applies all fields or none
+                log.sync();
+            } catch (IOException e) {
+                return notSaved(e);
+            }
+            lsn++;
+            students.replace(edited); // Readers see the old record or the new one, never a mix
+            search.add(edited); // Re-indexes the edited student
+            counts.replace(before, edited);
+        }
+        return result;
+    }
+
+    // Students per grade, largest groups first; maintained on every change, so this does not scan the registry
+    public Map<String, Long> countByGrade() {
+        return counts.byGrade();
+    }
+
+    // Students per email domain, largest groups first; maintained on every change
+    public Map<String, Long> countByEmailDomain() {
+        return counts.byEmailDomain();
+    }
+
+    // Number of students in the registry
+    public int studentCount() {
+        return students.size();
+    }
+
+    // Opens a consistent read-only view of the registry; close it when done so old versions can be freed
+    public StudentIndex.Snapshot openSnapshot() {
+        return students.openSnapshot();
+    }
+
+    // Displays all students currently in the system in a formatted table
+    public void displayAllStudents() {
+        List<Student> students = this.students.snapshot(); // Consistent copy to print from
+        if (students.isEmpty()) { // Checks if there are no students
+            System.out.println("No students in the system.");
+            return;
+        }
+        new StudentTableWriter(System.out).writeTable(students, "Total students: " + students.size()); // Buffered, few large writes
+    }
+
+    // Returns the page after cursor (or the first page if cursor is null) of at most pageSize students in the given order.
+    // Sorted pages pick the next pageSize rows with a bounded heap, so no page sorts the whole registry.
+    public StudentPage page(SortKey sortKey, PageCursor cursor, int pageSize) {
+        if (cursor != null && cursor.sortKey != sortKey) throw new IllegalArgumentException("Cursor belongs to another sort order");
+        int offset = cursor == null ? 0 : cursor.offset; // Rows on earlier pages
+        int pageNumber = cursor == null ? 1 : cursor.pageNumber;
+        List<Student> rows = new ArrayList<>(pageSize);
+        int[] counts = new int[2]; // [0] = students in the registry, [1] = students after the cursor
+        if (sortKey.order == null) {
+            students.forEach(student -> { // Insertion order: skip to the offset and take a page
+                if (counts[0] >= offset && rows.size() < pageSize) rows.add(student);
+                counts[0]++;
+            });
+            counts[1] = Math.max(counts[0] - offset, 0);
+        } else {
+            Comparator<Student> order = sortKey.order;
+            PriorityQueue<Student> heap = new PriorityQueue<>(pageSize + 1, order.reversed()); // Largest kept row on top
+            Student last = cursor == null ? null : cursor.last;
+            students.forEach(student -> {
+                counts[0]++;
+                if (last != null && order.compare(student, last) <= 0) return; // Already shown on an earlier page
+                counts[1]++;
+                if (heap.size() < pageSize) {
+                    heap.add(student);
+                } else if (order.compare(student, heap.peek()) < 0) {
+                    heap.poll(); // Drops the largest; this row belongs on the page instead
+                    heap.add(student);
+                }
+            });
+            rows.addAll(heap);
+            rows.sort(order);
+        }
+        List<Student> copies = new ArrayList<>(rows.size()); // Detached, so the page does not change if a student is edited
+        for (Student s : rows) copies.add(new Student(s.getName(), s.getRollNumber(), s.getGrade(), s.getEmail(), s.getPhone()));
+        int totalPages = Math.max(1, (counts[0] + pageSize - 1) / pageSize);
+        PageCursor next = counts[1] > copies.size()
+                ? new PageCursor(sortKey, copies.get(copies.size() - 1), offset + copies.size(), pageNumber + 1)
+                : null;
+        return new StudentPage(copies, pageNumber, totalPages, counts[0], sortKey, next);
+    }
+
+    // Starts a background compaction once the live log outgrows both the threshold and the registry itself
+    private void compactIfNeeded() {
+        long records;
+        synchronized (writeMutex) {
+            records = log.records();
+        }
+        if (records < Math.max(COMPACT_THRESHOLD, students.size())) return; // Keeps compaction cost amortized O(1) per change
+        if (!compacting.compareAndSet(false, true)) return; // One compaction at a time
+        compactor.execute(() -> {
+            try {
+                compact();
+            } finally {
+                compacting.set(false);
+            }
+        });
+    }
+
+    // Folds the log into a new snapshot: rotate the log, write the snapshot to a temp file, then rename it into place
+    private void compact() {
+        StudentIndex.Snapshot snapshot; // Consistent view at the rotation point; writers carry on while it is saved
+        long snapshotLsn;
+        Path segment = Paths.get(SEGMENT_NAME);
+        synchronized (writeMutex) {
+            try {
+                if (!Files.exists(segment)) {
+                    log.rotate(segment); // New changes go to a fresh log while the snapshot is written
+                }
+            } catch (IOException e) {
+                System.out.println("Error compacting student data: " + e.getMessage());
+                return;
+            }
+            snapshot = students.openSnapshot(); // O(1); no copy of the registry is made
+            snapshotLsn = lsn; // Every change up to here is in the snapshot
+        }
+        try (StudentIndex.Snapshot open = snapshot) {
+            saveStudentsToFile(open, snapshotLsn); // Slow part runs without blocking writers
+            Files.deleteIfExists(segment); // The snapshot now covers everything the segment held
+        } catch (IOException e) {
+            System.out.println("Error saving student data: " + e.getMessage()); // The segment stays; it is replayed on the next start
+        }
+    }
+
+    // Waits for a running compaction and closes the log
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (writeMutex) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.out.println("Error saving student data: " + e.getMessage());
+            }
+        }
+    }
+
+    // Writes a snapshot of the given students to a temp file, forces it and atomically renames it over the old snapshot
+    private void saveStudentsToFile(StudentIndex.Snapshot snapshot, long snapshotLsn) throws IOException {
+        Path target = Paths.get(FILE_NAME);
+        Path temp = Paths.get(FILE_NAME + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp.toFile());
+             PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8)))) {
+            writer.print(StudentCsv.versionLine(snapshotLsn) + "\n"); // Schema version and the last log record included
+            writer.print(StudentCsv.HEADER + "\n");
+            StringBuilder row = new StringBuilder(256); // Reused for every student
+            snapshot.forEach(student -> { // Iterates through each student of the snapshot
+                row.setLength(0);
+                StudentCsv.appendRow(row, student); // RFC 4180: commas, quotes and newlines in a field are quoted
+                writer.append(row);
+            });
+            writer.flush();
+            if (writer.checkError()) throw new IOException("write to " + temp + " failed");
+            stream.getChannel().force(true); // The snapshot must be on disk before it replaces the old one
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING); // Readers see the old or the new file, never half of one
+    }
+
+    // Loads the snapshot into the system and returns the sequence number of the last log record it includes
+    private long loadStudentsFromFile() {
+        Path file = Paths.get(FILE_NAME);
+        if (!Files.exists(file)) return 0; // If the file doesn't exist, there's nothing to load
+
+        StudentCsv.SnapshotContents contents;
+        try {
+            contents = StudentCsv.readSnapshot(file); // Parsed straight from a memory map
+        } catch (IOException e) {
+            System.out.println("Error loading student data: " + e.getMessage());
+            throw new UncheckedIOException(e); // The next compaction would overwrite the file with an incomplete registry
+        }
+        int duplicates = 0; // Rows skipped because their roll number, email or phone was already taken
+        for (StoreResult result : students.insertAll(contents.students)) { // One commit; the index enforces uniqueness
+            if (result != StoreResult.OK) duplicates++; // The first row with a given roll number, email or phone wins
+        }
+        if (duplicates > 0) {
+            System.out.println("Skipped " + duplicates + " duplicate student record(s) while loading " + FILE_NAME);
+        }
+        if (contents.malformed > 0) {
+            System.out.println("Skipped " + contents.malformed + " malformed row(s) while loading " + FILE_NAME);
+        }
+        if (contents.recovered > 0) {
+            System.out.println("Recovered " + contents.recovered + " student(s) whose name contains a comma");
+        }
+        snapshotOutdated = contents.version < StudentCsv.SCHEMA_VERSION;
+        return contents.lsn;
+    }
+}
+
+// StudentCsv reads and writes students as RFC 4180 CSV. Fields holding a comma, quote, CR or LF are quoted, with
+// quotes doubled. The reader parses straight from a (usually memory-mapped) ByteBuffer: it allocates a String per
+// field and nothing per line. students.txt begins with a "#schema=2,lsn=N" line and a header row. Version 1 files
+// (a "#lsn=N" line or nothing, then unquoted rows) are still read and are rewritten in the new format.
+class StudentCsv {
+    static final int SCHEMA_VERSION = 2; // Written by this program; 1 is the unquoted format it replaced
+    static final String HEADER = "name,roll_number,grade,email,phone"; // Column names, in field order
+    private static final String SCHEMA_PREFIX = "#schema="; // Starts the version line of version 2 and later files
+
+    // Walks the records of a buffer one at a time; the field values of the current record are valid until next()
+    static final class Reader {
+        private static final long ONES = 0x0101010101010101L; // One in every byte of a long
+        private static final long HIGHS = 0x8080808080808080L; // High bit of every byte of a long
+        private static final long COMMAS = ONES * ',';
+        private static final long NEWLINES = ONES * '\n';
+        private final ByteBuffer in; // Read with absolute gets only, so the buffer itself is never changed
+        private final ByteBuffer words; // Little-endian view of in, for reading eight bytes at a time
+        private final int limit; // End of the records
+        private final boolean quoting; // False for version 1 files, where a quote is an ordinary character
+        private int pos; // Next byte to read
+        private long lines; // Newlines read so far
+        private long line; // 0-based line the current record starts on
+        private String[] fields = new String[8]; // Fields of the current record; grows for long legacy rows
+        private int count; // Fields in the current record
+        private boolean comment; // True if the current record is a '#' line, held whole in field 0
+        private String error; // Why the current record is malformed, or null
+        private byte[] scratch = new byte[256]; // Bytes of the field being decoded; grows for long fields
+
+        // Reads the records from in's position to its limit; fileStart says the buffer begins at the start of the file,
+        // where a UTF-8 byte order mark is skipped
+        Reader(ByteBuffer in, boolean quoting, boolean fileStart) {
+            this.in = in;
+            this.words = in.duplicate().order(ByteOrder.LITTLE_ENDIAN); // Shares the bytes; nothing is copied
+            this.limit = in.limit();
+            this.quoting = quoting;
+            this.pos = in.position();
+            if (fileStart && limit - pos >= 3 && in.get(pos) == (byte) 0xEF && in.get(pos + 1) == (byte) 0xBB && in.get(pos + 2) == (byte) 0xBF) {
+                pos += 3; // Byte order mark written by some spreadsheet programs
+            }
+        }
+
+        // Moves to the next record; returns false at the end of the buffer
+        boolean next() {
+            if (pos >= limit) return false;
+            line = lines;
+            count = 0;
+            error = null;
+            comment = in.get(pos) == '#';
+            if (comment) { // Comment and version lines are kept whole, quotes and all
+                int end = endOfLine(pos);
+                addField(decode(pos, end > pos && in.get(end - 1) == '\r' ? end - 1 : end));
+                skipLine(end);
+                return true;
+            }
+            while (true) {
+                if (quoting && pos < limit && in.get(pos) == '"') {
+                    if (!readQuoted()) { // Malformed: the rest of the line is skipped
+                        skipLine(endOfLine(pos));
+                        return true;
+                    }
+                } else {
+                    int start = pos;
+                    pos = nextDelimiter(pos);
+                    int end = pos;
+                    if ((pos == limit || in.get(pos) == '\n') && end > start && in.get(end - 1) == '\r') end--; // CRLF line ends
+                    addField(decode(start, end));
+                }
+                if (pos >= limit) return true; // Last record without a newline
+                if (in.get(pos++) == '\n') {
+                    lines++;
+                    return true;
+                }
+                // A comma: another field follows, possibly empty
+            }
+        }
+
+        // Reads a quoted field starting at pos; returns false and sets error if it is malformed
+        private boolean readQuoted() {
+            pos++; // Opening quote
+            int length = 0;
+            while (true) {
+                if (pos >= limit) {
+                    error = "unterminated quoted field";
+                    return false;
+                }
+                byte b = in.get(pos++);
+                if (b == '"') {
+                    if (pos == limit || in.get(pos) != '"') break; // Closing quote
+                    pos++; // A doubled quote stands for one quote
+                } else if (b == '\n') {
+                    lines++; // Quoted fields may span lines
+                }
+                if (length == scratch.length) scratch = Arrays.copyOf(scratch, length * 2);
+                scratch[length++] = b;
+            }
+            if (pos < limit && in.get(pos) == '\r' && (pos + 1 == limit || in.get(pos + 1) == '\n')) pos++; // CRLF line end
+            if (pos < limit && in.get(pos) != ',' && in.get(pos) != '\n') {
+                error = "unexpected character after a closing quote";
+                return false;
+            }
+            addField(new String(scratch, 0, length, StandardCharsets.UTF_8));
+            return true;
+        }
+
+        // Position of the next comma or newline at or after from, or the limit. Unquoted fields are scanned eight
+        // bytes at a time: a byte equal to the delimiter becomes zero after the XOR, and the subtraction trick sets
+        // the high bit of the first zero byte, so no byte is examined on its own until the last few.
+        private int nextDelimiter(int from) {
+            while (from + 8 <= limit) {
+                long word = words.getLong(from);
+                long commas = word ^ COMMAS;
+                long newlines = word ^ NEWLINES;
+                long found = ((commas - ONES) & ~commas | (newlines - ONES) & ~newlines) & HIGHS;
+                if (found != 0) return from + (Long.numberOfTrailingZeros(found) >>> 3); // Lowest address first
+                from += 8;
+            }
+            while (from < limit) {
+                byte b = in.get(from);
+                if (b == ',' || b == '\n') break;
+                from++;
+            }
+            return from;
+        }
+
+        // Position of the next newline at or after from, or the limit
+        private int endOfLine(int from) {
+            while (from < limit && in.get(from) != '\n') from++;
+            return from;
+        }
+
+        // Continues after the newline at end, if there is one
+        private void skipLine(int end) {
+            pos = end;
+            if (pos < limit) {
+                pos++;
+                lines++;
+            }
+        }
+
+        // Decodes in[from, to) as UTF-8
+        private String decode(int from, int to) {
+            int length = to - from;
+            if (length > scratch.length) scratch = new byte[Math.max(length, scratch.length * 2)];
+            in.get(from, scratch, 0, length); // Absolute bulk copy; the buffer's position stays put
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private void addField(String value) {
+            if (count == fields.length) fields = Arrays.copyOf(fields, count * 2);
+            fields[count++] = value;
+        }
+
+        boolean isComment() { return comment; }
+        boolean isBlank() { return !comment && error == null && count == 1 && fields[0].isEmpty(); }
+        int count() { return count; }
+        String field(int index) { return fields[index]; }
+        String error() { return error; } // Null unless the record is malformed
+        long line() { return line; } // 0-based line the record starts on
+        long lines() { return lines; } // Newlines read so far
+    }
+
+    // Appends one student as a CSV row ending in a newline
+    static void appendRow(StringBuilder out, Student student) {
+        appendField(out, student.getName(), true);
+        out.append(',');
+        appendField(out, student.getRollNumber(), false);
+        out.append(',');
+        appendField(out, student.getGrade(), false);
+        out.append(',');
+        appendField(out, student.getEmail(), false);
+        out.append(',');
+        appendField(out, student.getPhone(), false);
+        out.append('\n');
+    }
+
+    // Appends a field, quoting it if it holds a delimiter, or if it would read back as a comment or byte order mark
+    static void appendField(StringBuilder out, String value, boolean first) {
+        boolean quote = first && !value.isEmpty() && (value.charAt(0) == '#' || value.charAt(0) == '﻿');
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') out.append('"'); // Doubled
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    // The first line of a snapshot: schema version and the last log record the snapshot includes
+    static String versionLine(long lsn) {
+        return SCHEMA_PREFIX + SCHEMA_VERSION + ",lsn=" + lsn;
+    }
+
+    // What a students.txt snapshot held
+    static final class SnapshotContents {
+        int version = 1; // Files without a version line are version 1
+        long lsn; // Last log record included; 0 for files written before the log existed
+        final List<Student> students = new ArrayList<>(); // In file order
+        int malformed; // Rows that could not be read
+        int recovered; // Version 1 rows whose name held commas, which the old loader dropped
+    }
+
+    // Reads a snapshot file of any known version from a memory map
+    static SnapshotContents readSnapshot(Path path) throws IOException {
+        SnapshotContents contents = new SnapshotContents();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException(path + " is larger than 2 GB");
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            contents.version = startsWith(buffer, SCHEMA_PREFIX) ? 0 : 1; // Version 2+ says so on its first line
+            Reader reader = new Reader(buffer, contents.version != 1, true);
+            boolean headerAllowed = true; // The header row comes before any student
+            while (reader.next()) {
+                if (reader.isComment()) {
+                    readVersionLine(contents, reader.field(0));
+                    continue;
+                }
+                if (reader.isBlank()) continue;
+                if (headerAllowed && contents.version >= 2 && reader.count() == 5 && reader.field(0).equals("name")) {
+                    headerAllowed = false;
+                    continue;
+                }
+                headerAllowed = false;
+                int n = reader.count();
+                if (reader.error() != null || n < 5 || (n > 5 && contents.version >= 2)) {
+                    contents.malformed++;
+                } else if (n == 5) {
+                    contents.students.add(new Student(reader.field(0), reader.field(1), reader.field(2), reader.field(3), reader.field(4)));
+                } else { // Version 1 never quoted, so extra commas can only belong to the name; the other fields cannot hold one
+                    StringBuilder name = new StringBuilder(reader.field(0));
+                    for (int i = 1; i < n - 4; i++) name.append(',').append(reader.field(i));
+                    contents.students.add(new Student(name.toString(), reader.field(n - 4), reader.field(n - 3), reader.field(n - 2), reader.field(n - 1)));
+                    contents.recovered++;
+                }
+            }
+        }
+        if (contents.version > SCHEMA_VERSION) {
+            throw new IOException(path + " uses schema version " + contents.version + "; this program reads up to " + SCHEMA_VERSION);
+        }
+        return contents;
+    }
+
+    // Reads "#schema=2,lsn=N" (or version 1's "#lsn=N"); other comment lines are ignored
+    private static void readVersionLine(SnapshotContents contents, String line) throws IOException {
+        for (String pair : line.substring(1).split(",")) {
+            int eq = pair.indexOf('=');
+            if (eq < 0) continue;
+            String key = pair.substring(0, eq).trim();
+            try {
+                if (key.equals("schema")) contents.version = Integer.parseInt(pair.substring(eq + 1).trim());
+                if (key.equals("lsn")) contents.lsn = Long.parseLong(pair.substring(eq + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("damaged version line: " + line);
+            }
+        }
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, String prefix) {
+        if (buffer.limit() < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer.get(i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // Splits a file into [start, end) byte ranges of about target bytes that each begin on a record boundary, so the
+    // ranges can be parsed separately. Quoted fields may hold newlines, so this follows the same states as Reader
+    // (field start, unquoted, quoted, after a quote, skipping a comment or malformed line) in one sequential pass.
+    static List<long[]> splitRecords(FileChannel channel, long size, long target) throws IOException {
+        final int recordStart = 0, fieldStart = 1, unquoted = 2, quoted = 3, afterQuote = 4, afterQuoteCr = 5, skipLine = 6;
+        List<long[]> ranges = new ArrayList<>();
+        ByteBuffer block = ByteBuffer.allocate(1 << 16); // Sequential reads; the scan is far cheaper than parsing
+        int state = recordStart;
+        long begin = 0;
+        long at = 0;
+        while (at < size) {
+            block.clear();
+            int read = channel.read(block, at);
+            if (read <= 0) break;
+            byte[] bytes = block.array();
+            int i = 0;
+            if (at == 0 && read >= 3 && bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB && bytes[2] == (byte) 0xBF) i = 3; // As Reader does
+            for (; i < read; i++) {
+                byte b = bytes[i];
+                if (state == recordStart) {
+                    if (b == '#') { // Comment line
+                        state = skipLine;
+                        continue;
+                    }
+                    state = fieldStart; // Otherwise a record starts like any field
+                }
+                boolean endOfRecord = false;
+                switch (state) {
+                    case fieldStart:
+                        if (b == '"') state = quoted;
+                        else if (b == '\n') endOfRecord = true;
+                        else state = b == ',' ? fieldStart : unquoted;
+                        break;
+                    case unquoted:
+                        if (b == ',') state = fieldStart;
+                        else if (b == '\n') endOfRecord = true;
+                        break;
+                    case quoted:
+                        if (b == '"') state = afterQuote;
+                        break;
+                    case afterQuote:
+                        if (b == '"') state = quoted; // Doubled quote
+                        else if (b == ',') state = fieldStart;
+                        else if (b == '\n') endOfRecord = true;
+                        else state = b == '\r' ? afterQuoteCr : skipLine;
+                        break;
+                    case afterQuoteCr:
+                        if (b == '\n') endOfRecord = true;
+                        else state = skipLine;
+                        break;
+                    default: // skipLine
+                        if (b == '\n') endOfRecord = true;
+                }
+                if (endOfRecord) {
+                    state = recordStart;
+                    long end = at + i + 1;
+                    if (end - begin >= target) {
+                        ranges.add(new long[] {begin, end});
+                        begin = end;
+                    }
+                }
+            }
+            at += read;
+        }
+        if (begin < size) ranges.add(new long[] {begin, size});
+        return ranges;
+    }
+}
+
+// CsvCodecCheck exercises StudentCsv: a fuzz test of round trips and damaged input, and a throughput comparison with
+// the split-based loader it replaced. Run with java Main --csv-fuzz [iterations] or java Main --csv-benchmark [rows].
+class CsvCodecCheck {
+    private static final String[] PIECES = {"a", "Z", "7", " ", ",", "\"", "\"\"", "\n", "\r", "\r\n", "#", "é", "中", "😀", "﻿", "@", "."};
+    static volatile Student sink; // Keeps the old loader's students from being optimized away
+
+    // Round-trips random students through the writer and reader, then feeds the reader damaged files and checks that
+    // parsing them whole and in split chunks agrees. Returns true if every check passed.
+    static boolean fuzz(int iterations) throws IOException {
+        Random random = new Random(42); // Fixed seed, so a failure can be reproduced
+        Path file = Files.createTempFile("sms-fuzz", ".csv");
+        long rows = 0;
+        int failures = 0;
+        try {
+            for (int iteration = 0; iteration < iterations && failures < 5; iteration++) {
+                List<Student> students = new ArrayList<>();
+                StringBuilder text = new StringBuilder();
+                for (int i = random.nextInt(20) + 1; i > 0; i--) {
+                    Student student = new Student(randomField(random), randomField(random), randomField(random), randomField(random), randomField(random));
+                    students.add(student);
+                    StudentCsv.appendRow(text, student);
+                }
+                byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+                List<List<String>> parsed = parse(bytes, true);
+                for (int i = 0; i < Math.max(students.size(), parsed.size()); i++) {
+                    List<String> expected = i < students.size() ? fieldsOf(students.get(i)) : null;
+                    List<String> actual = i < parsed.size() ? parsed.get(i) : null;
+                    if (expected == null || !expected.equals(actual)) {
+                        failures++;
+                        System.out.println("Round trip failed in iteration " + iteration + ", row " + i + ": expected "
+                                + quoteList(expected) + " but read " + quoteList(actual));
+                        break;
+                    }
+                }
+                rows += students.size();
+
+                byte[] damaged = damage(bytes, random); // Whatever the bytes, parsing must finish and agree with itself
+                Files.write(file, damaged);
+                List<List<String>> whole = parse(damaged, true);
+                List<List<String>> chunked = new ArrayList<>();
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    for (long[] range : StudentCsv.splitRecords(channel, damaged.length, 1 + random.nextInt(64))) {
+                        chunked.addAll(parse(Arrays.copyOfRange(damaged, (int) range[0], (int) range[1]), range[0] == 0));
+                    }
+                }
+                if (!whole.equals(chunked)) {
+                    failures++;
+                    System.out.println("Chunked parse differs from whole parse in iteration " + iteration + " for input "
+                            + quoteList(Collections.singletonList(new String(damaged, StandardCharsets.UTF_8))));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        System.out.println("CSV fuzz: " + iterations + " iterations, " + rows + " rows round-tripped, " + failures + " failure(s)");
+        return failures == 0;
+    }
+
+    // Every record of bytes as a list of fields, with a malformed record as ["!error"]
+    private static List<List<String>> parse(byte[] bytes, boolean fileStart) {
+        List<List<String>> records = new ArrayList<>();
+        StudentCsv.Reader reader = new StudentCsv.Reader(ByteBuffer.wrap(bytes), true, fileStart);
+        while (reader.next()) {
+            List<String> fields = new ArrayList<>();
+            if (reader.error() != null) {
+                fields.add("!error");
+            } else {
+                if (reader.isComment()) fields.add("!comment");
+                for (int i = 0; i < reader.count(); i++) fields.add(reader.field(i));
+            }
+            records.add(fields);
+        }
+        return records;
+    }
+
+    // A field of 0 to 6 pieces chosen to hit every quoting rule
+    private static String randomField(Random random) {
+        StringBuilder field = new StringBuilder();
+        for (int i = random.nextInt(7); i > 0; i--) field.append(PIECES[random.nextInt(PIECES.length)]);
+        return field.toString();
+    }
+
+    // A copy of bytes with a few bytes flipped, inserted or deleted, favouring the ones CSV cares about
+    private static byte[] damage(byte[] bytes, Random random) {
+        byte[] special = {',', '"', '\n', '\r', '#', 'x'};
+        List<Byte> out = new ArrayList<>();
+        for (byte b : bytes) out.add(b);
+        for (int edits = 1 + random.nextInt(4); edits > 0; edits--) {
+            int at = out.isEmpty() ? 0 : random.nextInt(out.size());
+            byte b = special[random.nextInt(special.length)];
+            switch (random.nextInt(3)) {
+                case 0: if (!out.isEmpty()) out.set(at, b); break;
+                case 1: out.add(at, b); break;
+                default: if (!out.isEmpty()) out.remove(at);
+            }
+        }
+        byte[] result = new byte[out.size()];
+        for (int i = 0; i < result.length; i++) result[i] = out.get(i);
+        return result;
+    }
+
+    private static List<String> fieldsOf(Student student) {
+        return Arrays.asList(student.getName(), student.getRollNumber(), student.getGrade(), student.getEmail(), student.getPhone());
+    }
+
+    // Shows control characters so failures are readable
+    private static String quoteList(List<String> fields) {
+        if (fields == null) return "nothing";
+        StringBuilder out = new StringBuilder("[");
+        for (String field : fields) {
+            if (out.length() > 1) out.append(", ");
+            Json.appendString(out, field);
+        }
+        return out.append(']').toString();
+    }
 
-    // Constructor for StudentManagementSystem
-    public StudentManagementSystem() {
-        students = new ArrayList<>(); // Initializes the ArrayList for students
-        loadStudentsFromFile(); // Loads student data from the file when the system starts
+    // Times the old split-based loader against the codec on the same students
+    static void benchmark(int rows) throws IOException {
+        Path legacy = Files.createTempFile("sms-v1", ".txt");
+        Path current = Files.createTempFile("sms-v2", ".txt");
+        try {
+            try (Writer v1 = Files.newBufferedWriter(legacy, StandardCharsets.UTF_8);
+                 Writer v2 = Files.newBufferedWriter(current, StandardCharsets.UTF_8)) {
+                v1.write("#lsn=0\n");
+                v2.write(StudentCsv.versionLine(0) + "\n" + StudentCsv.HEADER + "\n");
+                StringBuilder row = new StringBuilder(128);
+                for (int i = 0; i < rows; i++) { // No commas in names, so the old loader reads every row too
+                    Student student = new Student("Student Name " + i, "R" + i, "ABCDF".substring(i % 5, i % 5 + 1),
+                            "student" + i + "@example.edu", Long.toString(9000000000L + i));
+                    v1.write(student.getName() + "," + student.getRollNumber() + "," + student.getGrade() + ","
+                            + student.getEmail() + "," + student.getPhone() + "\n");
+                    row.setLength(0);
+                    StudentCsv.appendRow(row, student);
+                    v2.append(row);
+                }
+            }
+            long bytes = Files.size(current);
+            System.out.println("\nCSV Loader Benchmark (" + rows + " students, " + bytes / 1_000_000 + " MB)");
+            System.out.println("--------------------------------------------");
+            double split = time("split(\",\") loader", rows, bytes, () -> legacyLoad(legacy));
+            double codec = time("StudentCsv, version 2", rows, bytes, () -> StudentCsv.readSnapshot(current).students.size());
+            time("StudentCsv, version 1", rows, bytes, () -> StudentCsv.readSnapshot(legacy).students.size());
+            System.out.printf("Speed-up over split(\",\"): %.2fx%n", split / codec);
+        } finally {
+            Files.deleteIfExists(legacy);
+            Files.deleteIfExists(current);
+        }
     }
 
-    // Adds a new student to the system
-    public void addStudent(Student student) {
-        students.add(student); // Adds the student object to the list
-        saveStudentsToFile(); // Saves the updated list back to the file
+    private interface Load {
+        int run() throws IOException;
     }
 
-    // Removes a student from the system based on their roll number
-    public boolean removeStudent(String rollNumber) {
-        Student student = findStudent(rollNumber); // Tries to find the student first
-        if (student != null) { // If the student is found
-            students.remove(student); // Removes the student from the list
-            saveStudentsToFile(); // Saves the updated list to the file
-            return true; // Returns true indicating successful removal
+    // Best of five runs, in milliseconds, after printing the rate
+    private static double time(String label, int rows, long bytes, Load load) throws IOException {
+        double best = Double.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            int read = load.run();
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+            if (read != rows) throw new IOException(label + " read " + read + " of " + rows + " rows");
         }
-        return false; // Returns false if the student was not found
+        System.out.printf("%-24s %8.1f ms  %,12.0f rows/s  %7.1f MB/s%n", label, best, rows / (best / 1e3), bytes / 1e3 / best);
+        return best;
     }
 
-    // Finds a student by their roll number
-    public Student findStudent(String rollNumber) {
-        for (Student student : students) { // Iterates through the list of students
-            if (student.getRollNumber().equals(rollNumber)) { // Compares roll numbers
-                return student; // Returns the student if a match is found
+    // The loader StudentCsv replaced: read lines and split them on every comma
+    private static int legacyLoad(Path file) throws IOException {
+        int rows = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<Student> students = new ArrayList<>(); // Kept, as the loader kept them, like readSnapshot does
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) continue;
+                String[] data = line.split(",");
+                if (data.length == 5) {
+                    students.add(new Student(data[0], data[1], data[2], data[3], data[4]));
+                    rows++;
+                }
             }
+            sink = students.isEmpty() ? null : students.get(students.size() - 1);
         }
-        return null; // Returns null if no student with the given roll number is found
+        return rows;
     }
+}
 
-    // Displays all students currently in the system in a formatted table
-    public void displayAllStudents() {
-        if (students.isEmpty()) { // Checks if there are no students
-            System.out.println("No students in the system.");
+// StudentBulkIO imports and exports whole registries as RFC 4180 CSV (name,roll number,grade,email,phone)
+class StudentBulkIO {
+    private static final int MIN_CHUNK = 1 << 20; // 1 MiB; smaller chunks cost more in task overhead than they gain
+    private static final int MAX_CHUNK = 16 << 20; // 16 MiB; bounds the decoded text held per parsing task
+    private static final int MAX_REPORTED_REJECTS = 10; // Rejected rows printed in detail; the rest are only counted
+
+    // One row that was not imported
+    static class Reject {
+        final long line; // 1-based line number in the file
+        final String reason; // Why the row was rejected
+
+        Reject(long line, String reason) {
+            this.line = line;
+            this.reason = reason;
+        }
+    }
+
+    // The rows parsed from one chunk of the file
+    private static class ParsedChunk {
+        final List<Student> students = new ArrayList<>(); // Valid rows, in file order
+        final List<Long> studentLines = new ArrayList<>(); // Chunk-relative 0-based line each valid row starts on
+        final List<Reject> rejects = new ArrayList<>(); // Invalid rows, with chunk-relative 0-based lines
+        long lines; // Newlines in the chunk, to turn relative lines into file line numbers
+    }
+
+    // Imports every valid row of a CSV file, inserting them with a single log flush, and prints a report
+    static void importCsv(StudentManagementSystem sms, Path file) {
+        long start = System.nanoTime();
+        List<ParsedChunk> chunks = new ArrayList<>();
+        long bytes;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            bytes = channel.size();
+            List<ForkJoinTask<ParsedChunk>> tasks = new ArrayList<>();
+            for (long[] range : split(channel, bytes)) { // [start, end) byte ranges that begin on a line
+                tasks.add(ForkJoinPool.commonPool().submit(() -> parse(channel, range[0], range[1]))); // Chunks parse in parallel
+            }
+            for (ForkJoinTask<ParsedChunk> task : tasks) {
+                chunks.add(task.join()); // Joined in file order, so duplicates resolve as in a sequential import
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Error importing students: " + e.getMessage());
             return;
         }
+        long parsed = System.nanoTime();
+
+        List<Student> batch = new ArrayList<>(); // Every valid row in file order
+        List<Long> batchLines = new ArrayList<>(); // File line number of each row in batch
+        List<Reject> rejects = new ArrayList<>(); // Every rejected row
+        long lineBase = 0; // Lines in all earlier chunks
+        for (ParsedChunk chunk : chunks) {
+            batch.addAll(chunk.students);
+            for (long line : chunk.studentLines) batchLines.add(lineBase + line + 1);
+            for (Reject reject : chunk.rejects) rejects.add(new Reject(lineBase + reject.line + 1, reject.reason));
+            lineBase += chunk.lines;
+        }
+        long rows = batch.size() + rejects.size(); // Data rows seen; blank lines and the header are not rows
+
+        List<StoreResult> results = sms.addStudents(batch); // One lock hold and one log flush for the whole file
+        int imported = 0;
+        int notSaved = 0; // Valid rows dropped because the log write failed
+        for (int i = 0; i < batch.size(); i++) {
+            if (results.get(i) == StoreResult.OK) {
+                imported++;
+            } else {
+                if (results.get(i) == StoreResult.NOT_SAVED) notSaved++;
+                rejects.add(new Reject(batchLines.get(i), describe(results.get(i))));
+            }
+        }
+        rejects.sort((x, y) -> Long.compare(x.line, y.line)); // Parse and duplicate rejects interleave by line
+        long end = System.nanoTime();
 
-        // Prints the table header
-        System.out.println("\n+-----------------+--------------+--------+---------------------------+--------------+");
-        System.out.println("| Name            | Roll Number  | Grade  | Email                     | Phone        |");
-        System.out.println("+-----------------+--------------+--------+---------------------------+--------------+");
-        for (Student student : students) { // Iterates through each student
-            System.out.println(student); // Prints the formatted student details using the overridden toString method
+        double seconds = Math.max(end - start, 1) / 1e9;
+        System.out.println("\nImport Summary");
+        System.out.println("----------------");
+        System.out.println("Rows read:   " + rows);
+        System.out.println("Imported:    " + imported);
+        System.out.println("Rejected:    " + rejects.size());
+        if (notSaved > 0) {
+            System.out.println("Not saved:   " + notSaved + " (the log could not be written, so no rows were imported)");
+        }
+        System.out.printf("Time:        %.1f ms (parse %.1f ms, insert %.1f ms)%n",
+                (end - start) / 1e6, (parsed - start) / 1e6, (end - parsed) / 1e6);
+        System.out.printf("Throughput:  %,.0f rows/s, %.1f MB/s%n", rows / seconds, bytes / 1e6 / seconds);
+        for (int i = 0; i < Math.min(rejects.size(), MAX_REPORTED_REJECTS); i++) {
+            System.out.println("  line " + rejects.get(i).line + ": " + rejects.get(i).reason);
+        }
+        if (rejects.size() > MAX_REPORTED_REJECTS) {
+            System.out.println("  ... and " + (rejects.size() - MAX_REPORTED_REJECTS) + " more");
         }
-        // Prints the table footer and total count
-        System.out.println("+-----------------+--------------+--------+---------------------------+--------------+");
-        System.out.println("Total students: " + students.size());
     }
 
-    // Saves the current list of students to a text file
-    public void saveStudentsToFile() {
-        // try-with-resources ensures the PrintWriter is closed automatically
-        try (PrintWriter writer = new PrintWriter(new FileWriter(FILE_NAME))) {
-            for (Student student : students) { // Iterates through each student
-                // Writes student data to the file, separated by commas (CSV format)
-                writer.println(student.getName() + "," + student.getRollNumber() + "," +
-                               student.getGrade() + "," + student.getEmail() + "," + student.getPhone());
+    // Streams every student to a CSV file with a header row and prints a report
+    static void exportCsv(StudentManagementSystem sms, Path file) {
+        long start = System.nanoTime();
+        long rows = 0;
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), 1 << 20)) { // 1 MiB buffer, so few large writes
+            writer.write(StudentCsv.HEADER);
+            writer.write('\n');
+            StringBuilder row = new StringBuilder(256); // Reused for every student
+            for (Student student : sms.snapshot()) { // Consistent copy; writers are not blocked while exporting
+                row.setLength(0);
+                StudentCsv.appendRow(row, student); // Quotes fields holding commas, quotes or newlines
+                writer.append(row);
+                rows++;
             }
-        } catch (IOException e) { // Catches potential I/O errors
-            System.out.println("Error saving student data: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("Error exporting students: " + e.getMessage());
+            return;
         }
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        System.out.printf("Exported %d students to %s in %.1f ms (%,.0f rows/s)%n", rows, file, seconds * 1e3, rows / seconds);
     }
 
-    // Loads student data from a text file into the system
-    private void loadStudentsFromFile() {
-        File file = new File(FILE_NAME); // Creates a File object for the student data file
-        if (!file.exists()) return; // If the file doesn't exist, there's nothing to load, so return
+    // Splits the file into chunks sized for the pool, each starting on a record boundary (quoted newlines included)
+    private static List<long[]> split(FileChannel channel, long size) throws IOException {
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        long target = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, size / (parallelism * 4L) + 1)); // About four chunks per worker
+        return StudentCsv.splitRecords(channel, size, target);
+    }
 
-        // try-with-resources ensures the BufferedReader is closed automatically
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_NAME))) {
-            String line; // Variable to hold each line read from the file
-            while ((line = reader.readLine()) != null) { // Reads lines until the end of the file
-                String[] data = line.split(","); // Splits the line by comma to get individual data fields
-                if (data.length == 5) { // Ensures all 5 expected fields are present
-                    // Creates a new Student object and adds it to the list
-                    students.add(new Student(data[0], data[1], data[2], data[3], data[4]));
+    // Maps one chunk and parses its records in place with the CSV codec; nothing is allocated per line
+    private static ParsedChunk parse(FileChannel channel, long begin, long end) {
+        ParsedChunk chunk = new ParsedChunk();
+        StudentCsv.Reader reader;
+        try {
+            reader = new StudentCsv.Reader(channel.map(FileChannel.MapMode.READ_ONLY, begin, end - begin), true, begin == 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String[] fields = new String[5]; // Reused for every row
+        boolean headerAllowed = begin == 0; // Only the first record of the file can be the header
+        while (reader.next()) {
+            if (!reader.isComment() && !reader.isBlank()) { // Comments include the version line of students.txt
+                parseRow(chunk, reader, headerAllowed, fields);
+                headerAllowed = false;
+            }
+        }
+        chunk.lines = reader.lines();
+        return chunk;
+    }
+
+    // Validates one record, adding it to the chunk's students or rejects
+    private static void parseRow(ParsedChunk chunk, StudentCsv.Reader reader, boolean headerAllowed, String[] fields) {
+        int count = reader.count();
+        for (int i = 0; i < count && i < fields.length; i++) fields[i] = reader.field(i).trim();
+        if (headerAllowed && count == 5 && fields[0].equalsIgnoreCase("name")) return; // Header row
+        String reason = null;
+        if (reader.error() != null) {
+            reason = reader.error();
+        } else if (count != 5) {
+            reason = "expected 5 fields but found " + count;
+        } else if (fields[0].isEmpty() || fields[1].isEmpty() || fields[2].isEmpty()) {
+            reason = "name, roll number and grade are required";
+        } else if (!StudentValidation.isValidEmail(fields[3])) {
+            reason = "invalid email: " + fields[3];
+        } else if (!StudentValidation.isValidPhone(fields[4])) {
+            reason = "invalid phone number: " + fields[4];
+        }
+        if (reason != null) {
+            chunk.rejects.add(new Reject(reader.line(), reason));
+            return;
+        }
+        chunk.students.add(new Student(fields[0], fields[1], fields[2], fields[3], fields[4]));
+        chunk.studentLines.add(reader.line());
+    }
+
+    // Explains a failed insert in a reject line
+    private static String describe(StoreResult result) {
+        switch (result) {
+            case DUPLICATE_ROLL: return "duplicate roll number";
+            case DUPLICATE_EMAIL: return "duplicate email";
+            case DUPLICATE_PHONE: return "duplicate phone number";
+            case NOT_SAVED: return "not saved";
+            default: return result.toString();
+        }
+    }
+}
+
+// StudentValidation holds the field rules shared by the console prompts and bulk import
+class StudentValidation {
+    private static final Pattern PHONE = Pattern.compile("\\d{10,15}"); // Compiled once instead of on every String.matches call
+
+    // Basic email check: must contain '@' and '.'
+    static boolean isValidEmail(String email) {
+        return email.contains("@") && email.contains(".");
+    }
+
+    // Phone numbers are 10 to 15 digits
+    static boolean isValidPhone(String phone) {
+        return PHONE.matcher(phone).matches();
+    }
+}
+
+// Json reads and writes the flat objects the HTTP service exchanges: string (or number) fields only
+class Json {
+    // Appends value as a JSON string literal
+    static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c)); // Other control characters
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    // Appends a student as a JSON object
+    static void appendStudent(StringBuilder out, Student student) {
+        out.append("{\"name\":");
+        appendString(out, student.getName());
+        out.append(",\"rollNumber\":");
+        appendString(out, student.getRollNumber());
+        out.append(",\"grade\":");
+        appendString(out, student.getGrade());
+        out.append(",\"email\":");
+        appendString(out, student.getEmail());
+        out.append(",\"phone\":");
+        appendString(out, student.getPhone());
+        out.append('}');
+    }
+
+    // Appends counts as a JSON object of value -> count, keeping the map's order
+    static void appendCounts(StringBuilder out, Map<String, Long> counts, int limit) {
+        out.append('{');
+        int written = 0;
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            if (written == limit) break;
+            if (written++ > 0) out.append(',');
+            appendString(out, entry.getKey());
+            out.append(':').append(entry.getValue());
+        }
+        out.append('}');
+    }
+
+    // Parses a flat JSON object into field name -> value; numbers and booleans are kept as their text, null as null
+    static Map<String, String> parseObject(String text) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        int[] pos = {skipSpace(text, 0)};
+        expect(text, pos, '{');
+        if (peek(text, pos) == '}') {
+            pos[0]++;
+        } else {
+            while (true) {
+                String name = readString(text, pos);
+                expect(text, pos, ':');
+                fields.put(name, readValue(text, pos));
+                char next = peek(text, pos);
+                pos[0]++;
+                if (next == '}') break;
+                if (next != ',') throw new IllegalArgumentException("expected ',' or '}' at " + (pos[0] - 1));
+            }
+        }
+        if (skipSpace(text, pos[0]) != text.length()) throw new IllegalArgumentException("unexpected text after the object");
+        return fields;
+    }
+
+    // Reads a string, number, boolean or null value
+    private static String readValue(String text, int[] pos) {
+        char c = peek(text, pos);
+        if (c == '"') return readString(text, pos);
+        if (c == '{' || c == '[') throw new IllegalArgumentException("nested values are not supported");
+        int start = pos[0];
+        while (pos[0] < text.length() && ",}] \t\r\n".indexOf(text.charAt(pos[0])) < 0) pos[0]++;
+        String literal = text.substring(start, pos[0]);
+        if (literal.isEmpty()) throw new IllegalArgumentException("missing value at " + start);
+        return literal.equals("null") ? null : literal;
+    }
+
+    // Reads a string literal, decoding escapes
+    private static String readString(String text, int[] pos) {
+        expect(text, pos, '"');
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            if (pos[0] >= text.length()) throw new IllegalArgumentException("unterminated string");
+            char c = text.charAt(pos[0]++);
+            if (c == '"') return value.toString();
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (pos[0] >= text.length()) throw new IllegalArgumentException("unterminated escape");
+            char e = text.charAt(pos[0]++);
+            switch (e) {
+                case '"': case '\\': case '/': value.append(e); break;
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'n': value.append('\n'); break;
+                case 'r': value.append('\r'); break;
+                case 't': value.append('\t'); break;
+                case 'u':
+                    if (pos[0] + 4 > text.length()) throw new IllegalArgumentException("bad \\u escape");
+                    value.append((char) Integer.parseInt(text.substring(pos[0], pos[0] + 4), 16));
+                    pos[0] += 4;
+                    break;
+                default:
+                    throw new IllegalArgumentException("bad escape \\" + e);
+            }
+        }
+    }
+
+    // Skips whitespace and consumes the expected character
+    private static void expect(String text, int[] pos, char expected) {
+        if (peek(text, pos) != expected) throw new IllegalArgumentException("expected '" + expected + "' at " + pos[0]);
+        pos[0]++;
+    }
+
+    // Skips whitespace and returns the next character without consuming it
+    private static char peek(String text, int[] pos) {
+        pos[0] = skipSpace(text, pos[0]);
+        if (pos[0] >= text.length()) throw new IllegalArgumentException("unexpected end of JSON");
+        return text.charAt(pos[0]);
+    }
+
+    private static int skipSpace(String text, int pos) {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+        return pos;
+    }
+}
+
+/**
+ * StudentServer exposes the registry as a small JSON API on the loopback interface:
+ *
+ *   GET    /students                      streams every student (?limit=N to stop early)
+ *   GET    /students?q=words              word-prefix search, as in the console (?limit=N, default 20)
+ *   GET    /students/{roll}               one student
+ *   POST   /students                      adds a student from a JSON object with all five fields
+ *   PUT    /students/{roll}               replaces the given fields in one atomic edit
+ *   DELETE /students/{roll}               removes a student
+ *   GET    /reports                       maintained counts per grade and email domain (no scan)
+ *   GET    /reports?groupBy=field         students per value of a field (?limit=N, default 100)
+ *   GET    /reports?distinct=field        number of distinct values of a field
+ *   GET    /reports?field=f&value=v       number of students whose field equals a value
+ *   GET    /reports?duplicates            groups of students sharing a normalized email or phone
+ */
+class StudentServer {
+    private static final int MAX_BODY = 64 * 1024; // Larger request bodies are refused
+    private final StudentManagementSystem sms; // Registry shared by every request
+    private final int port; // Loopback port to listen on
+
+    // Constructor for the StudentServer class
+    StudentServer(StudentManagementSystem sms, int port) {
+        this.sms = sms;
+        this.port = port;
+    }
+
+    // Serves requests until the process is stopped
+    void run() throws IOException {
+        // The server writes headers and body separately; without TCP_NODELAY every small response
+        // waits out the client's delayed ACK (about 40 ms)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.createContext("/students", this::handle);
+        server.createContext("/reports", this::handle);
+        server.setExecutor(newRequestExecutor());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1); // Lets in-flight requests finish
+            sms.close(); // Flushes the log and waits for any compaction
+        }));
+        server.start();
+        System.out.println("Student service listening on http://localhost:" + port + "/students");
+    }
+
+    // Routes one request and turns failures into JSON errors
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            String roll = null; // Roll number from /students/{roll}
+            if (path.equals("/reports") || path.equals("/reports/")) {
+                if (exchange.getRequestMethod().equals("GET")) {
+                    report(exchange);
+                } else {
+                    exchange.getResponseHeaders().set("Allow", "GET");
+                    sendError(exchange, 405, "method not allowed");
                 }
+                return;
             }
-        } catch (IOException e) { // Catches potential I/O errors
-            System.out.println("Error loading student data: " + e.getMessage());
+            if (path.startsWith("/students/") && path.length() > "/students/".length()) {
+                roll = URLDecoder.decode(path.substring("/students/".length()), StandardCharsets.UTF_8);
+            } else if (!path.equals("/students") && !path.equals("/students/")) {
+                sendError(exchange, 404, "no such resource");
+                return;
+            }
+            String method = exchange.getRequestMethod();
+            if (roll == null && method.equals("GET")) {
+                list(exchange);
+            } else if (roll == null && method.equals("POST")) {
+                add(exchange);
+            } else if (roll != null && method.equals("GET")) {
+                find(exchange, roll);
+            } else if (roll != null && method.equals("PUT")) {
+                update(exchange, roll);
+            } else if (roll != null && method.equals("DELETE")) {
+                StoreResult result = sms.removeStudent(roll);
+                if (result == StoreResult.OK) {
+                    exchange.sendResponseHeaders(204, -1); // No body
+                } else if (result == StoreResult.NOT_SAVED) {
+                    sendError(exchange, 503, "change could not be saved");
+                } else {
+                    sendError(exchange, 404, "student not found");
+                }
+            } else {
+                exchange.getResponseHeaders().set("Allow", roll == null ? "GET, POST" : "GET, PUT, DELETE");
+                sendError(exchange, 405, "method not allowed");
+            }
+        } catch (IllegalArgumentException e) { // Malformed JSON, query or field
+            sendError(exchange, 400, e.getMessage());
+        } catch (RuntimeException e) {
+            System.out.println("Error handling " + exchange.getRequestMethod() + " " + exchange.getRequestURI() + ": " + e);
+            sendError(exchange, 500, "internal error");
+        } finally {
+            exchange.close(); // Ends the exchange so the connection can be reused
+        }
+    }
+
+    // GET /students[?q=..][&limit=..]: streams the list as a JSON array without building it in memory first
+    private void list(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String words = query.get("q");
+        int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : (words != null ? 20 : Integer.MAX_VALUE);
+        if (limit < 0) throw new IllegalArgumentException("limit must not be negative");
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0); // Chunked: the length is not known up front
+        try (Writer body = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 64 * 1024)) {
+            StringBuilder item = new StringBuilder(256); // Reused for each student
+            int[] written = {0};
+            Consumer<Student> emit = student -> {
+                if (written[0] >= limit) return;
+                item.setLength(0);
+                if (written[0]++ > 0) item.append(',');
+                Json.appendStudent(item, student);
+                try {
+                    body.append(item);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            body.write('[');
+            if (words != null) {
+                List<Student> matches = sms.searchStudents(words, limit); // Up to limit + 1
+                for (Student student : matches) emit.accept(student);
+            } else {
+                try (StudentIndex.Snapshot snapshot = sms.openSnapshot()) {
+                    snapshot.forEach(emit); // One consistent commit, streamed row by row
+                }
+            }
+            body.write(']');
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // Client went away mid-stream
+        }
+    }
+
+    // GET /reports: the maintained counts answer at once; the other reports scan one snapshot in parallel
+    private void report(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        StringBuilder json = new StringBuilder(1024);
+        if (query.isEmpty()) {
+            json.append("{\"students\":").append(sms.studentCount()).append(",\"byGrade\":");
+            Json.appendCounts(json, sms.countByGrade(), Integer.MAX_VALUE);
+            json.append(",\"byEmailDomain\":");
+            Json.appendCounts(json, sms.countByEmailDomain(), Integer.MAX_VALUE);
+            send(exchange, 200, json.append('}'));
+            return;
+        }
+        try (StudentIndex.Snapshot snapshot = sms.openSnapshot()) {
+            if (query.containsKey("groupBy")) {
+                StudentField field = field(query.get("groupBy"));
+                int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : 100;
+                Map<String, Long> groups = StudentAggregation.countBy(snapshot, field);
+                json.append("{\"field\":\"").append(field.label).append("\",\"distinct\":").append(groups.size()).append(",\"groups\":");
+                Json.appendCounts(json, groups, limit);
+                json.append('}');
+            } else if (query.containsKey("distinct")) {
+                StudentField field = field(query.get("distinct"));
+                json.append("{\"field\":\"").append(field.label).append("\",\"distinct\":")
+                        .append(StudentAggregation.countDistinct(snapshot, field)).append('}');
+            } else if (query.containsKey("field") && query.containsKey("value")) {
+                StudentField field = field(query.get("field"));
+                json.append("{\"field\":\"").append(field.label).append("\",\"value\":");
+                Json.appendString(json, query.get("value"));
+                json.append(",\"count\":").append(StudentAggregation.countWhere(snapshot, field, query.get("value"))).append('}');
+            } else if (query.containsKey("duplicates")) {
+                json.append('[');
+                List<List<Student>> groups = StudentAggregation.duplicateContacts(snapshot);
+                for (int g = 0; g < groups.size(); g++) {
+                    json.append(g > 0 ? ",[" : "[");
+                    for (int i = 0; i < groups.get(g).size(); i++) {
+                        if (i > 0) json.append(',');
+                        Json.appendStudent(json, groups.get(g).get(i));
+                    }
+                    json.append(']');
+                }
+                json.append(']');
+            } else {
+                throw new IllegalArgumentException("expected groupBy, distinct, field and value, or duplicates");
+            }
+        }
+        send(exchange, 200, json);
+    }
+
+    // The report field with the given label
+    private static StudentField field(String label) {
+        StudentField field = StudentField.parse(label);
+        if (field == null) throw new IllegalArgumentException("unknown field: " + label + " (name, roll, grade, email, domain, phone)");
+        return field;
+    }
+
+    // GET /students/{roll}
+    private void find(HttpExchange exchange, String roll) throws IOException {
+        Student student = sms.findStudent(roll);
+        if (student == null) {
+            sendError(exchange, 404, "student not found");
+            return;
+        }
+        StringBuilder json = new StringBuilder(256);
+        Json.appendStudent(json, student);
+        send(exchange, 200, json);
+    }
+
+    // POST /students
+    private void add(HttpExchange exchange) throws IOException {
+        Map<String, String> fields = Json.parseObject(readBody(exchange));
+        Student student = new Student(required(fields, "name"), required(fields, "rollNumber"), required(fields, "grade"),
+                required(fields, "email"), required(fields, "phone"));
+        validate(student);
+        StoreResult result = sms.addStudent(student);
+        if (result == StoreResult.NOT_SAVED) {
+            sendError(exchange, 503, "change could not be saved");
+            return;
+        } else if (result != StoreResult.OK) {
+            sendError(exchange, 409, conflict(result));
+            return;
+        }
+        StringBuilder json = new StringBuilder(256);
+        Json.appendStudent(json, student);
+        exchange.getResponseHeaders().set("Location", "/students/" + URLEncoder.encode(student.getRollNumber(), StandardCharsets.UTF_8));
+        send(exchange, 201, json);
+    }
+
+    // PUT /students/{roll}: fields left out keep their current values; all changes commit together. The fields are merged
+    // into the current version under the registry's write lock, so concurrent PUTs of different fields never undo each other.
+    private void update(HttpExchange exchange, String roll) throws IOException {
+        Map<String, String> fields = Json.parseObject(readBody(exchange));
+        if (fields.containsKey("rollNumber") && !roll.equals(fields.get("rollNumber"))) {
+            throw new IllegalArgumentException("rollNumber cannot be changed");
+        }
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            if (field.getValue() == null) throw new IllegalArgumentException(field.getKey() + " must not be null"); // Leaving a field out keeps it
+        }
+        Student[] saved = new Student[1]; // The merged student, for the response
+        StoreResult result = sms.updateStudent(roll, edited -> {
+            if (fields.containsKey("name")) edited.setName(fields.get("name"));
+            if (fields.containsKey("grade")) edited.setGrade(fields.get("grade"));
+            if (fields.containsKey("email")) edited.setEmail(fields.get("email"));
+            if (fields.containsKey("phone")) edited.setPhone(fields.get("phone"));
+            validate(edited); // Throws IllegalArgumentException, which leaves the student unchanged
+            saved[0] = edited;
+            return edited;
+        });
+        Student edited = saved[0];
+        if (result == StoreResult.NOT_FOUND) {
+            sendError(exchange, 404, "student not found");
+        } else if (result == StoreResult.NOT_SAVED) {
+            sendError(exchange, 503, "change could not be saved");
+        } else if (result != StoreResult.OK) {
+            sendError(exchange, 409, conflict(result));
+        } else {
+            StringBuilder json = new StringBuilder(256);
+            Json.appendStudent(json, edited);
+            send(exchange, 200, json);
+        }
+    }
+
+    // Applies the same rules as the console prompts
+    private static void validate(Student student) {
+        if (student.getName().trim().isEmpty() || student.getRollNumber().trim().isEmpty() || student.getGrade().trim().isEmpty()) {
+            throw new IllegalArgumentException("name, rollNumber and grade must not be empty");
+        }
+        if (!StudentValidation.isValidEmail(student.getEmail())) throw new IllegalArgumentException("invalid email");
+        if (!StudentValidation.isValidPhone(student.getPhone())) throw new IllegalArgumentException("phone must be 10-15 digits");
+    }
+
+    // A field that must be present and not null
+    private static String required(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        if (value == null) throw new IllegalArgumentException("missing field: " + name);
+        return value;
+    }
+
+    // Explains a uniqueness conflict
+    private static String conflict(StoreResult result) {
+        switch (result) {
+            case DUPLICATE_ROLL: return "roll number already exists";
+            case DUPLICATE_EMAIL: return "email already registered to another student";
+            case DUPLICATE_PHONE: return "phone number already registered to another student";
+            default: return result.toString();
+        }
+    }
+
+    // Reads the request body as UTF-8, refusing bodies over MAX_BODY
+    private static String readBody(HttpExchange exchange) throws IOException {
+        byte[] bytes = exchange.getRequestBody().readNBytes(MAX_BODY + 1);
+        if (bytes.length > MAX_BODY) throw new IllegalArgumentException("request body too large");
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Splits a raw query string into decoded name -> value pairs
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return query;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            query.put(name, value);
+        }
+        return query;
+    }
+
+    // Sends a JSON error body
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        Json.appendString(json, message);
+        send(exchange, status, json.append('}'));
+    }
+
+    // Sends a complete JSON body with a known length
+    private static void send(HttpExchange exchange, int status, CharSequence json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    // Uses a virtual thread per request when the JDK provides them (Java 21+),
+    // and otherwise falls back to a cached pool of platform threads
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
+
+/**
+ * LoadGenerator benchmarks a running StudentServer: it adds its own test students, then has several
+ * threads look them up by roll number as fast as possible, reports throughput and latency percentiles,
+ * and finally deletes the test students again. The lookups use a bare keep-alive socket per thread
+ * because HttpClient spends more CPU per request than the server does and would measure itself.
+ */
+class LoadGenerator {
+    private static final int SEED_STUDENTS = 1000; // Students added for the lookups to hit
+    private static final String ROLL_PREFIX = "LOADGEN-"; // Marks the test students
+
+    // Runs the benchmark against localhost:port
+    static void run(int port, int threads, int seconds) throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build(); // For seeding and cleanup
+        String base = "http://localhost:" + port + "/students";
+        for (int i = 0; i < SEED_STUDENTS; i++) {
+            String json = "{\"name\":\"Load Test " + i + "\",\"rollNumber\":\"" + ROLL_PREFIX + i + "\",\"grade\":\"A\","
+                    + "\"email\":\"loadgen" + i + "@loadgen.test\",\"phone\":\"" + (7000000000L + i) + "\"}";
+            HttpResponse<Void> response = sendWithRetry(client, HttpRequest.newBuilder(URI.create(base))
+                    .POST(HttpRequest.BodyPublishers.ofString(json)).header("Content-Type", "application/json").build());
+            if (response.statusCode() != 201 && response.statusCode() != 409) { // 409: left over from an earlier run
+                throw new IOException("Seeding failed with HTTP " + response.statusCode());
+            }
+        }
+
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        List<long[]> samples = new ArrayList<>(); // Per-thread latencies in nanoseconds
+        long[] counts = new long[threads];
+        long[] errors = new long[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            long[] latencies = new long[1 << 22]; // Room for about four million samples per thread
+            samples.add(latencies);
+            workers[t] = new Thread(() -> {
+                Random random = new Random(id);
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) { // One keep-alive connection per thread
+                    socket.setTcpNoDelay(true);
+                    OutputStream out = socket.getOutputStream();
+                    InputStream in = new BufferedInputStream(socket.getInputStream());
+                    while (System.nanoTime() < end) {
+                        byte[] request = ("GET /students/" + ROLL_PREFIX + random.nextInt(SEED_STUDENTS)
+                                + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+                        long start = System.nanoTime();
+                        out.write(request);
+                        out.flush();
+                        if (readResponse(in) != 200) errors[id]++;
+                        if (counts[id] < latencies.length) latencies[(int) counts[id]] = System.nanoTime() - start;
+                        counts[id]++;
+                    }
+                } catch (IOException e) {
+                    errors[id]++; // Connection lost; this thread stops
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) worker.join();
+
+        long total = 0;
+        long failed = 0;
+        int kept = 0;
+        for (int t = 0; t < threads; t++) {
+            total += counts[t];
+            failed += errors[t];
+            kept += (int) Math.min(counts[t], samples.get(t).length);
+        }
+        long[] all = new long[kept];
+        int at = 0;
+        for (int t = 0; t < threads; t++) {
+            int n = (int) Math.min(counts[t], samples.get(t).length);
+            System.arraycopy(samples.get(t), 0, all, at, n);
+            at += n;
+        }
+        Arrays.sort(all);
+
+        for (int i = 0; i < SEED_STUDENTS; i++) { // Leaves the registry as it was
+            sendWithRetry(client, HttpRequest.newBuilder(URI.create(base + "/" + ROLL_PREFIX + i)).DELETE().build());
+        }
+
+        System.out.println("\nLoad Test: GET /students/{roll}");
+        System.out.println("--------------------------------");
+        System.out.println("Threads:     " + threads);
+        System.out.println("Requests:    " + total + " (" + failed + " failed)");
+        System.out.printf("Throughput:  %,.0f requests/s%n", total / (double) seconds);
+        if (all.length > 0) {
+            System.out.printf("Latency:     p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n",
+                    percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999), all[all.length - 1] / 1e6);
+        }
+    }
+
+    // Reads one HTTP/1.1 response with a Content-Length body and returns its status code
+    private static int readResponse(InputStream in) throws IOException {
+        String status = readLine(in);
+        if (status == null) throw new EOFException("server closed the connection");
+        int length = 0;
+        for (String header = readLine(in); header != null && !header.isEmpty(); header = readLine(in)) {
+            if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) length = Integer.parseInt(header.substring(15).trim());
+        }
+        in.skipNBytes(length); // The student JSON is not needed
+        return Integer.parseInt(status.substring(9, 12)); // "HTTP/1.1 200 OK"
+    }
+
+    // Reads a CRLF-terminated line, or null at end of stream
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) return line.length() == 0 ? null : line.toString();
+            if (c != '\r') line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    // Sends a request, retrying once if a pooled keep-alive connection turns out to have been closed
+    // by the server (the client only retries GETs on its own)
+    private static HttpResponse<Void> sendWithRetry(HttpClient client, HttpRequest request) throws IOException, InterruptedException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (IOException e) {
+            return client.send(request, HttpResponse.BodyHandlers.discarding());
         }
     }
+
+    // The value at fraction q of a sorted array, in milliseconds
+    private static double percentile(long[] sorted, double q) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(q * sorted.length) - 1)] / 1e6;
+    }
 }
 
 // Main class contains the main method to run the Student Management System application
 public class Main {
     private static Scanner scanner = new Scanner(System.in); // Scanner object for global input
-    private static StudentManagementSystem sms = new StudentManagementSystem(); // Instance of the SMS
+    private static StudentManagementSystem sms; // Instance of the SMS, created once main knows it is needed
+    private static final int PAGE_SIZE = 20; // Most students shown at once by the list and by search
+    private static final StudentTableWriter table = new StudentTableWriter(System.out); // Reused page renderer
 
     public static void main(String[] args) {
+        // Memory benchmark: java Main --memory-benchmark [students]; does not touch students.txt
+        if (args.length >= 1 && args[0].equals("--memory-benchmark")) {
+            MemoryBenchmark.run(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+            return;
+        }
+        // CSV codec checks: java Main --csv-fuzz [iterations] | --csv-benchmark [rows]; do not touch students.txt
+        if (args.length >= 1 && (args[0].equals("--csv-fuzz") || args[0].equals("--csv-benchmark"))) {
+            try {
+                if (args[0].equals("--csv-fuzz")) {
+                    if (!CsvCodecCheck.fuzz(args.length > 1 ? Integer.parseInt(args[1]) : 10_000)) System.exit(1);
+                } else {
+                    CsvCodecCheck.benchmark(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+                }
+            } catch (IOException e) {
+                System.out.println("CSV check failed: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        // Load generator: java Main --loadgen <port> [threads] [seconds]; talks to a running server only
+        if (args.length >= 2 && args[0].equals("--loadgen")) {
+            try {
+                LoadGenerator.run(Integer.parseInt(args[1]), args.length > 2 ? Integer.parseInt(args[2]) : 8,
+                        args.length > 3 ? Integer.parseInt(args[3]) : 10);
+            } catch (Exception e) {
+                System.out.println("Load test failed: " + e.getMessage());
+            }
+            return;
+        }
+        sms = new StudentManagementSystem(); // Loads the registry
+
+        // HTTP/JSON service: java Main --server [port]
+        if (args.length >= 1 && args[0].equals("--server")) {
+            try {
+                new StudentServer(sms, args.length > 1 ? Integer.parseInt(args[1]) : 8080).run();
+            } catch (IOException e) {
+                System.out.println("Error starting student service: " + e.getMessage());
+                sms.close();
+            }
+            return; // The server's threads keep the program running
+        }
+        // Non-interactive bulk modes: java Main --import <file.csv> | --export <file.csv>
+        if (args.length == 2 && (args[0].equals("--import") || args[0].equals("--export"))) {
+            if (args[0].equals("--import")) {
+                StudentBulkIO.importCsv(sms, Paths.get(args[1]));
+            } else {
+                StudentBulkIO.exportCsv(sms, Paths.get(args[1]));
+            }
+            sms.close(); // Flushes the log and waits for any compaction
+            return;
+        }
+
         // Displays a welcome banner for the application
         System.out.println("══════════════════════════════════════════════");
         System.out.println("      STUDENT MANAGEMENT SYSTEM");
@@ -164,10 +3334,20 @@ public class Main {
                     editStudent(); // Calls method to edit student information
                     break;
                 case 5:
-                    sms.displayAllStudents(); // Calls SMS method to display all students
+                    displayStudents(); // Pages through all students in a chosen order
                     break;
                 case 6:
+                    StudentBulkIO.importCsv(sms, Paths.get(getStringInput("Enter CSV file to import: "))); // Bulk import
+                    break;
+                case 7:
+                    StudentBulkIO.exportCsv(sms, Paths.get(getStringInput("Enter CSV file to export to: "))); // Bulk export
+                    break;
+                case 8:
+                    showReports(); // Counts by grade and domain, ad-hoc group-bys and duplicate contacts
+                    break;
+                case 9:
                     running = false; // Sets running to false to exit the loop
+                    sms.close(); // Flushes the log and waits for any compaction
                     System.out.println("Exiting system. Goodbye!"); // Exit message
                     break;
                 default:
@@ -185,7 +3365,10 @@ public class Main {
         System.out.println("3. Search Student");
         System.out.println("4. Edit Student");
         System.out.println("5. Display All Students");
-        System.out.println("6. Exit");
+        System.out.println("6. Import Students from CSV");
+        System.out.println("7. Export Students to CSV");
+        System.out.println("8. Reports");
+        System.out.println("9. Exit");
     }
 
     // Method to handle adding a new student
@@ -196,12 +3379,16 @@ public class Main {
         String name = getStringInput("Enter student name: "); // Prompts for and gets student name
         String rollNumber = getRollNumberInput(); // Prompts for and validates unique roll number
         String grade = getStringInput("Enter grade: "); // Prompts for and gets student grade
-        String email = getEmailInput(); // Prompts for and validates email format
-        String phone = getPhoneInput(); // Prompts for and validates phone number format
+        String email = getEmailInput(null); // Prompts for and validates email format and uniqueness
+        String phone = getPhoneInput(null); // Prompts for and validates phone number format and uniqueness
 
         Student student = new Student(name, rollNumber, grade, email, phone); // Creates a new Student object
-        sms.addStudent(student); // Adds the student to the system
-        System.out.println("Student added successfully!"); // Confirmation message
+        StoreResult result = sms.addStudent(student); // Adds the student to the system
+        if (result == StoreResult.OK) {
+            System.out.println("Student added successfully!"); // Confirmation message
+        } else {
+            System.out.println("Student not added: " + describe(result)); // Another user took the value meanwhile
+        }
     }
 
     // Method to handle removing a student
@@ -210,8 +3397,11 @@ public class Main {
         System.out.println("----------------");
         String rollNumber = getStringInput("Enter roll number to remove: "); // Gets the roll number to remove
 
-        if (sms.removeStudent(rollNumber)) { // Attempts to remove the student
+        StoreResult result = sms.removeStudent(rollNumber); // Attempts to remove the student
+        if (result == StoreResult.OK) {
             System.out.println("Student removed successfully!"); // Success message
+        } else if (result == StoreResult.NOT_SAVED) {
+            System.out.println("Student not removed: " + describe(result));
         } else {
             System.out.println("Student not found with roll number: " + rollNumber); // Not found message
         }
@@ -221,9 +3411,9 @@ public class Main {
     private static void searchStudent() {
         System.out.println("\nSearch Student");
         System.out.println("----------------");
-        String rollNumber = getStringInput("Enter roll number to search: "); // Gets the roll number to search
+        String rollNumber = getStringInput("Enter roll number, name or email (add grade:X to filter by grade): "); // Gets the search text
 
-        Student student = sms.findStudent(rollNumber); // Attempts to find the student
+        Student student = sms.findStudent(rollNumber); // An exact roll number match wins
         if (student != null) { // If student is found
             System.out.println("\nStudent Found:");
             // Displays all details of the found student
@@ -233,7 +3423,101 @@ public class Main {
             System.out.println("Email: " + student.getEmail());
             System.out.println("Phone: " + student.getPhone());
         } else {
-            System.out.println("Student not found with roll number: " + rollNumber); // Not found message
+            searchByText(rollNumber); // Otherwise searches names, emails and roll numbers by word prefix
+        }
+    }
+
+    // Lists the students matching a word-prefix search, one page at most
+    private static void searchByText(String query) {
+        long start = System.nanoTime();
+        List<Student> matches = sms.searchStudents(query, PAGE_SIZE); // At most one more than a page
+        double millis = (System.nanoTime() - start) / 1e6;
+        if (matches.isEmpty()) {
+            System.out.println("No students match: " + query);
+            return;
+        }
+        boolean more = matches.size() > PAGE_SIZE; // The extra match only tells us there are more
+        List<Student> shown = matches.subList(0, Math.min(matches.size(), PAGE_SIZE));
+        table.writeTable(shown, String.format("%s%d match(es) in %.3f ms%s", more ? "First " : "", shown.size(), millis,
+                more ? "; add more words to narrow the search" : ""));
+    }
+
+    // Method to handle displaying all students one page at a time
+    private static void displayStudents() {
+        int choice = getIntInput("Sort by (1 = order added, 2 = name, 3 = roll number, 4 = grade): "); // Gets the sort order
+        if (choice < 1 || choice > 4) {
+            System.out.println("Invalid choice.");
+            return;
+        }
+        SortKey sortKey = SortKey.values()[choice - 1];
+        PageCursor cursor = null; // Start at the first page
+        while (true) {
+            StudentPage page = sms.page(sortKey, cursor, PAGE_SIZE);
+            if (page.totalStudents == 0) {
+                System.out.println("No students in the system.");
+                return;
+            }
+            table.writeTable(page.rows, String.format("Page %d of %d, sorted by %s. Total students: %d",
+                    page.pageNumber, page.totalPages, sortKey.label, page.totalStudents)); // One write per page
+            if (page.next == null) return; // Last page
+            System.out.print("Press Enter for the next page or q to stop: ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("q")) return;
+            cursor = page.next;
+        }
+    }
+
+    // Shows the maintained counts, then runs one ad-hoc group-by or the duplicate-contact check on request
+    private static void showReports() {
+        System.out.println("\nReports");
+        System.out.println("----------------");
+        System.out.println("Total students: " + sms.studentCount());
+        printCounts("Students per grade", sms.countByGrade(), PAGE_SIZE); // Maintained counts, no scan
+        printCounts("Top email domains", sms.countByEmailDomain(), 10);
+
+        System.out.print("\nGroup by (name, roll, grade, email, domain, phone), 'duplicates', or Enter to go back: ");
+        String choice = scanner.nextLine().trim();
+        if (choice.isEmpty()) return;
+        StudentField field = StudentField.parse(choice);
+        if (field == null && !choice.equalsIgnoreCase("duplicates")) {
+            System.out.println("Unknown report: " + choice);
+            return;
+        }
+        long start = System.nanoTime();
+        try (StudentIndex.Snapshot snapshot = sms.openSnapshot()) { // One consistent view, scanned in parallel
+            if (field != null) {
+                Map<String, Long> groups = StudentAggregation.countBy(snapshot, field);
+                printCounts("Students per " + field.label, groups, PAGE_SIZE);
+                System.out.println("Distinct values: " + groups.size());
+            } else {
+                List<List<Student>> groups = StudentAggregation.duplicateContacts(snapshot);
+                System.out.println("\nStudents sharing an email or phone number (ignoring case, +tags and country codes):");
+                if (groups.isEmpty()) System.out.println("  None found.");
+                for (int i = 0; i < groups.size() && i < PAGE_SIZE; i++) {
+                    StringBuilder line = new StringBuilder("  ");
+                    for (Student student : groups.get(i)) {
+                        if (line.length() > 2) line.append("  |  ");
+                        line.append(student.getRollNumber()).append(' ').append(student.getName()).append(" <")
+                                .append(student.getEmail()).append(", ").append(student.getPhone()).append('>');
+                    }
+                    System.out.println(line);
+                }
+                if (groups.size() > PAGE_SIZE) System.out.println("  ... and " + (groups.size() - PAGE_SIZE) + " more groups");
+            }
+        }
+        System.out.printf("(report took %.1f ms)%n", (System.nanoTime() - start) / 1e6);
+    }
+
+    // Prints up to limit groups and their counts under a title
+    private static void printCounts(String title, Map<String, Long> counts, int limit) {
+        System.out.println("\n" + title + ":");
+        if (counts.isEmpty()) System.out.println("  None.");
+        int shown = 0;
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            if (shown++ == limit) {
+                System.out.println("  ... and " + (counts.size() - limit) + " more");
+                break;
+            }
+            System.out.printf("  %-30s %,d%n", entry.getKey().isEmpty() ? "(none)" : entry.getKey(), entry.getValue());
         }
     }
 
@@ -244,39 +3528,57 @@ public class Main {
         String rollNumber = getStringInput("Enter roll number to edit: "); // Gets the roll number of the student to edit
 
         Student student = sms.findStudent(rollNumber); // Finds the student
-        if (student != null) { // If student is found
-            System.out.println("\nCurrent Information:");
+        if (student == null) {
+            System.out.println("Student not found with roll number: " + rollNumber); // Not found message
+            return;
+        }
+        // Changes go into a draft and are saved together, so nobody ever sees a half-edited record
+        Student draft = new Student(student.getName(), rollNumber, student.getGrade(), student.getEmail(), student.getPhone());
+        boolean changed = false; // True once any field of the draft has been edited
+        while (true) {
+            System.out.println("\n" + (changed ? "Edited" : "Current") + " Information:");
             // Displays current editable information
-            System.out.println("1. Name: " + student.getName());
-            System.out.println("2. Grade: " + student.getGrade());
-            System.out.println("3. Email: " + student.getEmail());
-            System.out.println("4. Phone: " + student.getPhone());
-
-            int choice = getIntInput("\nEnter field number to edit (1-4, 0 to cancel): "); // Gets which field to edit
-            if (choice >= 1 && choice <= 4) { // Validates choice
-                switch (choice) {
-                    case 1:
-                        student.setName(getStringInput("Enter new name: ")); // Edits name
-                        break;
-                    case 2:
-                        student.setGrade(getStringInput("Enter new grade: ")); // Edits grade
-                        break;
-                    case 3:
-                        student.setEmail(getEmailInput()); // Edits email with validation
-                        break;
-                    case 4:
-                        student.setPhone(getPhoneInput()); // Edits phone with validation
-                        break;
-                }
-                sms.saveStudentsToFile(); // Saves changes to file
-                System.out.println("Student information updated successfully!"); // Confirmation
-            } else if (choice == 0) {
-                System.out.println("Edit cancelled.");
-            } else {
-                System.out.println("Invalid field number.");
+            System.out.println("1. Name: " + draft.getName());
+            System.out.println("2. Grade: " + draft.getGrade());
+            System.out.println("3. Email: " + draft.getEmail());
+            System.out.println("4. Phone: " + draft.getPhone());
+
+            int choice = getIntInput("\nEnter field number to edit (1-4, 5 to save, 0 to cancel): "); // Gets which field to edit
+            switch (choice) {
+                case 1:
+                    draft.setName(getStringInput("Enter new name: ")); // Edits name
+                    changed = true;
+                    break;
+                case 2:
+                    draft.setGrade(getStringInput("Enter new grade: ")); // Edits grade
+                    changed = true;
+                    break;
+                case 3:
+                    draft.setEmail(getEmailInput(rollNumber)); // Edits email with validation
+                    changed = true;
+                    break;
+                case 4:
+                    draft.setPhone(getPhoneInput(rollNumber)); // Edits phone with validation
+                    changed = true;
+                    break;
+                case 5:
+                    if (!changed) {
+                        System.out.println("No changes to save.");
+                        return;
+                    }
+                    StoreResult result = sms.updateStudent(draft); // Commits every edited field at once
+                    if (result == StoreResult.OK) {
+                        System.out.println("Student information updated successfully!"); // Confirmation
+                    } else {
+                        System.out.println("Student not updated: " + describe(result));
+                    }
+                    return;
+                case 0:
+                    System.out.println("Edit cancelled.");
+                    return;
+                default:
+                    System.out.println("Invalid field number.");
             }
-        } else {
-            System.out.println("Student not found with roll number: " + rollNumber); // Not found message
         }
     }
 
@@ -303,26 +3605,44 @@ public class Main {
         }
     }
 
-    // Helper method to get and validate email input from the user
-    private static String getEmailInput() {
-        while (true) { // Loops indefinitely until a valid email format is provided
+    // Helper method to get and validate email input from the user; ownRoll is the student being edited, or null when adding
+    private static String getEmailInput(String ownRoll) {
+        while (true) { // Loops indefinitely until a valid, unused email is provided
             String email = getStringInput("Enter email: "); // Gets email input
-            if (email.contains("@") && email.contains(".")) { // Basic validation for '@' and '.'
+            if (!StudentValidation.isValidEmail(email)) { // Basic validation for '@' and '.'
+                System.out.println("Invalid email format. Please include '@' and '.'"); // Error message
+            } else if (sms.isEmailTaken(email, ownRoll)) { // Index lookup, no scan
+                System.out.println("Email already registered to another student."); // Error message
+            } else {
                 return email; // Returns if valid
             }
-            System.out.println("Invalid email format. Please include '@' and '.'"); // Error message
         }
     }
 
-    // Helper method to get and validate phone number input from the user
-    private static String getPhoneInput() {
-        while (true) { // Loops indefinitely until a valid phone number format is provided
+    // Helper method to get and validate phone number input from the user; ownRoll is the student being edited, or null when adding
+    private static String getPhoneInput(String ownRoll) {
+        while (true) { // Loops indefinitely until a valid, unused phone number is provided
             String phone = getStringInput("Enter phone number: "); // Gets phone number input
-            // Validates if the phone number consists of 10 to 15 digits using regex
-            if (phone.matches("\\d{10,15}")) {
+            // Validates if the phone number consists of 10 to 15 digits using a precompiled regex
+            if (!StudentValidation.isValidPhone(phone)) {
+                System.out.println("Invalid phone number. Please enter 10-15 digits."); // Error message
+            } else if (sms.isPhoneTaken(phone, ownRoll)) { // Index lookup, no scan
+                System.out.println("Phone number already registered to another student."); // Error message
+            } else {
                 return phone; // Returns if valid
             }
-            System.out.println("Invalid phone number. Please enter 10-15 digits."); // Error message
+        }
+    }
+
+    // Turns a failed store result into a message for the user
+    private static String describe(StoreResult result) {
+        switch (result) {
+            case DUPLICATE_ROLL: return "roll number already exists.";
+            case DUPLICATE_EMAIL: return "email already registered to another student.";
+            case DUPLICATE_PHONE: return "phone number already registered to another student.";
+            case NOT_FOUND: return "student no longer exists.";
+            case NOT_SAVED: return "the change could not be saved.";
+            default: return result.toString();
         }
     }
 